@@ -0,0 +1,124 @@
+package com.sky.zookeeper.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.StaticApplicationContext;
+
+import com.sky.zookeeper.type.AccessStrategy;
+import com.sky.zookeeper.type.CreateStrategy;
+import com.sky.zookeeper.type.FieldEditor;
+import com.sky.zookeeper.type.MethodInvoker;
+import com.sky.zookeeper.type.SubscribeType;
+
+/**
+ * Compare update cost of reflective and MethodHandle bound modifiers, under CONSTRUCTOR and BEAN create strategies
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AccessStrategyBenchmark {
+	public static class Target {
+		private String value;
+		private Long number;
+		private Target peer;
+
+		public void setValue(String value) {
+			this.value = value;
+		}
+
+		public String getValue() {
+			return value;
+		}
+
+		public Long getNumber() {
+			return number;
+		}
+
+		public Target getPeer() {
+			return peer;
+		}
+	}
+
+	@Param({ "REFLECTION", "METHOD_HANDLE" })
+	public AccessStrategy accessStrategy;
+
+	private Target target;
+	private StaticApplicationContext ctx;
+	private int beanIndex;
+
+	private FieldEditor stringFieldEditor;
+	private FieldEditor longFieldEditor;
+	private MethodInvoker methodInvoker;
+	private FieldEditor beanFieldEditor;
+
+	@Setup
+	public void setup() throws Exception {
+		target = new Target();
+
+		stringFieldEditor = new FieldEditor(target, Target.class.getDeclaredField("value"), null,
+				SubscribeType.DATA_CHANGE, CreateStrategy.CONSTRUCTOR, accessStrategy);
+		longFieldEditor = new FieldEditor(target, Target.class.getDeclaredField("number"), null,
+				SubscribeType.DATA_CHANGE, CreateStrategy.CONSTRUCTOR, accessStrategy);
+		methodInvoker = new MethodInvoker(target, Target.class.getDeclaredMethod("setValue", String.class), null,
+				SubscribeType.DATA_CHANGE, CreateStrategy.CONSTRUCTOR, accessStrategy);
+
+		ctx = new StaticApplicationContext();
+		ctx.registerSingleton("peer0", Target.class);
+		ctx.registerSingleton("peer1", Target.class);
+		ctx.refresh();
+		beanFieldEditor = new FieldEditor(target, Target.class.getDeclaredField("peer"), ctx,
+				SubscribeType.DATA_CHANGE, CreateStrategy.BEAN, accessStrategy);
+	}
+
+	@TearDown
+	public void tearDown() {
+		ctx.close();
+	}
+
+	@Benchmark
+	public Object fieldEditorString() {
+		stringFieldEditor.set("value");
+		return target.getValue();
+	}
+
+	@Benchmark
+	public Object fieldEditorLong() {
+		longFieldEditor.set("1234567");
+		return target.getNumber();
+	}
+
+	/**
+	 * Alternate between two beans so that every write changes the field
+	 */
+	@Benchmark
+	public Object fieldEditorBean() {
+		beanFieldEditor.set((beanIndex++ & 1) == 0 ? "peer0" : "peer1");
+		return target.getPeer();
+	}
+
+	@Benchmark
+	public Object methodInvoker() {
+		methodInvoker.invoke("value");
+		return target.getValue();
+	}
+
+	@Benchmark
+	public Object fieldEditorGet() {
+		return stringFieldEditor.get();
+	}
+}
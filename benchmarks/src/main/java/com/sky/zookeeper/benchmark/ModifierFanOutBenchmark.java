@@ -0,0 +1,103 @@
+package com.sky.zookeeper.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sky.zookeeper.type.AccessStrategy;
+import com.sky.zookeeper.type.CreateStrategy;
+import com.sky.zookeeper.type.FieldEditor;
+import com.sky.zookeeper.type.MethodInvoker;
+import com.sky.zookeeper.type.Modifier;
+import com.sky.zookeeper.type.PrimitiveDecoder;
+import com.sky.zookeeper.type.SubscribeType;
+
+/**
+ * Fan one data change out to N modifiers of a path, the step ZkDataChangeWatcher runs once a change passed its
+ * stale and unchanged checks (Modifier.applyAll)
+ * STRING members are Long fields and String setters constructed from a String, PRIMITIVE members are long fields
+ * parsed in place, DECODER members are Long fields sharing one PrimitiveDecoder result
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ModifierFanOutBenchmark {
+	public static class Target {
+		private Long boxed;
+		private long primitive;
+		private String text;
+
+		public void setText(String text) {
+			this.text = text;
+		}
+	}
+
+	public enum Kind {
+		STRING, PRIMITIVE, DECODER
+	}
+
+	@Param({ "1", "10", "100" })
+	public int modifiers;
+
+	@Param({ "STRING", "PRIMITIVE", "DECODER" })
+	public Kind kind;
+
+	private List<Modifier> modifierList;
+	private byte[][] data;
+	private int generation;
+
+	@Setup
+	public void setup() throws Exception {
+		PrimitiveDecoder decoder = new PrimitiveDecoder();
+
+		modifierList = new ArrayList<Modifier>();
+		for (int i = 0; i < modifiers; i++) {
+			Target target = new Target();
+
+			switch (kind) {
+			case PRIMITIVE:
+				modifierList.add(new FieldEditor(target, Target.class.getDeclaredField("primitive"), null,
+						SubscribeType.DATA_CHANGE, CreateStrategy.CONSTRUCTOR, AccessStrategy.METHOD_HANDLE));
+				break;
+
+			case DECODER:
+				modifierList.add(new FieldEditor(target, Target.class.getDeclaredField("boxed"), null,
+						SubscribeType.DATA_CHANGE, CreateStrategy.CONSTRUCTOR, AccessStrategy.METHOD_HANDLE, decoder));
+				break;
+
+			default:
+				if ((i & 1) == 0) {
+					modifierList.add(new FieldEditor(target, Target.class.getDeclaredField("boxed"), null,
+							SubscribeType.DATA_CHANGE, CreateStrategy.CONSTRUCTOR, AccessStrategy.METHOD_HANDLE));
+				} else {
+					modifierList.add(new MethodInvoker(target, Target.class.getMethod("setText", String.class), null,
+							SubscribeType.DATA_CHANGE, CreateStrategy.CONSTRUCTOR, AccessStrategy.METHOD_HANDLE));
+				}
+				break;
+			}
+		}
+
+		data = new byte[][] { "1234567".getBytes(), "7654321".getBytes() };
+	}
+
+	@Benchmark
+	public Object applyAll() {
+		Modifier.applyAll(modifierList, data[generation++ & 1]);
+		return modifierList;
+	}
+}
@@ -0,0 +1,343 @@
+package com.sky.zookeeper.benchmark;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.context.support.StaticApplicationContext;
+
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.CuratorFrameworkFactory;
+import com.netflix.curator.retry.RetryNTimes;
+import com.netflix.curator.test.TestingServer;
+import com.sky.zookeeper.ZkContext;
+import com.sky.zookeeper.annotation.ZkManage;
+import com.sky.zookeeper.annotation.ZkValue;
+import com.sky.zookeeper.type.SubscribeType;
+
+/**
+ * Load generator measuring the time from setData on a znode to the new value reaching a ZkValue setter, against an
+ * in-process server
+ * Starts N contexts each watching M paths, writes the paths round robin at a fixed rate and reports propagation
+ * latency percentiles, per subscriber and until every subscriber saw the value, with the throughput reached
+ * Usage: java -cp target/benchmarks.jar com.sky.zookeeper.benchmark.PropagationLoad [contexts=4] [paths=4]
+ * [rate=1000] [warmup=5] [duration=20]
+ * NOTE:latency counts from the time an update was due rather than sent, so a writer falling behind shows up in the
+ * percentiles instead of hiding it, and an update superseded before a subscriber saw it is counted, not timed
+ */
+public class PropagationLoad {
+	private static final String ZK_PATH = "/propagation_load";
+
+	/**
+	 * Paths a subscriber can watch, by the subscriber class watching that many
+	 */
+	private static final Map<Integer, Class<? extends Subscriber1>> SUBSCRIBERS = new HashMap<Integer, Class<? extends Subscriber1>>();
+	static {
+		SUBSCRIBERS.put(1, Subscriber1.class);
+		SUBSCRIBERS.put(2, Subscriber2.class);
+		SUBSCRIBERS.put(4, Subscriber4.class);
+		SUBSCRIBERS.put(8, Subscriber8.class);
+		SUBSCRIBERS.put(16, Subscriber16.class);
+	}
+
+	// read by subscribers and LoadContext, which Spring instantiates
+	private static volatile String connection;
+	private static volatile PropagationLoad load;
+
+	@ZkManage
+	public static class Subscriber1 {
+		@ZkValue(value = ZK_PATH + "/0", subscribeType = SubscribeType.DATA_CHANGE)
+		public void setPath0(String value) {
+			load.observe(value);
+		}
+	}
+
+	@ZkManage
+	public static class Subscriber2 extends Subscriber1 {
+		@ZkValue(value = ZK_PATH + "/1", subscribeType = SubscribeType.DATA_CHANGE)
+		public void setPath1(String value) {
+			load.observe(value);
+		}
+	}
+
+	@ZkManage
+	public static class Subscriber4 extends Subscriber2 {
+		@ZkValue(value = ZK_PATH + "/2", subscribeType = SubscribeType.DATA_CHANGE)
+		public void setPath2(String value) {
+			load.observe(value);
+		}
+
+		@ZkValue(value = ZK_PATH + "/3", subscribeType = SubscribeType.DATA_CHANGE)
+		public void setPath3(String value) {
+			load.observe(value);
+		}
+	}
+
+	@ZkManage
+	public static class Subscriber8 extends Subscriber4 {
+		@ZkValue(value = ZK_PATH + "/4", subscribeType = SubscribeType.DATA_CHANGE)
+		public void setPath4(String value) {
+			load.observe(value);
+		}
+
+		@ZkValue(value = ZK_PATH + "/5", subscribeType = SubscribeType.DATA_CHANGE)
+		public void setPath5(String value) {
+			load.observe(value);
+		}
+
+		@ZkValue(value = ZK_PATH + "/6", subscribeType = SubscribeType.DATA_CHANGE)
+		public void setPath6(String value) {
+			load.observe(value);
+		}
+
+		@ZkValue(value = ZK_PATH + "/7", subscribeType = SubscribeType.DATA_CHANGE)
+		public void setPath7(String value) {
+			load.observe(value);
+		}
+	}
+
+	@ZkManage
+	public static class Subscriber16 extends Subscriber8 {
+		@ZkValue(value = ZK_PATH + "/8", subscribeType = SubscribeType.DATA_CHANGE)
+		public void setPath8(String value) {
+			load.observe(value);
+		}
+
+		@ZkValue(value = ZK_PATH + "/9", subscribeType = SubscribeType.DATA_CHANGE)
+		public void setPath9(String value) {
+			load.observe(value);
+		}
+
+		@ZkValue(value = ZK_PATH + "/10", subscribeType = SubscribeType.DATA_CHANGE)
+		public void setPath10(String value) {
+			load.observe(value);
+		}
+
+		@ZkValue(value = ZK_PATH + "/11", subscribeType = SubscribeType.DATA_CHANGE)
+		public void setPath11(String value) {
+			load.observe(value);
+		}
+
+		@ZkValue(value = ZK_PATH + "/12", subscribeType = SubscribeType.DATA_CHANGE)
+		public void setPath12(String value) {
+			load.observe(value);
+		}
+
+		@ZkValue(value = ZK_PATH + "/13", subscribeType = SubscribeType.DATA_CHANGE)
+		public void setPath13(String value) {
+			load.observe(value);
+		}
+
+		@ZkValue(value = ZK_PATH + "/14", subscribeType = SubscribeType.DATA_CHANGE)
+		public void setPath14(String value) {
+			load.observe(value);
+		}
+
+		@ZkValue(value = ZK_PATH + "/15", subscribeType = SubscribeType.DATA_CHANGE)
+		public void setPath15(String value) {
+			load.observe(value);
+		}
+	}
+
+	public static class LoadContext extends ZkContext {
+		@Override
+		public String getZkConnection() {
+			return connection;
+		}
+
+		@Override
+		public Integer getZkConnectionTimeout() {
+			return 1000;
+		}
+	}
+
+	/**
+	 * Latencies (in nanoseconds) appended lock free, those past the capacity are counted but dropped
+	 */
+	private static class Recorder {
+		private final long[] latencies;
+		private final AtomicInteger count = new AtomicInteger();
+
+		Recorder(int capacity) {
+			latencies = new long[capacity];
+		}
+
+		void record(long latency) {
+			int i = count.getAndIncrement();
+			if (i < latencies.length) {
+				latencies[i] = latency;
+			}
+		}
+
+		int getCount() {
+			return count.get();
+		}
+
+		String summary() {
+			int n = Math.min(count.get(), latencies.length);
+			if (n == 0) {
+				return "no samples";
+			}
+
+			long[] sorted = Arrays.copyOf(latencies, n);
+			Arrays.sort(sorted);
+			return "p50=" + percentile(sorted, 0.5) + "us p99=" + percentile(sorted, 0.99) + "us p999="
+					+ percentile(sorted, 0.999) + "us max=" + sorted[n - 1] / 1000 + "us (" + n + " samples)";
+		}
+
+		private static long percentile(long[] sorted, double p) {
+			int i = (int) Math.ceil(p * sorted.length) - 1;
+			return sorted[Math.max(i, 0)] / 1000;
+		}
+	}
+
+	private final int contexts;
+	private final int paths;
+	private final int rate;
+	private final int warmup;
+	private final int duration;
+
+	private final int updates;
+	// due time of every update by sequence number, and how many subscribers saw it
+	private final AtomicLongArray dueAt;
+	private final AtomicIntegerArray seen;
+	private final Recorder perSubscriber;
+	private final Recorder allSubscribers;
+	private final AtomicLong observations = new AtomicLong();
+	private volatile int firstMeasured;
+
+	public PropagationLoad(int contexts, int paths, int rate, int warmup, int duration) {
+		if (!SUBSCRIBERS.containsKey(paths)) {
+			throw new IllegalArgumentException("paths must be one of " + SUBSCRIBERS.keySet());
+		}
+
+		this.contexts = contexts;
+		this.paths = paths;
+		this.rate = rate;
+		this.warmup = warmup;
+		this.duration = duration;
+
+		updates = rate * (warmup + duration);
+		dueAt = new AtomicLongArray(updates);
+		seen = new AtomicIntegerArray(updates);
+		perSubscriber = new Recorder(rate * duration * contexts);
+		allSubscribers = new Recorder(rate * duration);
+		firstMeasured = updates;
+	}
+
+	/**
+	 * Called on the watcher threads of every context, the value is the sequence number of the update
+	 */
+	void observe(String value) {
+		long now = System.nanoTime();
+		int seq = Integer.parseInt(value);
+		if (seq < 0) {
+			return;
+		}
+
+		observations.incrementAndGet();
+		if (seq < firstMeasured) {
+			return;
+		}
+
+		long latency = now - dueAt.get(seq);
+		perSubscriber.record(latency);
+		if (seen.incrementAndGet(seq) == contexts) {
+			allSubscribers.record(latency);
+		}
+	}
+
+	public void run() throws Exception {
+		TestingServer server = new TestingServer();
+		connection = server.getConnectString();
+		load = this;
+
+		CuratorFramework zkClient = CuratorFrameworkFactory.builder()
+				.connectString(connection)
+				.connectionTimeoutMs(1000)
+				.retryPolicy(new RetryNTimes(3, 1000))
+				.build();
+		zkClient.start();
+		for (int i = 0; i < paths; i++) {
+			zkClient.create().creatingParentsIfNeeded().forPath(ZK_PATH + "/" + i, "-1".getBytes());
+		}
+
+		StaticApplicationContext[] ctxs = new StaticApplicationContext[contexts];
+		for (int i = 0; i < contexts; i++) {
+			ctxs[i] = new StaticApplicationContext();
+			ctxs[i].registerSingleton("subscriber", SUBSCRIBERS.get(paths));
+			ctxs[i].registerSingleton("zkContext", LoadContext.class);
+			ctxs[i].refresh();
+		}
+		System.out.println("Started " + contexts + " context(s) watching " + paths + " path(s), writing " + rate
+				+ " update(s)/s for " + warmup + "s warmup and " + duration + "s measurement");
+
+		long elapsed = write(zkClient);
+		// give the last updates time to arrive
+		Thread.sleep(1000);
+
+		System.out.println("sent " + updates + " update(s) at " + updates * TimeUnit.SECONDS.toNanos(1) / elapsed
+				+ "/s, " + observations.get() + " value(s) applied in total");
+		System.out.println("per subscriber:  " + perSubscriber.summary());
+		System.out.println("all subscribers: " + allSubscribers.summary());
+		long expected = (long) (updates - firstMeasured) * contexts;
+		System.out.println("superseded before applied: " + (expected - perSubscriber.getCount()) + " of " + expected);
+
+		for (StaticApplicationContext ctx : ctxs) {
+			((ZkContext) ctx.getBean("zkContext")).getZkClient().close();
+			ctx.close();
+		}
+		zkClient.close();
+		server.close();
+	}
+
+	/**
+	 * Write updates in the background at their due time, catching up without pause when behind
+	 * @return time taken to send all updates (in nanoseconds)
+	 */
+	private long write(CuratorFramework zkClient) throws Exception {
+		long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+		long start = System.nanoTime();
+
+		for (int seq = 0; seq < updates; seq++) {
+			long due = start + seq * intervalNanos;
+			long wait = due - System.nanoTime();
+			if (wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+
+			if (seq == rate * warmup) {
+				firstMeasured = seq;
+			}
+			dueAt.set(seq, due);
+			zkClient.setData().inBackground().forPath(ZK_PATH + "/" + seq % paths, String.valueOf(seq).getBytes());
+		}
+		return System.nanoTime() - start;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, Integer> options = new HashMap<String, Integer>();
+		options.put("contexts", 4);
+		options.put("paths", 4);
+		options.put("rate", 1000);
+		options.put("warmup", 5);
+		options.put("duration", 20);
+
+		for (String arg : args) {
+			String[] option = arg.split("=", 2);
+			if (option.length != 2 || !options.containsKey(option[0])) {
+				System.err.println("unknown option " + arg + ", expected any of " + options.keySet() + " as name=value");
+				System.exit(1);
+			}
+			options.put(option[0], Integer.valueOf(option[1]));
+		}
+
+		new PropagationLoad(options.get("contexts"), options.get("paths"), options.get("rate"), options.get("warmup"),
+				options.get("duration")).run();
+	}
+}
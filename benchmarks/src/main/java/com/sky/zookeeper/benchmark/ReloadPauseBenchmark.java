@@ -0,0 +1,149 @@
+package com.sky.zookeeper.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.support.AbstractRefreshableApplicationContext;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+import com.sky.zookeeper.util.ZookeeperConfigurer;
+
+/**
+ * Compare the pause of a full context refresh (ReloadContext.AUTO) with re-injecting changed properties
+ * (ReloadContext.INCREMENTAL) when one property changes
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReloadPauseBenchmark {
+	public static class MutableResource extends AbstractResource {
+		private volatile String content;
+
+		public void setContent(String content) {
+			this.content = content;
+		}
+
+		@Override
+		public String getDescription() {
+			return "in-memory config";
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			return new ByteArrayInputStream(content.getBytes("ISO-8859-1"));
+		}
+	}
+
+	public static class ConfigBean {
+		private String url;
+		private int size;
+
+		public void setUrl(String url) {
+			this.url = url;
+		}
+
+		public void setSize(int size) {
+			this.size = size;
+		}
+
+		public String getUrl() {
+			return url;
+		}
+
+		public int getSize() {
+			return size;
+		}
+	}
+
+	public static class BenchmarkContext extends AbstractRefreshableApplicationContext {
+		private Resource resource;
+		private int beans;
+
+		public BenchmarkContext(Resource resource, int beans) {
+			this.resource = resource;
+			this.beans = beans;
+		}
+
+		@Override
+		protected void loadBeanDefinitions(DefaultListableBeanFactory beanFactory) {
+			beanFactory.registerBeanDefinition("zkPropConfigurer", BeanDefinitionBuilder
+					.genericBeanDefinition(ZookeeperConfigurer.class)
+					.addPropertyValue("locations", new Resource[] { resource })
+					.getBeanDefinition());
+
+			for (int i = 0; i < beans; i++) {
+				beanFactory.registerBeanDefinition("bean" + i, BeanDefinitionBuilder
+						.genericBeanDefinition(ConfigBean.class)
+						.addPropertyValue("url", "jdbc:mysql://${db" + i + ".host}:3306/db")
+						.addPropertyValue("size", "${db" + i + ".size}")
+						.getBeanDefinition());
+			}
+		}
+	}
+
+	@Param({ "100", "1000" })
+	public int beans;
+
+	private MutableResource resource;
+	private BenchmarkContext ctx;
+	private int generation;
+
+	@Setup
+	public void setup() {
+		resource = new MutableResource();
+		resource.setContent(content(0));
+
+		ctx = new BenchmarkContext(resource, beans);
+		ctx.refresh();
+	}
+
+	@TearDown
+	public void tearDown() {
+		ctx.close();
+	}
+
+	/**
+	 * Same config for all beans but the first one, whose host changes on every generation
+	 */
+	private String content(int generation) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < beans; i++) {
+			sb.append("db").append(i).append(".host=").append(i == 0 ? "host" + generation : "host").append('\n');
+			sb.append("db").append(i).append(".size=").append(i).append('\n');
+		}
+		return sb.toString();
+	}
+
+	@Benchmark
+	public Object fullRefresh() {
+		resource.setContent(content(++generation));
+		ctx.refresh();
+		return ctx.getBean("bean0");
+	}
+
+	@Benchmark
+	public Object incrementalReinject() throws IOException {
+		resource.setContent(content(++generation));
+		return ctx.getBean(ZookeeperConfigurer.class).reinject();
+	}
+}
@@ -0,0 +1,164 @@
+package com.sky.zookeeper.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooKeeper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netflix.curator.test.TestingServer;
+import com.sky.zookeeper.util.ZookeeperResource;
+import com.sky.zookeeper.util.ZookeeperResource.OnConnectionFailed;
+import com.sky.zookeeper.util.ZookeeperResource.PingCmd;
+import com.sky.zookeeper.util.ZookeeperResource.ReloadContext;
+
+/**
+ * Assemble the config stream of ZookeeperResource from an in-process server, for a wide tree (500 children of the root)
+ * and a deep one (binary tree of depth 8, 510 znodes), with and without the tree cache
+ * firstLoad connects and loads a new resource, reloadAfterChange changes one leaf and reads until the change shows,
+ * steadyRead reads an unchanged tree
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResourceAssemblyBenchmark {
+	private static final String ZK_PATH = "/assembly_benchmark";
+
+	@Param({ "wide", "deep" })
+	public String shape;
+
+	@Param({ "false", "true" })
+	public boolean cache;
+
+	private TestingServer server;
+	private ZooKeeper zk;
+	private String leaf;
+	private int generation;
+
+	private ZookeeperResource resource;
+	private ZookeeperResource freshResource;
+
+	@Setup
+	public void setup() throws Exception {
+		server = new TestingServer();
+		zk = new ZooKeeper(server.getConnectString(), 3000, new Watcher() {
+			@Override
+			public void process(WatchedEvent event) {
+			}
+		});
+
+		zk.create(ZK_PATH, "root=0".getBytes(), Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+		if ("wide".equals(shape)) {
+			createChildren(ZK_PATH, 500, 1);
+		} else {
+			createChildren(ZK_PATH, 2, 8);
+		}
+
+		resource = newResource();
+		resource.getInputStream().close();
+	}
+
+	private void createChildren(String znode, int width, int depth) throws KeeperException, InterruptedException {
+		if (depth == 0) {
+			return;
+		}
+
+		for (int i = 0; i < width; i++) {
+			String child = znode + "/n" + i;
+			zk.create(child, (child.substring(1).replace('/', '.') + "=" + i).getBytes(), Ids.OPEN_ACL_UNSAFE,
+					CreateMode.PERSISTENT);
+			createChildren(child, width, depth - 1);
+			leaf = child;
+		}
+	}
+
+	private ZookeeperResource newResource() {
+		ZookeeperResource newResource = new ZookeeperResource(server.getConnectString(), ZK_PATH, PingCmd.get, true,
+				OnConnectionFailed.THROW_EXCEPTION, ReloadContext.HOLD);
+		newResource.setCache(cache);
+		return newResource;
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		resource.destroy();
+		zk.close();
+		server.close();
+	}
+
+	@Setup(Level.Invocation)
+	public void createFreshResource() {
+		freshResource = newResource();
+	}
+
+	@TearDown(Level.Invocation)
+	public void destroyFreshResource() throws Exception {
+		freshResource.destroy();
+	}
+
+	private static int drain(InputStream is) throws IOException {
+		int size = is.available();
+		is.close();
+		return size;
+	}
+
+	@Benchmark
+	public int firstLoad() throws IOException {
+		return drain(freshResource.getInputStream());
+	}
+
+	@Benchmark
+	public int steadyRead() throws IOException {
+		return drain(resource.getInputStream());
+	}
+
+	@Benchmark
+	public int reloadAfterChange() throws Exception {
+		String value = "changed=" + (++generation);
+		zk.setData(leaf, value.getBytes(), -1);
+
+		byte[] expected = (value + "\n").getBytes();
+		while (true) {
+			InputStream is = resource.getInputStream();
+			byte[] data = new byte[is.available()];
+			is.read(data);
+			if (contains(data, expected)) {
+				return data.length;
+			}
+		}
+	}
+
+	private static boolean contains(byte[] data, byte[] part) {
+		for (int offset = 0; offset <= data.length - part.length; offset++) {
+			int i = 0;
+			while (i < part.length && data[offset + i] == part[i]) {
+				i++;
+			}
+			if (i == part.length) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,188 @@
+package com.sky.zookeeper.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.StaticApplicationContext;
+
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.CuratorFrameworkFactory;
+import com.netflix.curator.retry.RetryNTimes;
+import com.netflix.curator.test.TestingServer;
+import com.sky.zookeeper.ZkContext;
+import com.sky.zookeeper.annotation.ZkManage;
+import com.sky.zookeeper.annotation.ZkValue;
+
+/**
+ * Start a context of thousands of managed beans against an in-process server, binding members from the compile time
+ * index against walking every class hierarchy reflectively
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+	private static final String ZK_PATH = "/startup_benchmark";
+
+	public static class BaseBean {
+		@ZkValue(ZK_PATH + "/0")
+		protected String value0;
+		@ZkValue(ZK_PATH + "/1")
+		protected String value1;
+
+		protected String plain0, plain1, plain2, plain3, plain4, plain5, plain6, plain7, plain8, plain9;
+
+		public String getPlain0() {
+			return plain0;
+		}
+
+		public String getPlain1() {
+			return plain1;
+		}
+
+		public String getPlain2() {
+			return plain2;
+		}
+
+		public String getPlain3() {
+			return plain3;
+		}
+
+		public String getPlain4() {
+			return plain4;
+		}
+	}
+
+	public static class MiddleBean extends BaseBean {
+		@ZkValue(ZK_PATH + "/2")
+		protected int value2;
+
+		protected long plain10, plain11, plain12, plain13, plain14, plain15, plain16, plain17, plain18, plain19;
+
+		public long getPlain10() {
+			return plain10;
+		}
+
+		public long getPlain11() {
+			return plain11;
+		}
+
+		public long getPlain12() {
+			return plain12;
+		}
+	}
+
+	@ZkManage
+	public static class ManagedBean extends MiddleBean {
+		@ZkValue(ZK_PATH + "/3")
+		private String value3;
+
+		private String plain20, plain21, plain22, plain23, plain24;
+
+		@ZkValue(ZK_PATH + "/3")
+		public void setValue3(String value3) {
+			this.value3 = value3;
+		}
+
+		public String getPlain20() {
+			return plain20;
+		}
+
+		public String getPlain21() {
+			return plain21;
+		}
+	}
+
+	public static class BenchmarkContext extends ZkContext {
+		@Override
+		public String getZkConnection() {
+			return connection;
+		}
+
+		@Override
+		public Integer getZkConnectionTimeout() {
+			return 1000;
+		}
+
+		@Override
+		public boolean isPipelinedInitialLoad() {
+			return true;
+		}
+
+		@Override
+		public boolean isMemberIndexEnabled() {
+			return indexed;
+		}
+	}
+
+	// read by BenchmarkContext, which Spring instantiates
+	private static volatile String connection;
+	private static volatile boolean indexed;
+
+	@Param({ "1000", "5000" })
+	public int beans;
+
+	@Param({ "true", "false" })
+	public boolean memberIndex;
+
+	private TestingServer server;
+	private StaticApplicationContext ctx;
+
+	@Setup
+	public void setup() throws Exception {
+		server = new TestingServer();
+		connection = server.getConnectString();
+		indexed = memberIndex;
+
+		CuratorFramework zkClient = CuratorFrameworkFactory.builder()
+				.connectString(connection)
+				.connectionTimeoutMs(1000)
+				.retryPolicy(new RetryNTimes(3, 1000))
+				.build();
+		zkClient.start();
+		for (int i = 0; i < 4; i++) {
+			zkClient.create().creatingParentsIfNeeded().forPath(ZK_PATH + "/" + i, String.valueOf(i).getBytes());
+		}
+		zkClient.close();
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		server.close();
+	}
+
+	@TearDown(Level.Iteration)
+	public void closeContext() {
+		if (ctx != null) {
+			((ZkContext) ctx.getBean("zkContext")).getZkClient().close();
+			ctx.close();
+			ctx = null;
+		}
+	}
+
+	@Benchmark
+	public Object startup() {
+		ctx = new StaticApplicationContext();
+		for (int i = 0; i < beans; i++) {
+			ctx.registerSingleton("managedBean" + i, ManagedBean.class);
+		}
+		ctx.registerSingleton("zkContext", BenchmarkContext.class);
+		ctx.refresh();
+
+		return ctx;
+	}
+}
@@ -0,0 +1,107 @@
+package com.sky.zookeeper.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.io.Resource;
+
+import com.sky.zookeeper.benchmark.ReloadPauseBenchmark.MutableResource;
+import com.sky.zookeeper.util.ZookeeperConfigurer;
+
+/**
+ * Read an int property on three threads while a fourth one re-injects changed properties without pause, parsing the
+ * value of getProperty on every read against the typed getInt
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class TypedPropertyBenchmark {
+	private static final int KEYS = 200;
+
+	private MutableResource resource;
+	private GenericApplicationContext ctx;
+	private ZookeeperConfigurer configurer;
+	private int generation;
+
+	@Setup
+	public void setup() {
+		resource = new MutableResource();
+		resource.setContent(content(0));
+
+		ctx = new GenericApplicationContext();
+		ctx.registerBeanDefinition("zkPropConfigurer", BeanDefinitionBuilder
+				.genericBeanDefinition(ZookeeperConfigurer.class)
+				.addPropertyValue("locations", new Resource[] { resource })
+				.getBeanDefinition());
+		ctx.refresh();
+
+		configurer = ctx.getBean(ZookeeperConfigurer.class);
+	}
+
+	@TearDown
+	public void tearDown() {
+		ctx.close();
+	}
+
+	/**
+	 * Every key changes on every generation
+	 */
+	private String content(int generation) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < KEYS; i++) {
+			sb.append("key").append(i).append('=').append(generation + i).append('\n');
+		}
+		return sb.toString();
+	}
+
+	private Object refresh() throws IOException {
+		resource.setContent(content(++generation));
+		return configurer.reinject();
+	}
+
+	@Benchmark
+	@Group("parseOnEveryRead")
+	@GroupThreads(3)
+	public int parseOnEveryRead() {
+		return Integer.parseInt(configurer.getProperty("key42").toString());
+	}
+
+	@Benchmark
+	@Group("parseOnEveryRead")
+	@GroupThreads(1)
+	public Object parseOnEveryReadRefresh() throws IOException {
+		return refresh();
+	}
+
+	@Benchmark
+	@Group("typedRead")
+	@GroupThreads(3)
+	public int typedRead() {
+		return configurer.getInt("key42", 0);
+	}
+
+	@Benchmark
+	@Group("typedRead")
+	@GroupThreads(1)
+	public Object typedReadRefresh() throws IOException {
+		return refresh();
+	}
+}
@@ -1,21 +1,34 @@
 package com.sky.zookeeper;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.FatalBeanException;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.stereotype.Component;
 import org.springframework.util.ReflectionUtils;
 import org.springframework.util.ReflectionUtils.FieldCallback;
@@ -25,20 +38,42 @@ import org.springframework.util.ReflectionUtils.MethodFilter;
 
 import com.netflix.curator.framework.CuratorFramework;
 import com.netflix.curator.framework.CuratorFrameworkFactory;
+import com.netflix.curator.framework.api.BackgroundCallback;
+import com.netflix.curator.framework.api.CuratorEvent;
 import com.netflix.curator.framework.recipes.leader.LeaderSelector;
+import com.netflix.curator.framework.state.ConnectionState;
+import com.netflix.curator.framework.state.ConnectionStateListener;
 import com.netflix.curator.retry.RetryNTimes;
+import com.sky.zookeeper.annotation.ZkConfig;
 import com.sky.zookeeper.annotation.ZkLeader;
 import com.sky.zookeeper.annotation.ZkManage;
+import com.sky.zookeeper.annotation.ZkPartitioned;
+import com.sky.zookeeper.annotation.ZkScheduled;
 import com.sky.zookeeper.annotation.ZkValue;
+import com.sky.zookeeper.index.ZkMemberIndex;
+import com.sky.zookeeper.metrics.ZkMetrics;
+import com.sky.zookeeper.type.AccessStrategy;
+import com.sky.zookeeper.type.ConfigBinder;
 import com.sky.zookeeper.type.CreateStrategy;
+import com.sky.zookeeper.type.DispatchMode;
+import com.sky.zookeeper.type.ElectionMode;
+import com.sky.zookeeper.type.LeaderGatedTask;
 import com.sky.zookeeper.type.Modifier;
 import com.sky.zookeeper.type.ModifierFactory;
+import com.sky.zookeeper.type.PartitionDecoder;
 import com.sky.zookeeper.type.SubscribeType;
+import com.sky.zookeeper.type.ValueDecoder;
+import com.sky.zookeeper.util.ZkSnapshot;
+import com.sky.zookeeper.util.ZkTreeCache;
+import com.sky.zookeeper.watcher.ZkConfigWatcher;
 import com.sky.zookeeper.watcher.ZkDataChangeWatcher;
 import com.sky.zookeeper.watcher.ZkElectionListener;
+import com.sky.zookeeper.watcher.ZkEventDispatcher;
+import com.sky.zookeeper.watcher.ZkLeaderElection;
+import com.sky.zookeeper.watcher.ZkMembership;
 
 @Component
-public abstract class ZkContext implements InitializingBean, ApplicationContextAware {
+public abstract class ZkContext implements InitializingBean, DisposableBean, ApplicationContextAware {
 	private static final Logger LOGGER = LoggerFactory.getLogger(ZkContext.class);
 
 	public static final FieldFilter ZKVALUE_ANNOTATED_FIELDS = new FieldFilter() {
@@ -52,11 +87,24 @@ public abstract class ZkContext implements InitializingBean, ApplicationContextA
 		@Override
 		public boolean matches(Method method) {
 			Class<?>[] parameterTypes = method.getParameterTypes();
-			if (parameterTypes == null || parameterTypes.length != 1 || !parameterTypes[0].equals(String.class)) {
+			if (parameterTypes == null || parameterTypes.length != 1 || !method.isAnnotationPresent(ZkValue.class)) {
+				return false;
+			}
+
+			// any parameter type can be decoded, otherwise it is constructed from a String
+			if (!parameterTypes[0].equals(String.class)
+					&& method.getAnnotation(ZkValue.class).decoder() == ValueDecoder.class) {
 				return false;
 			}
 
-			return ReflectionUtils.USER_DECLARED_METHODS.matches(method) && method.isAnnotationPresent(ZkValue.class);
+			return ReflectionUtils.USER_DECLARED_METHODS.matches(method);
+		}
+	};
+
+	public static final FieldFilter ZKCONFIG_ANNOTATED_FIELDS = new FieldFilter() {
+		@Override
+		public boolean matches(Field field) {
+			return ReflectionUtils.COPYABLE_FIELDS.matches(field) && field.isAnnotationPresent(ZkConfig.class);
 		}
 	};
 
@@ -80,14 +128,59 @@ public abstract class ZkContext implements InitializingBean, ApplicationContextA
 		}
 	};
 
+	public static final FieldFilter ZKPARTITIONED_ANNOTATED_FIELDS = new FieldFilter() {
+		@Override
+		public boolean matches(Field field) {
+			return ReflectionUtils.COPYABLE_FIELDS.matches(field) && field.isAnnotationPresent(ZkPartitioned.class);
+		}
+	};
+
+	public static final MethodFilter ZKPARTITIONED_ANNOTATED_METHODS = new MethodFilter() {
+		@Override
+		public boolean matches(Method method) {
+			Class<?>[] parameterTypes = method.getParameterTypes();
+			if (parameterTypes == null || parameterTypes.length != 1) {
+				return false;
+			}
+
+			return ReflectionUtils.USER_DECLARED_METHODS.matches(method)
+					&& method.isAnnotationPresent(ZkPartitioned.class);
+		}
+	};
+
+	public static final MethodFilter ZKSCHEDULED_ANNOTATED_METHODS = new MethodFilter() {
+		@Override
+		public boolean matches(Method method) {
+			return ReflectionUtils.USER_DECLARED_METHODS.matches(method)
+					&& method.isAnnotationPresent(ZkScheduled.class);
+		}
+	};
+
 	private ApplicationContext applicationContext;
 	
 	private ModifierFactory modifierFactory;
 
 	private CuratorFramework zkClient;
+	private ZkEventDispatcher dispatcher;
+	private ZkTreeCache treeCache;
+	private ZkTreeCache configTreeCache;
+	private ZkSnapshot snapshot;
+	private Set<String> zkPathsFromSnapshot = new HashSet<String>();
 	private Map<String, Set<Modifier>> zkPathModifierMapping = new HashMap<String, Set<Modifier>>();
+	private Map<String, byte[]> zkPathInitialDataMapping = new HashMap<String, byte[]>();
+	private Map<String, ZkDataChangeWatcher> zkPathWatcherMapping = new HashMap<String, ZkDataChangeWatcher>();
+	private Map<String, Integer> zkPathCoalesceWindowMapping = new HashMap<String, Integer>();
 	private Map<String, Set<Modifier>> zkPathLeaderModifierMapping = new HashMap<String, Set<Modifier>>();
 	private Map<String, LeaderSelector> zkPathLeaderSelectorMapping = new HashMap<String, LeaderSelector>();
+	private Map<String, ZkElectionListener> zkPathElectionListenerMapping = new HashMap<String, ZkElectionListener>();
+	private Map<String, ZkLeaderElection> zkPathLeaderElectionMapping = new HashMap<String, ZkLeaderElection>();
+	private Map<String, Set<Modifier>> partitionedModifierMapping = new HashMap<String, Set<Modifier>>();
+	private Map<String, Integer> partitionedPartitionsMapping = new HashMap<String, Integer>();
+	private ZkMembership membership;
+	private ThreadPoolTaskScheduler defaultTaskScheduler;
+	private List<LeaderGatedTask> leaderGatedTasks = new ArrayList<LeaderGatedTask>();
+	private Map<String, Set<ConfigBinder>> zkPathConfigBinderMapping = new HashMap<String, Set<ConfigBinder>>();
+	private Map<String, ZkConfigWatcher> zkPathConfigWatcherMapping = new HashMap<String, ZkConfigWatcher>();
 
 	public abstract String getZkConnection();
 	public abstract Integer getZkConnectionTimeout();
@@ -96,21 +189,161 @@ public abstract class ZkContext implements InitializingBean, ApplicationContextA
 		return zkClient;
 	}
 
+	/**
+	 * How ZkValue and ZkLeader members are accessed on update
+	 */
+	public AccessStrategy getAccessStrategy() {
+		return AccessStrategy.METHOD_HANDLE;
+	}
+
+	/**
+	 * Where modifiers run when a watched path changes or leadership moves
+	 */
+	public DispatchMode getDispatchMode() {
+		return DispatchMode.INLINE;
+	}
+
+	/**
+	 * How ZkLeader paths are elected, EVENT_DRIVEN holds no thread per path while leading
+	 */
+	public ElectionMode getElectionMode() {
+		return ElectionMode.SELECTOR;
+	}
+
+	/**
+	 * Parent of the member nodes (used by ElectionMode.MEMBERSHIP and ZkPartitioned), contexts sharing it take part in
+	 * the same elections and split the same partitions
+	 */
+	public String getMembershipPath() {
+		return "/spring-zookeeper/members";
+	}
+
+	/**
+	 * @return null unless ElectionMode.MEMBERSHIP or some member is ZkPartitioned
+	 */
+	public ZkMembership getMembership() {
+		return membership;
+	}
+
+	/**
+	 * Scheduler of ZkScheduled methods, by default one thread owned by this context and shut down with it
+	 */
+	public synchronized TaskScheduler getTaskScheduler() {
+		if (defaultTaskScheduler == null) {
+			defaultTaskScheduler = new ThreadPoolTaskScheduler();
+			defaultTaskScheduler.setThreadNamePrefix("zk-scheduled-");
+			defaultTaskScheduler.setDaemon(true);
+			defaultTaskScheduler.afterPropertiesSet();
+		}
+		return defaultTaskScheduler;
+	}
+
+	/**
+	 * Size of the dispatch thread pool (used by DispatchMode.THREAD_POOL)
+	 */
+	public Integer getDispatchThreads() {
+		return 4;
+	}
+
+	/**
+	 * Default coalescing window (in milliseconds) of data changes for ZkValue without its own, 0 to apply every change
+	 */
+	public Integer getCoalesceWindow() {
+		return 0;
+	}
+
+	/**
+	 * Subtrees mirrored in memory, ZkValue paths inside them are read from the mirror instead of the ensemble
+	 */
+	public String[] getCachedPaths() {
+		return new String[0];
+	}
+
+	/**
+	 * Local file keeping the last known data of every ZkValue path, null to always start from the ensemble
+	 * NOTE:with a snapshot, paths in it are initialized from the file at once and brought up to date in background
+	 */
+	public String getSnapshotFile() {
+		return null;
+	}
+
+	/**
+	 * @return null if no snapshot file is configured
+	 */
+	public ZkSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * @return null if no subtree is mirrored
+	 */
+	public ZkTreeCache getTreeCache() {
+		return treeCache;
+	}
+
+	/**
+	 * Number of data changes skipped by all watchers of this context as stale or unchanged, those of all contexts are
+	 * exported as SkippedUpdates of ZkMetrics
+	 */
+	public long getSkippedUpdateCount() {
+		long skippedCount = 0;
+		for (ZkDataChangeWatcher watcher : zkPathWatcherMapping.values()) {
+			skippedCount += watcher.getSkippedCount();
+		}
+
+		return skippedCount;
+	}
+
+	public ZkEventDispatcher getDispatcher() {
+		return dispatcher;
+	}
+
+	/**
+	 * Load the initial value of every ZkValue path in one pipelined batch of background reads instead of one blocking
+	 * read per annotated member
+	 */
+	public boolean isPipelinedInitialLoad() {
+		return false;
+	}
+
+	/**
+	 * Bind members of ZkManage classes from the index written by ZkIndexProcessor at compile time, classes missing from
+	 * it are still scanned reflectively
+	 */
+	public boolean isMemberIndexEnabled() {
+		return true;
+	}
+
+	/**
+	 * Overall deadline (in milliseconds) for the pipelined initial load and for filling the tree cache
+	 */
+	public Integer getInitialLoadTimeout() {
+		return 30000;
+	}
+
 	/**
 	 * Scan for Zk* annotated field in which beans annotated with ZkManage
 	 */
 	private void scanForFieldsAndMethods() {
 		LOGGER.debug("scanning for fields and methods with zk* annotation...");
 
+		ZkMemberIndex memberIndex = loadMemberIndex();
+
 		for (final Object bean : applicationContext.getBeansWithAnnotation(ZkManage.class).values()) {
 			LOGGER.debug("found bean(" + bean.getClass().getName() + ") with ZkManage");
 
+			// classes of the hierarchy missing from the index are scanned one by one by the index itself
+			if (memberIndex != null && memberIndex.isIndexed(bean.getClass())) {
+				registerIndexedMembers(memberIndex, bean);
+				continue;
+			}
+
 			ReflectionUtils.doWithFields(bean.getClass(), new FieldCallback() {
 				@Override
 				public void doWith(Field field) throws IllegalArgumentException, IllegalAccessException {
 					LOGGER.debug("found field(" + field.getName() + ") with ZkValue");
 
-					registerZkValue(bean, field, true);
+					registerZkValue(bean, field, !isPipelinedInitialLoad());
 				}
 			}, ZKVALUE_ANNOTATED_FIELDS);
 			
@@ -119,10 +352,19 @@ public abstract class ZkContext implements InitializingBean, ApplicationContextA
 				public void doWith(Method method) throws IllegalArgumentException, IllegalAccessException {
 					LOGGER.debug("found method(" + method.getName() + ") with ZkValue");
 					
-					registerZkValue(bean, method, true);
+					registerZkValue(bean, method, !isPipelinedInitialLoad());
 				}
 			}, ZKVALUE_ANNOTATED_METHODS);
 			
+			ReflectionUtils.doWithFields(bean.getClass(), new FieldCallback() {
+				@Override
+				public void doWith(Field field) throws IllegalArgumentException, IllegalAccessException {
+					LOGGER.debug("found field(" + field.getName() + ") with ZkConfig");
+
+					registerZkConfig(bean, field);
+				}
+			}, ZKCONFIG_ANNOTATED_FIELDS);
+
 			ReflectionUtils.doWithFields(bean.getClass(), new FieldCallback() {
 				@Override
 				public void doWith(Field field) throws IllegalArgumentException, IllegalAccessException {
@@ -140,6 +382,87 @@ public abstract class ZkContext implements InitializingBean, ApplicationContextA
 					registerZkLeader(bean, method);
 				}
 			}, ZKLEADER_ANNOTATED_METHODS);
+
+			ReflectionUtils.doWithFields(bean.getClass(), new FieldCallback() {
+				@Override
+				public void doWith(Field field) throws IllegalArgumentException, IllegalAccessException {
+					LOGGER.debug("found field(" + field.getName() + ") with ZkPartitioned");
+
+					registerZkPartitioned(bean, field);
+				}
+			}, ZKPARTITIONED_ANNOTATED_FIELDS);
+
+			ReflectionUtils.doWithMethods(bean.getClass(), new MethodCallback() {
+				@Override
+				public void doWith(Method method) throws IllegalArgumentException, IllegalAccessException {
+					LOGGER.debug("found method(" + method.getName() + ") with ZkPartitioned");
+
+					registerZkPartitioned(bean, method);
+				}
+			}, ZKPARTITIONED_ANNOTATED_METHODS);
+
+			ReflectionUtils.doWithMethods(bean.getClass(), new MethodCallback() {
+				@Override
+				public void doWith(Method method) throws IllegalArgumentException, IllegalAccessException {
+					LOGGER.debug("found method(" + method.getName() + ") with ZkScheduled");
+
+					registerZkScheduled(bean, method);
+				}
+			}, ZKSCHEDULED_ANNOTATED_METHODS);
+		}
+	}
+
+	/**
+	 * @return null if the index is disabled or unreadable, all beans are then scanned reflectively
+	 */
+	private ZkMemberIndex loadMemberIndex() {
+		if (!isMemberIndexEnabled()) {
+			return null;
+		}
+
+		try {
+			return ZkMemberIndex.load(applicationContext.getClassLoader());
+		} catch (IOException e) {
+			LOGGER.warn("load member index failed, scanning beans reflectively", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Same registration as the reflective scan, with members taken from the compile time index
+	 */
+	private void registerIndexedMembers(ZkMemberIndex memberIndex, Object bean) {
+		for (AccessibleObject member : memberIndex.getMembers(bean.getClass(), ZkValue.class)) {
+			if (member instanceof Field ? ZKVALUE_ANNOTATED_FIELDS.matches((Field) member) : ZKVALUE_ANNOTATED_METHODS
+					.matches((Method) member)) {
+				registerZkValue(bean, member, !isPipelinedInitialLoad());
+			}
+		}
+
+		for (AccessibleObject member : memberIndex.getMembers(bean.getClass(), ZkConfig.class)) {
+			if (member instanceof Field && ZKCONFIG_ANNOTATED_FIELDS.matches((Field) member)) {
+				registerZkConfig(bean, (Field) member);
+			}
+		}
+
+		for (AccessibleObject member : memberIndex.getMembers(bean.getClass(), ZkLeader.class)) {
+			if (member instanceof Field ? ZKLEADER_ANNOTATED_FIELDS.matches((Field) member) : ZKLEADER_ANNOTATED_METHODS
+					.matches((Method) member)) {
+				registerZkLeader(bean, member);
+			}
+		}
+
+		for (AccessibleObject member : memberIndex.getMembers(bean.getClass(), ZkPartitioned.class)) {
+			if (member instanceof Field ? ZKPARTITIONED_ANNOTATED_FIELDS.matches((Field) member)
+					: ZKPARTITIONED_ANNOTATED_METHODS.matches((Method) member)) {
+				registerZkPartitioned(bean, member);
+			}
+		}
+
+		for (AccessibleObject member : memberIndex.getMembers(bean.getClass(), ZkScheduled.class)) {
+			if (member instanceof Method && ZKSCHEDULED_ANNOTATED_METHODS.matches((Method) member)) {
+				registerZkScheduled(bean, (Method) member);
+			}
 		}
 	}
 
@@ -172,27 +495,109 @@ public abstract class ZkContext implements InitializingBean, ApplicationContextA
 
 		switch (fieldEditor.getSubscribeType()) {
 		case DATA_CHANGE:
+			ZkDataChangeWatcher watcher = new ZkDataChangeWatcher(zkClient, modifierSet, dispatcher,
+					zkPathCoalesceWindowMapping.get(zkPath));
+			watcher.setSnapshot(snapshot);
+
 			try {
-				zkClient.getData()
-					.usingWatcher(new ZkDataChangeWatcher(zkClient, modifierSet))
-					.forPath(zkPath);
+				if (treeCache != null && treeCache.covers(zkPath)) {
+					watcher.watch(zkPath, zkPathInitialDataMapping.get(zkPath), treeCache);
+				} else if (zkPathsFromSnapshot.contains(zkPath)) {
+					watcher.watchInBackground(zkPath, zkPathInitialDataMapping.get(zkPath));
+				} else {
+					watcher.watch(zkPath, zkPathInitialDataMapping.get(zkPath));
+				}
 			} catch (Exception e) {
 				throw new FatalBeanException("register zkEvent failed (on path \"" + zkPath + "\")");
 			}
 
+			zkPathWatcherMapping.put(zkPath, watcher);
+
 			break;
 
 		default:
+			// not watched, but data from the snapshot is brought up to date once
+			if (zkPathsFromSnapshot.contains(zkPath)) {
+				ZkDataChangeWatcher reader = new ZkDataChangeWatcher(zkClient, modifierSet, dispatcher, 0);
+				reader.setSnapshot(snapshot);
+
+				try {
+					reader.readInBackground(zkPath, zkPathInitialDataMapping.get(zkPath));
+				} catch (Exception e) {
+					throw new FatalBeanException("read zkData failed (on path \"" + zkPath + "\")", e);
+				}
+			}
+
 			break;
 		}
 	}
 
-	private void registerElectionListener(String zkLeaderElectionPath, Set<Modifier> modifierSet) {
-		LeaderSelector leaderSelector = new LeaderSelector(zkClient, zkLeaderElectionPath, new ZkElectionListener(
-				zkLeaderElectionPath, modifierSet));
+	private void registerElectionListener(String zkLeaderElectionPath, Set<Modifier> modifierSet) throws Exception {
+		if (getElectionMode() == ElectionMode.EVENT_DRIVEN) {
+			ZkLeaderElection election = new ZkLeaderElection(zkClient, zkLeaderElectionPath, modifierSet, dispatcher);
+			election.start();
+
+			zkPathLeaderElectionMapping.put(zkLeaderElectionPath, election);
+			return;
+		}
+
+		if (getElectionMode() == ElectionMode.MEMBERSHIP) {
+			// started once all paths are added
+			getOrCreateMembership().addRole(zkLeaderElectionPath, modifierSet);
+			return;
+		}
+
+		ZkElectionListener listener = new ZkElectionListener(zkLeaderElectionPath, modifierSet, dispatcher);
+		LeaderSelector leaderSelector = new LeaderSelector(zkClient, zkLeaderElectionPath, listener);
 		leaderSelector.start();
 
 		zkPathLeaderSelectorMapping.put(zkLeaderElectionPath, leaderSelector);
+		zkPathElectionListenerMapping.put(zkLeaderElectionPath, listener);
+	}
+
+	private ZkMembership getOrCreateMembership() {
+		if (membership == null) {
+			membership = new ZkMembership(zkClient, getMembershipPath(), dispatcher);
+		}
+		return membership;
+	}
+
+	private <T extends AccessibleObject> void registerZkPartitioned(Object bean, T member) {
+		ZkPartitioned annotation = member.getAnnotation(ZkPartitioned.class);
+		String name = annotation.value();
+
+		if (annotation.partitions() <= 0) {
+			throw new FatalBeanException("partitions of \"" + name + "\" must be positive");
+		}
+		Integer partitions = partitionedPartitionsMapping.get(name);
+		if (partitions != null && partitions != annotation.partitions()) {
+			throw new FatalBeanException("Confilct partitions of \"" + name + "\"");
+		}
+
+		Modifier modifier = modifierFactory.getModifier(bean, member, SubscribeType.DATA_CHANGE,
+				CreateStrategy.CONSTRUCTOR, PartitionDecoder.class);
+
+		if (partitionedModifierMapping.containsKey(name)) {
+			partitionedModifierMapping.get(name).add(modifier);
+		} else {
+			Set<Modifier> modifierSet = new HashSet<Modifier>();
+			modifierSet.add(modifier);
+
+			partitionedModifierMapping.put(name, modifierSet);
+			partitionedPartitionsMapping.put(name, annotation.partitions());
+		}
+	}
+
+	/**
+	 * A ZkScheduled method takes part in the election of its path like a ZkLeader member, in any ElectionMode
+	 */
+	private void registerZkScheduled(Object bean, Method method) {
+		String zkLeaderElectionPath = method.getAnnotation(ZkScheduled.class).value();
+
+		LeaderGatedTask task = new LeaderGatedTask(bean, method, getTaskScheduler());
+		leaderGatedTasks.add(task);
+
+		addLeaderModifier(zkLeaderElectionPath, task);
 	}
 
 	private <T extends AccessibleObject> void registerZkLeader(Object bean, T member) {
@@ -202,6 +607,10 @@ public abstract class ZkContext implements InitializingBean, ApplicationContextA
 		Modifier modifier = modifierFactory.getModifier(bean, member, SubscribeType.DATA_CHANGE,
 				CreateStrategy.CONSTRUCTOR);
 		
+		addLeaderModifier(zkLeaderElectionPath, modifier);
+	}
+
+	private void addLeaderModifier(String zkLeaderElectionPath, Modifier modifier) {
 		if (zkPathLeaderModifierMapping.containsKey(zkLeaderElectionPath)) {
 			zkPathLeaderModifierMapping.get(zkLeaderElectionPath).add(modifier);
 		} else {
@@ -212,30 +621,90 @@ public abstract class ZkContext implements InitializingBean, ApplicationContextA
 		}
 	}
 
+	private void registerZkConfig(Object bean, Field field) {
+		String zkPath = field.getAnnotation(ZkConfig.class).value();
+
+		ConfigBinder binder = new ConfigBinder(bean, field, zkPath, getAccessStrategy());
+
+		if (zkPathConfigBinderMapping.containsKey(zkPath)) {
+			zkPathConfigBinderMapping.get(zkPath).add(binder);
+		} else {
+			Set<ConfigBinder> binderSet = new HashSet<ConfigBinder>();
+			binderSet.add(binder);
+
+			zkPathConfigBinderMapping.put(zkPath, binderSet);
+		}
+	}
+
+	/**
+	 * Subtrees of ZkConfig fields are read from the tree cache when it covers them, otherwise from a mirror of their own
+	 */
+	private void registerConfigWatchers() throws InterruptedException {
+		List<String> uncoveredPaths = new ArrayList<String>();
+		for (String zkPath : zkPathConfigBinderMapping.keySet()) {
+			if (treeCache == null || !treeCache.covers(zkPath)) {
+				uncoveredPaths.add(zkPath);
+			}
+		}
+
+		if (!uncoveredPaths.isEmpty()) {
+			configTreeCache = new ZkTreeCache(zkClient, uncoveredPaths.toArray(new String[uncoveredPaths.size()]));
+			if (!configTreeCache.start(getInitialLoadTimeout())) {
+				throw new FatalBeanException("config subtrees not loaded in " + getInitialLoadTimeout() + "ms");
+			}
+		}
+
+		for (Entry<String, Set<ConfigBinder>> entry : zkPathConfigBinderMapping.entrySet()) {
+			ZkTreeCache subtreeCache = uncoveredPaths.contains(entry.getKey()) ? configTreeCache : treeCache;
+
+			ZkConfigWatcher watcher = new ZkConfigWatcher(entry.getKey(), entry.getValue(), subtreeCache, dispatcher);
+			watcher.watch();
+
+			zkPathConfigWatcherMapping.put(entry.getKey(), watcher);
+		}
+	}
+
 	private <T extends AccessibleObject> void registerZkValue(Object bean, T member, boolean initial) {
 		ZkValue annotation = member.getAnnotation(ZkValue.class);
 		String zkPath = annotation.value();
 		
 		Modifier modifier = modifierFactory.getModifier(bean, member, annotation.subscribeType(),
-				annotation.createStrategy());
+				annotation.createStrategy(), annotation.decoder());
+
+		// members sharing a path share its watcher, the widest window wins
+		int coalesceWindow = annotation.coalesceWindow() < 0 ? getCoalesceWindow() : annotation.coalesceWindow();
+		if (!zkPathCoalesceWindowMapping.containsKey(zkPath) || zkPathCoalesceWindowMapping.get(zkPath) < coalesceWindow) {
+			zkPathCoalesceWindowMapping.put(zkPath, coalesceWindow);
+		}
 		
 		if (initial) {
 			byte[] dataByte = null;
 
-			try {
-				dataByte = zkClient.getData().forPath(zkPath);
-			} catch (Exception e) {
-				e.printStackTrace();
+			if (readFromSnapshot(zkPath)) {
+				dataByte = snapshot.get(zkPath).getData();
+			} else if (treeCache != null && treeCache.covers(zkPath) && treeCache.getData(zkPath) != null) {
+				dataByte = treeCache.getData(zkPath);
+				recordSnapshot(zkPath, dataByte, treeCache.getStat(zkPath));
+			} else {
+				try {
+					Stat stat = new Stat();
+					dataByte = zkClient.getData().storingStatIn(stat).forPath(zkPath);
+					recordSnapshot(zkPath, dataByte, stat);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
 			}
 
 			if (dataByte == null) {
 				throw new FatalBeanException("no data found on path \"" + zkPath + "\"");
 			}
 
-			String data = new String(dataByte);
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("read data(" + new String(dataByte) + ") on ZkPath(" + zkPath + ")");
+			}
+			modifier.evalData(dataByte);
 
-			LOGGER.debug("read data(" + data + ") on ZkPath(" + zkPath + ")");
-			modifier.eval(data);
+			zkPathInitialDataMapping.put(zkPath, dataByte);
 		}
 
 		if (zkPathModifierMapping.containsKey(zkPath)) {
@@ -248,18 +717,234 @@ public abstract class ZkContext implements InitializingBean, ApplicationContextA
 		}
 	}
 
+	/**
+	 * Whether the initial value of the path is taken from the snapshot, such paths are watched in background
+	 */
+	private boolean readFromSnapshot(String zkPath) {
+		if (snapshot == null || snapshot.get(zkPath) == null || snapshot.get(zkPath).getData() == null) {
+			return false;
+		}
+
+		zkPathsFromSnapshot.add(zkPath);
+		return true;
+	}
+
+	private void recordSnapshot(String zkPath, byte[] data, Stat stat) {
+		if (snapshot != null && data != null && stat != null) {
+			snapshot.update(zkPath, data, stat);
+		}
+	}
+
+	/**
+	 * Fire background reads for all distinct ZkValue paths at once, wait for them under a single deadline and then
+	 * apply the values, so every path is read only once however many members share it
+	 */
+	private void loadInitialValues() throws InterruptedException {
+		LOGGER.debug("loading initial values of " + zkPathModifierMapping.size() + " ZkPath(s) in background...");
+
+		final Map<String, byte[]> zkPathDataMapping = new ConcurrentHashMap<String, byte[]>();
+
+		Set<String> zkPaths = new HashSet<String>();
+		for (String zkPath : zkPathModifierMapping.keySet()) {
+			if (readFromSnapshot(zkPath)) {
+				zkPathDataMapping.put(zkPath, snapshot.get(zkPath).getData());
+			} else if (treeCache != null && treeCache.covers(zkPath) && treeCache.getData(zkPath) != null) {
+				zkPathDataMapping.put(zkPath, treeCache.getData(zkPath));
+				recordSnapshot(zkPath, treeCache.getData(zkPath), treeCache.getStat(zkPath));
+			} else {
+				zkPaths.add(zkPath);
+			}
+		}
+
+		final CountDownLatch latch = new CountDownLatch(zkPaths.size());
+
+		BackgroundCallback callback = new BackgroundCallback() {
+			@Override
+			public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+				if (event.getResultCode() == KeeperException.Code.OK.intValue() && event.getData() != null) {
+					zkPathDataMapping.put(event.getPath(), event.getData());
+					recordSnapshot(event.getPath(), event.getData(), event.getStat());
+				}
+
+				latch.countDown();
+			}
+		};
+
+		for (String zkPath : zkPaths) {
+			try {
+				zkClient.getData().inBackground(callback).forPath(zkPath);
+			} catch (Exception e) {
+				throw new FatalBeanException("read zkData failed (on path \"" + zkPath + "\")", e);
+			}
+		}
+
+		if (!latch.await(getInitialLoadTimeout(), TimeUnit.MILLISECONDS)) {
+			throw new FatalBeanException("initial load not finished in " + getInitialLoadTimeout() + "ms");
+		}
+
+		for (Entry<String, Set<Modifier>> entry : zkPathModifierMapping.entrySet()) {
+			byte[] dataByte = zkPathDataMapping.get(entry.getKey());
+
+			if (dataByte == null) {
+				throw new FatalBeanException("no data found on path \"" + entry.getKey() + "\"");
+			}
+
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("read data(" + new String(dataByte) + ") on ZkPath(" + entry.getKey() + ")");
+			}
+			Modifier.applyAll(entry.getValue(), dataByte);
+
+			zkPathInitialDataMapping.put(entry.getKey(), dataByte);
+		}
+	}
+
 	@Override
 	public void afterPropertiesSet() throws Exception {
+		if (getSnapshotFile() != null) {
+			snapshot = new ZkSnapshot(new File(getSnapshotFile()));
+			snapshot.load();
+		}
+
+		if (getCachedPaths().length > 0) {
+			treeCache = new ZkTreeCache(zkClient, getCachedPaths());
+
+			// starting from a snapshot, the cache fills in background and its changes flow to the watchers
+			if (snapshot != null && !snapshot.isEmpty()) {
+				treeCache.start(0);
+			} else if (!treeCache.start(getInitialLoadTimeout())) {
+				throw new FatalBeanException("tree cache not filled in " + getInitialLoadTimeout() + "ms");
+			}
+		}
+
 		scanForFieldsAndMethods();
 		validateZkPathMapping();
+
+		if (isPipelinedInitialLoad()) {
+			loadInitialValues();
+		}
 		
 		for (Entry<String, Set<Modifier>> entry : zkPathModifierMapping.entrySet()) {
 			registerEventWatcher(entry.getKey(), entry.getValue());
 		}
+
+		registerConfigWatchers();
+
+		if (snapshot != null) {
+			snapshot.setAutoSave(true);
+			try {
+				snapshot.save();
+			} catch (IOException e) {
+				LOGGER.warn("save snapshot failed (on file \"" + getSnapshotFile() + "\")", e);
+			}
+		}
 		
 		for (Entry<String, Set<Modifier>> entry : zkPathLeaderModifierMapping.entrySet()) {
 			registerElectionListener(entry.getKey(), entry.getValue());
 		}
+		for (Entry<String, Set<Modifier>> entry : partitionedModifierMapping.entrySet()) {
+			getOrCreateMembership().addPartitioned(entry.getKey(), partitionedPartitionsMapping.get(entry.getKey()),
+					entry.getValue());
+		}
+		if (membership != null) {
+			membership.start();
+		}
+	}
+
+	/**
+	 * Release everything the context holds, in order: elections, membership, leader selectors, tree caches, dispatch
+	 * threads (drained), ZkScheduled methods (interrupting runs in progress as on leadership loss) and their scheduler,
+	 * snapshot and last the client, whose session takes any node left behind with it
+	 * NOTE:failures are logged and the next resource is released all the same
+	 */
+	@Override
+	public void destroy() throws Exception {
+		for (Entry<String, ZkLeaderElection> entry : zkPathLeaderElectionMapping.entrySet()) {
+			try {
+				entry.getValue().close();
+			} catch (Exception e) {
+				LOGGER.warn("leave election failed (on path \"" + entry.getKey() + "\")", e);
+			}
+		}
+		if (membership != null) {
+			try {
+				membership.close();
+			} catch (Exception e) {
+				LOGGER.warn("leave membership failed (on path \"" + getMembershipPath() + "\")", e);
+			}
+		}
+		for (Entry<String, LeaderSelector> entry : zkPathLeaderSelectorMapping.entrySet()) {
+			try {
+				entry.getValue().close();
+			} catch (Exception e) {
+				LOGGER.warn("close leader selector failed (on path \"" + entry.getKey() + "\")", e);
+			}
+		}
+		// closing interrupts the leader, its release must reach the dispatcher before it shuts down
+		for (Entry<String, ZkElectionListener> entry : zkPathElectionListenerMapping.entrySet()) {
+			if (!entry.getValue().awaitRelease(getZkConnectionTimeout())) {
+				LOGGER.warn("leadership not released in " + getZkConnectionTimeout() + "ms (on path \""
+						+ entry.getKey() + "\")");
+			}
+		}
+
+		if (treeCache != null) {
+			try {
+				treeCache.close();
+			} catch (Exception e) {
+				LOGGER.warn("close tree cache failed", e);
+			}
+		}
+		if (configTreeCache != null) {
+			try {
+				configTreeCache.close();
+			} catch (Exception e) {
+				LOGGER.warn("close config tree cache failed", e);
+			}
+		}
+
+		try {
+			dispatcher.shutdown();
+			if (!dispatcher.awaitTermination(getZkConnectionTimeout())) {
+				LOGGER.warn("dispatcher not drained in " + getZkConnectionTimeout() + "ms");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOGGER.warn("interrupted draining dispatcher", e);
+		} catch (Exception e) {
+			LOGGER.warn("shut down dispatcher failed", e);
+		}
+
+		// a leadership still queued on the dispatcher has run by now, nothing schedules gated tasks any more
+		for (LeaderGatedTask task : leaderGatedTasks) {
+			try {
+				task.setLeader(false);
+			} catch (Exception e) {
+				LOGGER.warn("cancel leader gated task failed", e);
+			}
+		}
+		synchronized (this) {
+			if (defaultTaskScheduler != null) {
+				try {
+					defaultTaskScheduler.shutdown();
+				} catch (Exception e) {
+					LOGGER.warn("shut down task scheduler failed", e);
+				}
+			}
+		}
+
+		if (snapshot != null) {
+			try {
+				snapshot.close();
+			} catch (Exception e) {
+				LOGGER.warn("close snapshot failed", e);
+			}
+		}
+
+		try {
+			zkClient.close();
+		} catch (Exception e) {
+			LOGGER.warn("close zookeeper client failed", e);
+		}
 	}
 
 	@Override
@@ -271,8 +956,16 @@ public abstract class ZkContext implements InitializingBean, ApplicationContextA
 				.retryPolicy(new RetryNTimes(100, 10000))
 				.build();
 		
+		this.zkClient.getConnectionStateListenable().addListener(new ConnectionStateListener() {
+			@Override
+			public void stateChanged(CuratorFramework client, ConnectionState newState) {
+				ZkMetrics.getInstance().connectionStateChanged(newState);
+			}
+		});
 		this.zkClient.start();
+
+		this.dispatcher = new ZkEventDispatcher(getDispatchMode(), getDispatchThreads());
 		
-		this.modifierFactory = ModifierFactory.getInstance(applicationContext);
+		this.modifierFactory = new ModifierFactory(applicationContext, getAccessStrategy());
 	}
 }
@@ -0,0 +1,24 @@
+package com.sky.zookeeper.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Bind an immutable config object to a znode subtree, each field of the object is read from the child znode of the
+ * same name (primitives, wrappers, enums and String constructor types), other types from the child subtree alike
+ * On any change of the subtree a new object is built and the annotated field is replaced in a single write, declare it
+ * volatile so that readers always see one consistent object
+ * NOTE:the object type needs a no-argument constructor (of any visibility), its fields may be final but not initialized
+ * with a compile time constant, reads of those are inlined by the compiler
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface ZkConfig {
+	/**
+	 * ZK path of the subtree root
+	 * @return
+	 */
+	String value();
+}
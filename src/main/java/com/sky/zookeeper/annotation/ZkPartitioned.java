@@ -0,0 +1,27 @@
+package com.sky.zookeeper.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicate which of the partitions of some work this member owns, out of all members sharing the membership path
+ * The member (a field or a one argument method) takes int[], Set&lt;Integer&gt;, List&lt;Integer&gt; or String (comma
+ * separated), in ascending order
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.FIELD, ElementType.METHOD })
+public @interface ZkPartitioned {
+	/**
+	 * Name of the partitioned work, members with the same name split the same partitions
+	 * @return
+	 */
+	String value();
+
+	/**
+	 * Number of partitions, numbered from 0
+	 * @return
+	 */
+	int partitions();
+}
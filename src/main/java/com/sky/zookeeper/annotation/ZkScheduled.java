@@ -0,0 +1,51 @@
+package com.sky.zookeeper.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Run a method without arguments on a schedule, only while this server is the leader of the election path
+ * Exactly one of cron, fixedDelay and fixedRate is to be set
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface ZkScheduled {
+	/**
+	 * Election path, the same as of ZkLeader members
+	 * @return
+	 */
+	String value();
+
+	/**
+	 * Cron expression as of Spring @Scheduled
+	 * @return
+	 */
+	String cron() default "";
+
+	/**
+	 * Time (in milliseconds) from the end of one run to the start of the next
+	 * @return
+	 */
+	long fixedDelay() default -1;
+
+	/**
+	 * Time (in milliseconds) from the start of one run to the start of the next
+	 * @return
+	 */
+	long fixedRate() default -1;
+
+	/**
+	 * Time (in milliseconds) from taking leadership to the first run (not used with cron)
+	 * @return
+	 */
+	long initialDelay() default 0;
+
+	/**
+	 * Whether a run in progress is interrupted when leadership is lost, otherwise it completes and only later runs
+	 * are cancelled
+	 * @return
+	 */
+	boolean interruptOnLoss() default true;
+}
@@ -7,9 +7,10 @@ import java.lang.annotation.Target;
 
 import com.sky.zookeeper.type.CreateStrategy;
 import com.sky.zookeeper.type.SubscribeType;
+import com.sky.zookeeper.type.ValueDecoder;
 
 /**
- * Indicate data source, subscribe type and creation strategy
+ * Indicate data source, subscribe type and creation strategy or decoder
  */
 @Retention(RetentionPolicy.RUNTIME)
 @Target({ ElementType.FIELD, ElementType.METHOD })
@@ -31,4 +32,18 @@ public @interface ZkValue {
 	 * @return
 	 */
 	CreateStrategy createStrategy() default CreateStrategy.CONSTRUCTOR;
+
+	/**
+	 * Coalescing window (in milliseconds) of data changes, only the newest value inside the window is applied
+	 * -1 means follow ZkContext.getCoalesceWindow(), 0 means apply every change
+	 * @return
+	 */
+	int coalesceWindow() default -1;
+
+	/**
+	 * Decoder turning raw data straight into the value, e.g. PrimitiveDecoder for an int field
+	 * ValueDecoder.class (default) means construct the value from a String by createStrategy
+	 * @return
+	 */
+	Class<? extends ValueDecoder> decoder() default ValueDecoder.class;
 }
\ No newline at end of file
@@ -0,0 +1,181 @@
+package com.sky.zookeeper.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import com.sky.zookeeper.annotation.ZkConfig;
+import com.sky.zookeeper.annotation.ZkLeader;
+import com.sky.zookeeper.annotation.ZkManage;
+import com.sky.zookeeper.annotation.ZkPartitioned;
+import com.sky.zookeeper.annotation.ZkScheduled;
+import com.sky.zookeeper.annotation.ZkValue;
+
+/**
+ * Record ZkManage classes and their Zk* annotated members at compile time into ZkMemberIndex.LOCATION, so that
+ * ZkContext binds members without walking class hierarchies
+ * Picked up by javac from the jar, one index is written per compilation when processing is over
+ * NOTE:lines of an existing index for classes not compiled this time are kept, so incremental builds stay complete
+ */
+public class ZkIndexProcessor extends AbstractProcessor {
+	private static final List<Class<?>> MEMBER_ANNOTATIONS = Arrays.<Class<?>> asList(ZkValue.class, ZkLeader.class,
+			ZkConfig.class, ZkPartitioned.class, ZkScheduled.class);
+
+	private Set<String> lines = new LinkedHashSet<String>();
+	private Set<String> compiledClasses = new HashSet<String>();
+
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		Set<String> types = new HashSet<String>();
+		types.add(ZkManage.class.getName());
+		for (Class<?> annotation : MEMBER_ANNOTATIONS) {
+			types.add(annotation.getName());
+		}
+
+		return types;
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+			addCompiled(type);
+		}
+
+		for (Element element : roundEnv.getElementsAnnotatedWith(ZkManage.class)) {
+			if (element.getKind() == ElementKind.CLASS) {
+				lines.add(ZkMemberIndex.line(binaryName((TypeElement) element), ZkMemberIndex.TYPE, "", ""));
+			}
+		}
+
+		for (Class<?> annotation : MEMBER_ANNOTATIONS) {
+			@SuppressWarnings("unchecked")
+			Set<? extends Element> members = roundEnv
+					.getElementsAnnotatedWith((Class<? extends java.lang.annotation.Annotation>) annotation);
+
+			for (Element member : members) {
+				String owner = binaryName((TypeElement) member.getEnclosingElement());
+
+				if (member.getKind() == ElementKind.FIELD) {
+					lines.add(ZkMemberIndex.line(owner, ZkMemberIndex.FIELD, member.getSimpleName().toString(),
+							annotation.getSimpleName()));
+				} else if (member.getKind() == ElementKind.METHOD) {
+					lines.add(ZkMemberIndex.line(owner, ZkMemberIndex.METHOD, signature((ExecutableElement) member),
+							annotation.getSimpleName()));
+				}
+			}
+		}
+
+		if (roundEnv.processingOver()) {
+			write();
+		}
+
+		return false;
+	}
+
+	private void addCompiled(TypeElement type) {
+		compiledClasses.add(binaryName(type));
+		for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+			addCompiled(nested);
+		}
+	}
+
+	private String binaryName(TypeElement type) {
+		return processingEnv.getElementUtils().getBinaryName(type).toString();
+	}
+
+	/**
+	 * name(type,...) with erased parameter types, as Class.getCanonicalName gives them
+	 */
+	private String signature(ExecutableElement method) {
+		StringBuilder sb = new StringBuilder(method.getSimpleName()).append('(');
+		for (VariableElement parameter : method.getParameters()) {
+			if (sb.charAt(sb.length() - 1) != '(') {
+				sb.append(',');
+			}
+			sb.append(processingEnv.getTypeUtils().erasure(parameter.asType()));
+		}
+
+		return sb.append(')').toString();
+	}
+
+	/**
+	 * Lines of the index left by an earlier compilation for classes not compiled this time
+	 */
+	private List<String> keptLines() {
+		List<String> kept = new ArrayList<String>();
+
+		try {
+			FileObject existing = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
+					ZkMemberIndex.LOCATION);
+
+			BufferedReader reader = new BufferedReader(existing.openReader(true));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					int tab = line.indexOf('\t');
+					if (tab > 0 && !compiledClasses.contains(line.substring(0, tab))) {
+						kept.add(line);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			// no index yet
+		}
+
+		return kept;
+	}
+
+	private void write() {
+		List<String> kept = keptLines();
+		if (kept.isEmpty() && lines.isEmpty()) {
+			return;
+		}
+
+		try {
+			FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+					ZkMemberIndex.LOCATION);
+
+			Writer writer = file.openWriter();
+			try {
+				for (String line : kept) {
+					writer.write(line);
+					writer.write('\n');
+				}
+				for (String line : lines) {
+					writer.write(line);
+					writer.write('\n');
+				}
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Kind.ERROR, "writing " + ZkMemberIndex.LOCATION + " failed: " + e);
+		}
+	}
+}
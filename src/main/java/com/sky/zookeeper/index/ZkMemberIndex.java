@@ -0,0 +1,247 @@
+package com.sky.zookeeper.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Zk* annotated members recorded by ZkIndexProcessor, resolved to fields and methods once per class
+ * Line format (tab separated): binary class name, kind (type, field or method), member name or signature, annotation
+ * NOTE:members of classes compiled without the processor are not known, each such class of a hierarchy (e.g. a
+ * superclass from another jar or a subclass compiled with -proc:none) has its declared members scanned reflectively
+ */
+public class ZkMemberIndex {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ZkMemberIndex.class);
+
+	public static final String LOCATION = "META-INF/spring-zookeeper/members.index";
+
+	static final String TYPE = "type";
+	static final String FIELD = "field";
+	static final String METHOD = "method";
+
+	/**
+	 * Members of one class as recorded, member is a field name or a method signature
+	 */
+	private static class Recorded {
+		private String kind;
+		private String member;
+		private String annotation;
+	}
+
+	private Set<String> managedClasses = new HashSet<String>();
+	private Map<String, List<Recorded>> classMemberMapping = new HashMap<String, List<Recorded>>();
+
+	// class -> annotation simple name -> members declared by the class, filled on first use
+	private Map<Class<?>, Map<String, List<AccessibleObject>>> resolved = new ConcurrentHashMap<Class<?>, Map<String, List<AccessibleObject>>>();
+
+	static String line(String className, String kind, String member, String annotation) {
+		return className + '\t' + kind + '\t' + member + '\t' + annotation;
+	}
+
+	/**
+	 * Read all indexes visible to the class loader
+	 */
+	public static ZkMemberIndex load(ClassLoader classLoader) throws IOException {
+		ZkMemberIndex index = new ZkMemberIndex();
+
+		Enumeration<URL> urls = classLoader.getResources(LOCATION);
+		while (urls.hasMoreElements()) {
+			URL url = urls.nextElement();
+
+			BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), "UTF-8"));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					index.add(line);
+				}
+			} finally {
+				reader.close();
+			}
+		}
+
+		LOGGER.debug("loaded member index of " + index.managedClasses.size() + " managed class(es)");
+		return index;
+	}
+
+	private void add(String line) {
+		String[] parts = line.split("\t", -1);
+		if (parts.length != 4) {
+			return;
+		}
+
+		if (TYPE.equals(parts[1])) {
+			managedClasses.add(parts[0]);
+			return;
+		}
+
+		Recorded recorded = new Recorded();
+		recorded.kind = parts[1];
+		recorded.member = parts[2];
+		recorded.annotation = parts[3];
+
+		List<Recorded> members = classMemberMapping.get(parts[0]);
+		if (members == null) {
+			members = new ArrayList<Recorded>();
+			classMemberMapping.put(parts[0], members);
+		}
+		members.add(recorded);
+	}
+
+	/**
+	 * Whether the class or one of its superclasses was compiled as a ZkManage class with the processor
+	 */
+	public boolean isIndexed(Class<?> clazz) {
+		for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+			if (managedClasses.contains(c.getName())) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Whether the index has lines of the class itself, regardless of its superclasses
+	 */
+	boolean isRecorded(Class<?> clazz) {
+		return managedClasses.contains(clazz.getName()) || classMemberMapping.containsKey(clazz.getName());
+	}
+
+	/**
+	 * Members of the class and its superclasses carrying the annotation, subclass members first, recorded ones of the
+	 * classes in the index and declared ones of the others
+	 * NOTE:members whose annotation is gone (stale index) are left out
+	 */
+	public List<AccessibleObject> getMembers(Class<?> clazz, Class<? extends Annotation> annotation) {
+		List<AccessibleObject> members = new ArrayList<AccessibleObject>();
+
+		for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+			List<AccessibleObject> declared = resolve(c).get(annotation.getSimpleName());
+			if (declared == null) {
+				continue;
+			}
+
+			for (AccessibleObject member : declared) {
+				if (member.isAnnotationPresent(annotation)) {
+					members.add(member);
+				}
+			}
+		}
+
+		return members;
+	}
+
+	private Map<String, List<AccessibleObject>> resolve(Class<?> clazz) {
+		Map<String, List<AccessibleObject>> members = resolved.get(clazz);
+		if (members != null) {
+			return members;
+		}
+
+		List<Recorded> recordedMembers = classMemberMapping.get(clazz.getName());
+		if (!isRecorded(clazz)) {
+			members = scan(clazz);
+		} else if (recordedMembers == null) {
+			members = Collections.emptyMap();
+		} else {
+			members = new HashMap<String, List<AccessibleObject>>();
+			for (Recorded recorded : recordedMembers) {
+				AccessibleObject member = FIELD.equals(recorded.kind) ? findField(clazz, recorded.member) : findMethod(
+						clazz, recorded.member);
+				if (member == null) {
+					LOGGER.warn("indexed member(" + clazz.getName() + "." + recorded.member + ") not found");
+					continue;
+				}
+
+				List<AccessibleObject> annotated = members.get(recorded.annotation);
+				if (annotated == null) {
+					annotated = new ArrayList<AccessibleObject>();
+					members.put(recorded.annotation, annotated);
+				}
+				annotated.add(member);
+			}
+		}
+
+		resolved.put(clazz, members);
+		return members;
+	}
+
+	/**
+	 * Declared members of a class missing from the index, by annotation simple name
+	 */
+	private static Map<String, List<AccessibleObject>> scan(Class<?> clazz) {
+		Map<String, List<AccessibleObject>> members = new HashMap<String, List<AccessibleObject>>();
+
+		List<AccessibleObject> declared = new ArrayList<AccessibleObject>();
+		declared.addAll(Arrays.asList(clazz.getDeclaredFields()));
+		for (Method method : clazz.getDeclaredMethods()) {
+			if (!method.isBridge()) {
+				declared.add(method);
+			}
+		}
+
+		for (AccessibleObject member : declared) {
+			for (Annotation annotation : member.getAnnotations()) {
+				String name = annotation.annotationType().getSimpleName();
+				List<AccessibleObject> annotated = members.get(name);
+				if (annotated == null) {
+					annotated = new ArrayList<AccessibleObject>();
+					members.put(name, annotated);
+				}
+				annotated.add(member);
+			}
+		}
+
+		if (!members.isEmpty()) {
+			LOGGER.debug("class(" + clazz.getName() + ") not in member index, scanned reflectively");
+		}
+		return members;
+	}
+
+	private static Field findField(Class<?> clazz, String name) {
+		try {
+			return clazz.getDeclaredField(name);
+		} catch (NoSuchFieldException e) {
+			return null;
+		}
+	}
+
+	private static Method findMethod(Class<?> clazz, String signature) {
+		for (Method method : clazz.getDeclaredMethods()) {
+			if (!method.isBridge() && signature.equals(signature(method))) {
+				return method;
+			}
+		}
+
+		return null;
+	}
+
+	private static String signature(Method method) {
+		StringBuilder sb = new StringBuilder(method.getName()).append('(');
+		for (Class<?> parameterType : method.getParameterTypes()) {
+			if (sb.charAt(sb.length() - 1) != '(') {
+				sb.append(',');
+			}
+			sb.append(parameterType.getCanonicalName());
+		}
+
+		return sb.append(')').toString();
+	}
+}
@@ -0,0 +1,123 @@
+package com.sky.zookeeper.metrics;
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations (in nanoseconds) in power of two buckets, recorded lock free and without allocation
+ * NOTE:percentiles are upper bounds of their bucket, so they overstate by less than a factor of two
+ */
+public class LatencyHistogram {
+	private static final int BUCKETS = 64;
+
+	// bucket i counts durations in [2^(i-1), 2^i), bucket 0 those of 0
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Point in time view of a histogram, all durations in nanoseconds
+	 */
+	public static class Snapshot {
+		private final long count;
+		private final long mean;
+		private final long p50;
+		private final long p99;
+		private final long p999;
+		private final long max;
+
+		@ConstructorProperties({ "count", "mean", "p50", "p99", "p999", "max" })
+		public Snapshot(long count, long mean, long p50, long p99, long p999, long max) {
+			this.count = count;
+			this.mean = mean;
+			this.p50 = p50;
+			this.p99 = p99;
+			this.p999 = p999;
+			this.max = max;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getMean() {
+			return mean;
+		}
+
+		public long getP50() {
+			return p50;
+		}
+
+		public long getP99() {
+			return p99;
+		}
+
+		public long getP999() {
+			return p999;
+		}
+
+		public long getMax() {
+			return max;
+		}
+	}
+
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+
+		buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+
+		long current = max.get();
+		while (nanos > current && !max.compareAndSet(current, nanos)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * Record the time elapsed since start, as taken from System.nanoTime()
+	 */
+	public void recordSince(long start) {
+		record(System.nanoTime() - start);
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @param p fraction of recorded durations, e.g. 0.99
+	 * @return upper bound of the bucket the percentile falls in, 0 if nothing was recorded
+	 */
+	public long getPercentile(double p) {
+		long[] counts = new long[BUCKETS];
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			n += counts[i];
+		}
+		if (n == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(p * n);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(i == 0 ? 0 : (i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	public Snapshot snapshot() {
+		long n = count.get();
+		return new Snapshot(n, n == 0 ? 0 : total.get() / n, getPercentile(0.5), getPercentile(0.99),
+				getPercentile(0.999), max.get());
+	}
+}
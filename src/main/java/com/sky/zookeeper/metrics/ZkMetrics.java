@@ -0,0 +1,267 @@
+package com.sky.zookeeper.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.curator.framework.state.ConnectionState;
+import com.sky.zookeeper.metrics.LatencyHistogram.Snapshot;
+
+/**
+ * Counters and latency histograms of watches, updates and sessions, shared by all contexts and resources of the JVM
+ * and exported over JMX as com.sky.zookeeper:type=ZkMetrics
+ * NOTE:recording never allocates, except the first time a path or state is counted
+ * Watch fires are counted for MAX_WATCH_PATHS paths at most, later paths together under OTHER_PATHS
+ */
+public class ZkMetrics implements ZkMetricsMXBean {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ZkMetrics.class);
+
+	public static final String OBJECT_NAME = "com.sky.zookeeper:type=ZkMetrics";
+
+	public static final int MAX_WATCH_PATHS = 1000;
+	public static final String OTHER_PATHS = "(other)";
+
+	private static final ZkMetrics INSTANCE = new ZkMetrics();
+	static {
+		INSTANCE.register();
+	}
+
+	private final ConcurrentMap<String, AtomicLong> watchFires = new ConcurrentHashMap<String, AtomicLong>();
+	private final LatencyHistogram reReadLatency = new LatencyHistogram();
+	private final LatencyHistogram applyLatency = new LatencyHistogram();
+	private final AtomicLong applyFailures = new AtomicLong();
+	private final LatencyHistogram resourceLoadLatency = new LatencyHistogram();
+	private final AtomicLong resourceLoadBytes = new AtomicLong();
+	private final LatencyHistogram contextRefreshLatency = new LatencyHistogram();
+	private final ConcurrentMap<String, AtomicLong> connectionStates = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentMap<String, AtomicLong> keeperStates = new ConcurrentHashMap<String, AtomicLong>();
+	private final AtomicLong leadershipAcquired = new AtomicLong();
+	private final AtomicLong leadershipReleased = new AtomicLong();
+	private final LatencyHistogram dispatchLatency = new LatencyHistogram();
+	private final AtomicLong dispatchQueueDepth = new AtomicLong();
+	private final AtomicLong skippedUpdates = new AtomicLong();
+	private final LatencyHistogram probeRoundTrip = new LatencyHistogram();
+	private final AtomicLong probeFailures = new AtomicLong();
+
+	public static ZkMetrics getInstance() {
+		return INSTANCE;
+	}
+
+	private void register() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(this, name);
+			}
+		} catch (JMException e) {
+			LOGGER.warn("register " + OBJECT_NAME + " failed, metrics are not exported", e);
+		}
+	}
+
+	private static void increment(ConcurrentMap<String, AtomicLong> counters, String key) {
+		AtomicLong counter = counters.get(key);
+		if (counter == null) {
+			counter = new AtomicLong();
+			AtomicLong existing = counters.putIfAbsent(key, counter);
+			if (existing != null) {
+				counter = existing;
+			}
+		}
+		counter.incrementAndGet();
+	}
+
+	private static Map<String, Long> view(ConcurrentMap<String, AtomicLong> counters) {
+		Map<String, Long> view = new TreeMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+			view.put(entry.getKey(), entry.getValue().get());
+		}
+		return view;
+	}
+
+	/**
+	 * @param zkPath the watched path (or the root of a watched subtree) rather than every path under it
+	 */
+	public void watchFired(String zkPath) {
+		// the size may overshoot by a few under races, it stays bounded all the same
+		if (!watchFires.containsKey(zkPath) && watchFires.size() >= MAX_WATCH_PATHS) {
+			zkPath = OTHER_PATHS;
+		}
+		increment(watchFires, zkPath);
+	}
+
+	/**
+	 * @param start System.nanoTime() before the read
+	 */
+	public void reRead(long start) {
+		reReadLatency.recordSince(start);
+	}
+
+	/**
+	 * @param start System.nanoTime() before the first modifier
+	 */
+	public void applied(long start) {
+		applyLatency.recordSince(start);
+	}
+
+	public void applyFailed() {
+		applyFailures.incrementAndGet();
+	}
+
+	/**
+	 * @param start System.nanoTime() before loading
+	 */
+	public void resourceLoaded(long start, int bytes) {
+		resourceLoadLatency.recordSince(start);
+		resourceLoadBytes.addAndGet(bytes);
+	}
+
+	/**
+	 * @param start System.nanoTime() before refreshing
+	 */
+	public void contextRefreshed(long start) {
+		contextRefreshLatency.recordSince(start);
+	}
+
+	/**
+	 * State of a Curator client, as seen by its connection state listeners
+	 */
+	public void connectionStateChanged(ConnectionState state) {
+		increment(connectionStates, state.name());
+	}
+
+	/**
+	 * State of a plain ZooKeeper client, as seen by its default watcher
+	 */
+	public void keeperStateChanged(KeeperState state) {
+		increment(keeperStates, state.name());
+	}
+
+	/**
+	 * @param latency nanoseconds from dispatch to start of run
+	 */
+	public void dispatched(long latency) {
+		dispatchLatency.record(latency);
+	}
+
+	/**
+	 * @param tasks tasks added to (positive) or taken from (negative) a dispatch queue
+	 */
+	public void dispatchQueued(int tasks) {
+		dispatchQueueDepth.addAndGet(tasks);
+	}
+
+	public void updateSkipped() {
+		skippedUpdates.incrementAndGet();
+	}
+
+	/**
+	 * @param roundTrip nanoseconds from sending a health probe to its answer
+	 */
+	public void probeAnswered(long roundTrip) {
+		probeRoundTrip.record(roundTrip);
+	}
+
+	public void probeFailed() {
+		probeFailures.incrementAndGet();
+	}
+
+	public void leadershipAcquired() {
+		leadershipAcquired.incrementAndGet();
+	}
+
+	public void leadershipReleased() {
+		leadershipReleased.incrementAndGet();
+	}
+
+	@Override
+	public Map<String, Long> getWatchFires() {
+		return view(watchFires);
+	}
+
+	@Override
+	public Snapshot getReReadLatency() {
+		return reReadLatency.snapshot();
+	}
+
+	@Override
+	public Snapshot getApplyLatency() {
+		return applyLatency.snapshot();
+	}
+
+	@Override
+	public long getApplyFailures() {
+		return applyFailures.get();
+	}
+
+	@Override
+	public Snapshot getResourceLoadLatency() {
+		return resourceLoadLatency.snapshot();
+	}
+
+	@Override
+	public long getResourceLoadBytes() {
+		return resourceLoadBytes.get();
+	}
+
+	@Override
+	public Snapshot getContextRefreshLatency() {
+		return contextRefreshLatency.snapshot();
+	}
+
+	@Override
+	public Map<String, Long> getConnectionStates() {
+		return view(connectionStates);
+	}
+
+	@Override
+	public Map<String, Long> getKeeperStates() {
+		return view(keeperStates);
+	}
+
+	@Override
+	public Snapshot getDispatchLatency() {
+		return dispatchLatency.snapshot();
+	}
+
+	@Override
+	public long getDispatchQueueDepth() {
+		return dispatchQueueDepth.get();
+	}
+
+	@Override
+	public long getSkippedUpdates() {
+		return skippedUpdates.get();
+	}
+
+	@Override
+	public Snapshot getProbeRoundTrip() {
+		return probeRoundTrip.snapshot();
+	}
+
+	@Override
+	public long getProbeFailures() {
+		return probeFailures.get();
+	}
+
+	@Override
+	public long getLeadershipAcquired() {
+		return leadershipAcquired.get();
+	}
+
+	@Override
+	public long getLeadershipReleased() {
+		return leadershipReleased.get();
+	}
+}
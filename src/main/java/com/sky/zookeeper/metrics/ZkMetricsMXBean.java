@@ -0,0 +1,85 @@
+package com.sky.zookeeper.metrics;
+
+import java.util.Map;
+
+import com.sky.zookeeper.metrics.LatencyHistogram.Snapshot;
+
+/**
+ * JMX view of ZkMetrics, registered as com.sky.zookeeper:type=ZkMetrics
+ * All durations are in nanoseconds
+ */
+public interface ZkMetricsMXBean {
+	/**
+	 * Watch events received, by watched path (subtrees by their root), capped at ZkMetrics.MAX_WATCH_PATHS paths
+	 */
+	Map<String, Long> getWatchFires();
+
+	/**
+	 * Time to read data of a path again after its watch fired
+	 */
+	Snapshot getReReadLatency();
+
+	/**
+	 * Time to apply one change to all modifiers of a path
+	 */
+	Snapshot getApplyLatency();
+
+	/**
+	 * Modifiers which failed to decode or take a value
+	 */
+	long getApplyFailures();
+
+	/**
+	 * Time to load and merge the znodes of a ZookeeperResource
+	 */
+	Snapshot getResourceLoadLatency();
+
+	/**
+	 * Bytes of merged config loaded by ZookeeperResource
+	 */
+	long getResourceLoadBytes();
+
+	/**
+	 * Time to refresh or re-inject a Spring context after its config changed
+	 */
+	Snapshot getContextRefreshLatency();
+
+	/**
+	 * Connection state transitions of the Curator clients of ZkContext, by Curator ConnectionState
+	 */
+	Map<String, Long> getConnectionStates();
+
+	/**
+	 * Session state events of the ZooKeeper clients of ZookeeperResource, by ZooKeeper KeeperState
+	 */
+	Map<String, Long> getKeeperStates();
+
+	/**
+	 * Time from dispatching an event to running it, over all dispatchers
+	 */
+	Snapshot getDispatchLatency();
+
+	/**
+	 * Tasks waiting to be run, over all dispatchers
+	 */
+	long getDispatchQueueDepth();
+
+	/**
+	 * Data changes skipped by ZkValue watchers as stale or unchanged
+	 */
+	long getSkippedUpdates();
+
+	/**
+	 * Round trip of answered health probes, over all ZookeeperResource probes
+	 */
+	Snapshot getProbeRoundTrip();
+
+	/**
+	 * Health probes not answered in time or answered with an error
+	 */
+	long getProbeFailures();
+
+	long getLeadershipAcquired();
+
+	long getLeadershipReleased();
+}
@@ -0,0 +1,13 @@
+package com.sky.zookeeper.type;
+
+public enum AccessStrategy {
+	/**
+	 * Access members by java.lang.reflect on every update
+	 */
+	REFLECTION,
+
+	/**
+	 * Bind members to MethodHandles once and invoke them directly on every update
+	 */
+	METHOD_HANDLE
+}
@@ -0,0 +1,68 @@
+package com.sky.zookeeper.type;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Bound access to one field or method of one object, created once per member
+ */
+public abstract class Accessor {
+	/**
+	 * Write value to the field, or invoke the method with value as the only argument
+	 */
+	public abstract void write(Object value);
+
+	/**
+	 * Primitive writes, accessors of primitive fields override them to write without boxing
+	 */
+	public void writeInt(int value) {
+		write(value);
+	}
+
+	public void writeLong(long value) {
+		write(value);
+	}
+
+	public void writeDouble(double value) {
+		write(value);
+	}
+
+	public void writeBoolean(boolean value) {
+		write(value);
+	}
+
+	/**
+	 * Read value of the field
+	 */
+	public abstract Object read();
+
+	/**
+	 * Construct new instance of the field type by its String constructor
+	 */
+	public abstract Object construct(String value);
+
+	/**
+	 * NOTE:constructor may be null if the value is never constructed from String
+	 */
+	public static Accessor forField(Object object, Field field, Constructor<?> constructor,
+			AccessStrategy accessStrategy) {
+		switch (accessStrategy) {
+		case METHOD_HANDLE:
+			return new MethodHandleAccessor(object, field, constructor);
+
+		default:
+			return new ReflectionAccessor(object, field, constructor);
+		}
+	}
+
+	public static Accessor forMethod(Object object, Method method, AccessStrategy accessStrategy) {
+		switch (accessStrategy) {
+		case METHOD_HANDLE:
+			return new MethodHandleAccessor(object, method);
+
+		default:
+			return new ReflectionAccessor(object, method);
+		}
+	}
+}
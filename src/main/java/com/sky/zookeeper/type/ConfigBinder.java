@@ -0,0 +1,179 @@
+package com.sky.zookeeper.type;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.FatalBeanException;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.ReflectionUtils.FieldCallback;
+import org.springframework.util.ReflectionUtils.FieldFilter;
+
+import com.sky.zookeeper.util.ZkTreeCache.Node;
+
+/**
+ * Build immutable config objects from a znode subtree and publish them to one field
+ * The layout of the object type is resolved once, building an object only instantiates it and writes its fields
+ * NOTE:fields are written before the object is published, final fields included
+ */
+public class ConfigBinder {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ConfigBinder.class);
+
+	private static final PrimitiveDecoder PRIMITIVE_DECODER = new PrimitiveDecoder();
+
+	/**
+	 * Instance fields, final ones included
+	 */
+	private static final FieldFilter CONFIG_FIELDS = new FieldFilter() {
+		@Override
+		public boolean matches(Field field) {
+			return !java.lang.reflect.Modifier.isStatic(field.getModifiers()) && !field.isSynthetic();
+		}
+	};
+
+	/**
+	 * How to build objects of one type: its constructor and one binding per field
+	 */
+	private static class Layout {
+		private Constructor<?> constructor;
+		private List<Binding> bindings = new ArrayList<Binding>();
+	}
+
+	private static class Binding {
+		private Field field;
+		// String constructor of the field type, null for decoded and nested fields
+		private Constructor<?> constructor;
+		// layout of a nested config, null for value fields
+		private Layout layout;
+	}
+
+	private String zkPath;
+	private Field field;
+	private Accessor accessor;
+	private Layout layout;
+
+	public ConfigBinder(Object object, Field field, String zkPath, AccessStrategy accessStrategy) {
+		this.zkPath = zkPath;
+		this.field = field;
+		this.layout = layout(field.getType(), new ArrayList<Class<?>>());
+		this.accessor = Accessor.forField(object, field, null, accessStrategy);
+
+		if (!java.lang.reflect.Modifier.isVolatile(field.getModifiers())) {
+			LOGGER.warn("ZkConfig field(" + field.getName() + ") is not volatile, readers may see a stale object");
+		}
+	}
+
+	private static Layout layout(Class<?> type, List<Class<?>> enclosing) {
+		if (enclosing.contains(type)) {
+			throw new FatalBeanException("config type " + type.getName() + " contains itself");
+		}
+		enclosing.add(type);
+
+		final Layout layout = new Layout();
+		try {
+			layout.constructor = type.getDeclaredConstructor();
+			layout.constructor.setAccessible(true);
+		} catch (NoSuchMethodException e) {
+			throw new FatalBeanException("config type " + type.getName() + " has no constructor without argument", e);
+		}
+
+		final List<Class<?>> path = enclosing;
+		ReflectionUtils.doWithFields(type, new FieldCallback() {
+			@Override
+			public void doWith(Field field) throws IllegalArgumentException, IllegalAccessException {
+				field.setAccessible(true);
+
+				Binding binding = new Binding();
+				binding.field = field;
+
+				Class<?> fieldType = field.getType();
+				if (!PRIMITIVE_DECODER.supports(fieldType)) {
+					try {
+						binding.constructor = fieldType.getConstructor(String.class);
+					} catch (NoSuchMethodException e) {
+						binding.layout = layout(fieldType, path);
+					}
+				}
+
+				layout.bindings.add(binding);
+			}
+		}, CONFIG_FIELDS);
+
+		enclosing.remove(enclosing.size() - 1);
+		return layout;
+	}
+
+	public String getZkPath() {
+		return zkPath;
+	}
+
+	public Class<?> getType() {
+		return field.getType();
+	}
+
+	/**
+	 * Build a new object from the subtree, fields without znode keep the value set by the constructor
+	 * @param subtree nodes by path, as returned by ZkTreeCache.getSubtree
+	 */
+	public Object build(Map<String, Node> subtree) {
+		return build(layout, zkPath, subtree);
+	}
+
+	private static Object build(Layout layout, String zkPath, Map<String, Node> subtree) {
+		Object config;
+		try {
+			config = layout.constructor.newInstance();
+		} catch (Exception e) {
+			throw new FatalBeanException("instantiate " + layout.constructor.getDeclaringClass().getName() + " failed", e);
+		}
+
+		for (Binding binding : layout.bindings) {
+			String childPath = zkPath.endsWith("/") ? zkPath + binding.field.getName() : zkPath + "/"
+					+ binding.field.getName();
+			Node node = subtree.get(childPath);
+			if (node == null) {
+				continue;
+			}
+
+			Object value;
+			if (binding.layout != null) {
+				value = build(binding.layout, childPath, subtree);
+			} else if (node.getData() == null) {
+				continue;
+			} else if (binding.constructor != null) {
+				try {
+					value = binding.constructor.newInstance(new String(node.getData()));
+				} catch (Exception e) {
+					throw new FatalBeanException("construct value of " + childPath + " failed", e);
+				}
+			} else {
+				value = PRIMITIVE_DECODER.decode(ByteBuffer.wrap(node.getData()).asReadOnlyBuffer(),
+						binding.field.getType());
+			}
+
+			try {
+				binding.field.set(config, value);
+			} catch (IllegalAccessException e) {
+				throw new FatalBeanException("writing " + binding.field.getName() + " failed", e);
+			}
+		}
+
+		return config;
+	}
+
+	/**
+	 * Swap the object in, in a single write of the field
+	 */
+	public void publish(Object config) {
+		accessor.write(config);
+	}
+
+	public Object get() {
+		return accessor.read();
+	}
+}
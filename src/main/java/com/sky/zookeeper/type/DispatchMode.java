@@ -0,0 +1,18 @@
+package com.sky.zookeeper.type;
+
+public enum DispatchMode {
+	/**
+	 * Run modifiers on the thread that delivers the event
+	 */
+	INLINE,
+
+	/**
+	 * Run modifiers on a bounded thread pool, in order per path
+	 */
+	THREAD_POOL,
+
+	/**
+	 * Run modifiers on virtual threads (JDK 21+), in order per path; falls back to THREAD_POOL on older JDKs
+	 */
+	VIRTUAL_THREAD
+}
@@ -0,0 +1,21 @@
+package com.sky.zookeeper.type;
+
+public enum ElectionMode {
+	/**
+	 * Curator LeaderSelector, a thread per ZkLeader path is parked for as long as it leads
+	 */
+	SELECTOR,
+
+	/**
+	 * Ephemeral sequential nodes and watches, leadership is a state changed by events and no thread is held; nodes
+	 * are named as those of SELECTOR, so both modes can share a path during a rolling switch
+	 */
+	EVENT_DRIVEN,
+
+	/**
+	 * One ephemeral node per context under ZkContext.getMembershipPath(), the leader of every ZkLeader path is derived
+	 * from the member list by rendezvous hashing; one child watch instead of nodes and watches per path, but two members
+	 * may both lead a path for a moment while a membership change propagates
+	 */
+	MEMBERSHIP
+}
@@ -1,31 +1,56 @@
 package com.sky.zookeeper.type;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
 
 import org.springframework.beans.FatalBeanException;
 import org.springframework.context.ApplicationContext;
 
 /**
  * Easy to use instance field editor
+ * Primitive fields (volatile or not) are parsed from the raw data and written without boxing, unless a decoder other
+ * than PrimitiveDecoder is given
  * NOTE:will change the field accessible state
  */
 public class FieldEditor extends Modifier {
+	private static final PrimitiveDecoder PRIMITIVE_DECODER = new PrimitiveDecoder();
+
 	private Field field;
+	private boolean primitive;
 	
 	public FieldEditor(Object object, Field field, ApplicationContext applicationContext, SubscribeType subscribeType,
 			CreateStrategy createStrategy) {
+		this(object, field, applicationContext, subscribeType, createStrategy, AccessStrategy.METHOD_HANDLE);
+	}
+
+	public FieldEditor(Object object, Field field, ApplicationContext applicationContext, SubscribeType subscribeType,
+			CreateStrategy createStrategy, AccessStrategy accessStrategy) {
+		this(object, field, applicationContext, subscribeType, createStrategy, accessStrategy, null);
+	}
+
+	/**
+	 * NOTE:with a decoder the create strategy is not used, the field type needs no String constructor
+	 */
+	public FieldEditor(Object object, Field field, ApplicationContext applicationContext, SubscribeType subscribeType,
+			CreateStrategy createStrategy, AccessStrategy accessStrategy, ValueDecoder decoder) {
 		this.object = object;
 		this.field = field;
 		
-		this.field.setAccessible(true);
-		
 		setSubscribeType(subscribeType);
 		setCreateStrategy(createStrategy);
+
+		if (decoder != null && !decoder.supports(field.getType())) {
+			throw new FatalBeanException(decoder.getClass().getName() + " can not decode " + field.getType().getName());
+		}
+		this.decoder = decoder;
+		this.primitive = field.getType().isPrimitive()
+				&& (decoder == null || decoder.getClass() == PrimitiveDecoder.class);
 		
-		if (getCreateStrategy() == CreateStrategy.CONSTRUCTOR) {
+		Constructor<?> constructor = null;
+		if (decoder == null && !primitive && getCreateStrategy() == CreateStrategy.CONSTRUCTOR) {
 			try {
-				this.constructor = this.field.getType().getConstructor(String.class);
+				constructor = this.field.getType().getConstructor(String.class);
 			} catch (SecurityException e) {
 				throw new FatalBeanException("no suitable constructor found", e);
 			} catch (NoSuchMethodException e) {
@@ -33,6 +58,7 @@ public class FieldEditor extends Modifier {
 			}
 		}
 		
+		this.accessor = Accessor.forField(object, field, constructor, accessStrategy);
 		this.applicationContext = applicationContext;
 	}
 
@@ -40,55 +66,93 @@ public class FieldEditor extends Modifier {
 	 * Get field value
 	 */
 	public Object get() {
-		try {
-			return field.get(object);
-		} catch (IllegalArgumentException e) {
-			throw new FatalBeanException("getting field value failed", e);
-		} catch (IllegalAccessException e) {
-			throw new FatalBeanException("getting field value failed", e);
-		}
+		return accessor.read();
 	}
 	
 	/**
 	 * Set field with new value contructed by given string or bean
 	 */
 	public void set(String value) {
-		LOGGER.debug("set field to " + value.toString());
-
-		try {
-			switch (getCreateStrategy()) {
-			case CONSTRUCTOR:
-				Object newValue = constructor.newInstance(value);
-				field.set(object, newValue);
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("set field to " + value);
+		}
 
-				break;
+		if (primitive) {
+			setPrimitive(ByteBuffer.wrap(value.getBytes()));
+			return;
+		}
 
-			case BEAN:
-				Object bean = applicationContext.getBean(value);
-				
-				if (bean != null) {
-					field.set(object, bean);
-				}
+		switch (getCreateStrategy()) {
+		case CONSTRUCTOR:
+			accessor.write(accessor.construct(value));
 
-				break;
+			break;
 
-			default:
-				throw new FatalBeanException("Unsupported CreateStrategy");
+		case BEAN:
+			Object bean = applicationContext.getBean(value);
+			
+			if (bean != null) {
+				accessor.write(bean);
 			}
 
-		} catch (IllegalArgumentException e) {
-			throw new FatalBeanException("construct new instance failed", e);
-		} catch (IllegalAccessException e) {
-			throw new FatalBeanException("construct new instance failed", e);
-		} catch (InstantiationException e) {
-			throw new FatalBeanException("construct new instance failed", e);
-		} catch (InvocationTargetException e) {
-			throw new FatalBeanException("construct new instance failed", e);
+			break;
+
+		default:
+			throw new FatalBeanException("Unsupported CreateStrategy");
 		}
 	}
 
+	/**
+	 * NOTE:create strategy does not apply to primitive fields
+	 */
+	private void setPrimitive(ByteBuffer data) {
+		Class<?> type = field.getType();
+
+		if (type == int.class) {
+			accessor.writeInt(PrimitiveDecoder.decodeInt(data));
+		} else if (type == long.class) {
+			accessor.writeLong(PrimitiveDecoder.decodeLong(data));
+		} else if (type == boolean.class) {
+			accessor.writeBoolean(PrimitiveDecoder.decodeBoolean(data));
+		} else if (type == double.class) {
+			accessor.writeDouble(PrimitiveDecoder.decodeDouble(data));
+		} else {
+			// short, byte, float and char are rare enough to go boxed
+			accessor.write(PRIMITIVE_DECODER.decode(data, type));
+		}
+	}
+
+	@Override
+	protected boolean decodesInPlace() {
+		return primitive;
+	}
+
+	@Override
+	public void evalData(byte[] data) {
+		if (!primitive) {
+			super.evalData(data);
+			return;
+		}
+
+		setPrimitive(ByteBuffer.wrap(data));
+	}
+
 	@Override
 	public void eval(Object arg) {
 		set((String) arg);
 	}
-}
\ No newline at end of file
+
+	@Override
+	public void assign(Object value) {
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("set field to decoded " + value);
+		}
+
+		accessor.write(value);
+	}
+
+	@Override
+	public Class<?> getValueType() {
+		return field.getType();
+	}
+}
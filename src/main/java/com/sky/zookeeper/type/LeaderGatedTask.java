@@ -0,0 +1,109 @@
+package com.sky.zookeeper.type;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.FatalBeanException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.scheduling.support.PeriodicTrigger;
+import org.springframework.util.ReflectionUtils;
+
+import com.sky.zookeeper.annotation.ZkScheduled;
+
+/**
+ * Scheduled method driven by leadership of its election path, its trigger is registered on the scheduler when
+ * leadership is taken and cancelled when it is lost, so followers never wake up for it
+ * NOTE:on loss a run in progress is interrupted (unless interruptOnLoss is off), the new leader starts from its own
+ * initial delay; runs are never retried elsewhere, a task is to be safe to cut short
+ */
+public class LeaderGatedTask extends Modifier {
+	private Method method;
+	private TaskScheduler taskScheduler;
+	private Trigger trigger;
+	private boolean interruptOnLoss;
+
+	private ScheduledFuture<?> future;
+
+	private Runnable task = new Runnable() {
+		@Override
+		public void run() {
+			try {
+				ReflectionUtils.invokeMethod(method, object);
+			} catch (RuntimeException e) {
+				// like a failed run of @Scheduled, later runs still happen
+				LOGGER.error("scheduled method(" + method.getName() + ") failed", e);
+			}
+		}
+	};
+
+	public LeaderGatedTask(Object object, Method method, TaskScheduler taskScheduler) {
+		if (method.getParameterTypes().length != 0) {
+			throw new FatalBeanException("ZkScheduled method(" + method.getName() + ") must have no parameter");
+		}
+
+		this.object = object;
+		this.method = method;
+		this.taskScheduler = taskScheduler;
+
+		ZkScheduled annotation = method.getAnnotation(ZkScheduled.class);
+		this.trigger = createTrigger(annotation);
+		this.interruptOnLoss = annotation.interruptOnLoss();
+
+		ReflectionUtils.makeAccessible(method);
+	}
+
+	private Trigger createTrigger(ZkScheduled annotation) {
+		int kinds = (annotation.cron().length() > 0 ? 1 : 0) + (annotation.fixedDelay() >= 0 ? 1 : 0)
+				+ (annotation.fixedRate() >= 0 ? 1 : 0);
+		if (kinds != 1) {
+			throw new FatalBeanException("ZkScheduled method(" + method.getName()
+					+ ") needs exactly one of cron, fixedDelay and fixedRate");
+		}
+
+		if (annotation.cron().length() > 0) {
+			return new CronTrigger(annotation.cron());
+		}
+
+		PeriodicTrigger periodicTrigger = new PeriodicTrigger(annotation.fixedRate() >= 0 ? annotation.fixedRate()
+				: annotation.fixedDelay(), TimeUnit.MILLISECONDS);
+		periodicTrigger.setFixedRate(annotation.fixedRate() >= 0);
+		periodicTrigger.setInitialDelay(annotation.initialDelay());
+		return periodicTrigger;
+	}
+
+	/**
+	 * Start or stop the schedule on a leadership transition
+	 */
+	public synchronized void setLeader(boolean leader) {
+		if (leader && future == null) {
+			LOGGER.debug("schedule method(" + method.getName() + ") on leadership");
+			future = taskScheduler.schedule(task, trigger);
+		} else if (!leader && future != null) {
+			LOGGER.debug("cancel method(" + method.getName() + ") on leadership loss");
+			future.cancel(interruptOnLoss);
+			future = null;
+		}
+	}
+
+	public synchronized boolean isScheduled() {
+		return future != null;
+	}
+
+	@Override
+	public void eval(Object arg) {
+		setLeader(Boolean.valueOf(String.valueOf(arg)));
+	}
+
+	@Override
+	public void assign(Object value) {
+		eval(value);
+	}
+
+	@Override
+	public Class<?> getValueType() {
+		return Boolean.class;
+	}
+}
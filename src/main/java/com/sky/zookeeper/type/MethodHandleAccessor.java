@@ -0,0 +1,149 @@
+package com.sky.zookeeper.type;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import org.springframework.beans.FatalBeanException;
+
+/**
+ * Accessor binds the member to MethodHandles once, so updates neither look up nor check access reflectively
+ * NOTE:will change the member accessible state
+ */
+public class MethodHandleAccessor extends Accessor {
+	private static final MethodType WRITER_TYPE = MethodType.methodType(void.class, Object.class);
+	private static final MethodType READER_TYPE = MethodType.methodType(Object.class);
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, String.class);
+
+	private MethodHandle writer;
+	// setter of the exact primitive field type, e.g. (int)void, null for other members
+	private MethodHandle primitiveWriter;
+	private MethodHandle reader;
+	private MethodHandle constructor;
+
+	public MethodHandleAccessor(Object object, Field field, Constructor<?> constructor) {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+		field.setAccessible(true);
+
+		try {
+			MethodHandle setter = bind(lookup.unreflectSetter(field), object, field.getModifiers());
+			this.writer = setter.asType(WRITER_TYPE);
+			if (field.getType().isPrimitive()) {
+				this.primitiveWriter = setter;
+			}
+			this.reader = bind(lookup.unreflectGetter(field), object, field.getModifiers()).asType(READER_TYPE);
+
+			if (constructor != null) {
+				this.constructor = lookup.unreflectConstructor(constructor).asType(CONSTRUCTOR_TYPE);
+			}
+		} catch (IllegalAccessException e) {
+			throw new FatalBeanException("binding field(" + field.getName() + ") failed", e);
+		}
+	}
+
+	public MethodHandleAccessor(Object object, Method method) {
+		method.setAccessible(true);
+
+		try {
+			this.writer = bind(MethodHandles.lookup().unreflect(method), object, method.getModifiers()).asType(
+					WRITER_TYPE);
+		} catch (IllegalAccessException e) {
+			throw new FatalBeanException("binding method(" + method.getName() + ") failed", e);
+		}
+	}
+
+	private static MethodHandle bind(MethodHandle handle, Object object, int modifiers) {
+		if (java.lang.reflect.Modifier.isStatic(modifiers)) {
+			return handle;
+		}
+
+		return handle.bindTo(object);
+	}
+
+	@Override
+	public void write(Object value) {
+		try {
+			writer.invokeExact(value);
+		} catch (Throwable e) {
+			throw new FatalBeanException("writing value failed", e);
+		}
+	}
+
+	@Override
+	public void writeInt(int value) {
+		if (primitiveWriter == null) {
+			super.writeInt(value);
+			return;
+		}
+
+		try {
+			primitiveWriter.invokeExact(value);
+		} catch (Throwable e) {
+			throw new FatalBeanException("writing value failed", e);
+		}
+	}
+
+	@Override
+	public void writeLong(long value) {
+		if (primitiveWriter == null) {
+			super.writeLong(value);
+			return;
+		}
+
+		try {
+			primitiveWriter.invokeExact(value);
+		} catch (Throwable e) {
+			throw new FatalBeanException("writing value failed", e);
+		}
+	}
+
+	@Override
+	public void writeDouble(double value) {
+		if (primitiveWriter == null) {
+			super.writeDouble(value);
+			return;
+		}
+
+		try {
+			primitiveWriter.invokeExact(value);
+		} catch (Throwable e) {
+			throw new FatalBeanException("writing value failed", e);
+		}
+	}
+
+	@Override
+	public void writeBoolean(boolean value) {
+		if (primitiveWriter == null) {
+			super.writeBoolean(value);
+			return;
+		}
+
+		try {
+			primitiveWriter.invokeExact(value);
+		} catch (Throwable e) {
+			throw new FatalBeanException("writing value failed", e);
+		}
+	}
+
+	@Override
+	public Object read() {
+		try {
+			return (Object) reader.invokeExact();
+		} catch (Throwable e) {
+			throw new FatalBeanException("getting field value failed", e);
+		}
+	}
+
+	@Override
+	public Object construct(String value) {
+		try {
+			return (Object) constructor.invokeExact(value);
+		} catch (Throwable e) {
+			throw new FatalBeanException("construct new instance failed", e);
+		}
+	}
+}
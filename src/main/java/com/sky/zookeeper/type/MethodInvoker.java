@@ -1,37 +1,60 @@
 package com.sky.zookeeper.type;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
+import org.springframework.beans.FatalBeanException;
 import org.springframework.context.ApplicationContext;
 
+import com.sky.zookeeper.metrics.ZkMetrics;
+
 
 public class MethodInvoker extends Modifier {
 	private Method method;
 
 	public MethodInvoker(Object object, Method method, ApplicationContext applicationContext,
 			SubscribeType subscribeType, CreateStrategy createStrategy) {
+		this(object, method, applicationContext, subscribeType, createStrategy, AccessStrategy.METHOD_HANDLE);
+	}
+
+	public MethodInvoker(Object object, Method method, ApplicationContext applicationContext,
+			SubscribeType subscribeType, CreateStrategy createStrategy, AccessStrategy accessStrategy) {
+		this(object, method, applicationContext, subscribeType, createStrategy, accessStrategy, null);
+	}
+
+	/**
+	 * NOTE:without a decoder the only parameter must be a String
+	 */
+	public MethodInvoker(Object object, Method method, ApplicationContext applicationContext,
+			SubscribeType subscribeType, CreateStrategy createStrategy, AccessStrategy accessStrategy,
+			ValueDecoder decoder) {
 		this.object = object;
 		this.method = method;
 
 		setSubscribeType(subscribeType);
 		setCreateStrategy(createStrategy);
+
+		if (decoder != null && !decoder.supports(method.getParameterTypes()[0])) {
+			throw new FatalBeanException(decoder.getClass().getName() + " can not decode "
+					+ method.getParameterTypes()[0].getName());
+		}
+		this.decoder = decoder;
+
+		this.accessor = Accessor.forMethod(object, method, accessStrategy);
 	}
 	
 	/**
 	 * not yet support BEAN create strategy
 	 */
 	public void invoke(Object arg) {
-		LOGGER.debug("invoke method with argument " + arg);
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("invoke method with argument " + arg);
+		}
 
 		try {
-			method.invoke(object, arg);
-		} catch (IllegalArgumentException e) {
-			e.printStackTrace();
-		} catch (IllegalAccessException e) {
-			e.printStackTrace();
-		} catch (InvocationTargetException e) {
-			e.printStackTrace();
+			accessor.write(arg);
+		} catch (FatalBeanException e) {
+			ZkMetrics.getInstance().applyFailed();
+			LOGGER.error("invoke method(" + method.getName() + ") failed", e);
 		}
 	}
 
@@ -39,4 +62,14 @@ public class MethodInvoker extends Modifier {
 	public void eval(Object arg) {
 		invoke(arg);
 	}
+
+	@Override
+	public void assign(Object value) {
+		invoke(value);
+	}
+
+	@Override
+	public Class<?> getValueType() {
+		return method.getParameterTypes()[0];
+	}
 }
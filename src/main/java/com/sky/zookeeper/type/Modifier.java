@@ -1,23 +1,149 @@
 package com.sky.zookeeper.type;
 
-import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
 
+import com.sky.zookeeper.metrics.ZkMetrics;
+
 public abstract class Modifier {
 	protected static final Logger LOGGER = LoggerFactory.getLogger(Modifier.class);
 
+	private static final Object DECODE_FAILED = new Object();
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
 	private SubscribeType subscribeType;
 	private CreateStrategy createStrategy;
 
-	protected Constructor<?> constructor;
+	protected ValueDecoder decoder;
+	protected Accessor accessor;
 	protected ApplicationContext applicationContext;
 
 	protected Object object;
 	
 	public abstract void eval(Object arg);
+
+	/**
+	 * Write an already decoded value, bypassing the create strategy
+	 */
+	public abstract void assign(Object value);
+
+	/**
+	 * Type of the field or of the only method parameter
+	 */
+	public abstract Class<?> getValueType();
+
+	/**
+	 * Whether the modifier turns raw data into its value by itself, e.g. a primitive field, applyAll then neither
+	 * builds a String nor decodes for it
+	 */
+	protected boolean decodesInPlace() {
+		return false;
+	}
+
+	/**
+	 * Apply raw data, through the decoder if any, otherwise as UTF-8 String by create strategy
+	 */
+	public void evalData(byte[] data) {
+		if (decoder == null) {
+			eval(new String(data, UTF_8));
+		} else {
+			assign(decoder.decode(ByteBuffer.wrap(data).asReadOnlyBuffer(), getValueType()));
+		}
+	}
+
+	/**
+	 * Apply raw data of one change to all modifiers of a path, data is decoded once per decoder and value type and
+	 * turned into a String once for all modifiers without decoder, primitive fields parse it themselves
+	 * NOTE:a failed decoding is logged and skips only the modifiers depending on it, a modifier failing to apply its
+	 * value is logged and does not stop the others
+	 */
+	public static void applyAll(Collection<Modifier> modifiers, byte[] data) {
+		ZkMetrics metrics = ZkMetrics.getInstance();
+		long start = System.nanoTime();
+		try {
+			applyAll(modifiers, data, metrics);
+		} catch (RuntimeException e) {
+			metrics.applyFailed();
+			throw e;
+		} finally {
+			metrics.applied(start);
+		}
+	}
+
+	private static void applyAll(Collection<Modifier> modifiers, byte[] data, ZkMetrics metrics) {
+		String text = null;
+		Map<ValueDecoder, Map<Class<?>, Object>> decoded = null;
+
+		for (Modifier modifier : modifiers) {
+			if (modifier.decodesInPlace()) {
+				try {
+					modifier.evalData(data);
+				} catch (RuntimeException e) {
+					metrics.applyFailed();
+					LOGGER.error("decode data for " + modifier.getValueType().getName() + " failed", e);
+				}
+				continue;
+			}
+
+			if (modifier.decoder == null) {
+				if (text == null) {
+					text = new String(data, UTF_8);
+				}
+				try {
+					modifier.eval(text);
+				} catch (RuntimeException e) {
+					metrics.applyFailed();
+					LOGGER.error("apply data to " + modifier.getValueType().getName() + " failed", e);
+				}
+				continue;
+			}
+
+			if (decoded == null) {
+				decoded = new HashMap<ValueDecoder, Map<Class<?>, Object>>(4);
+			}
+			Map<Class<?>, Object> byType = decoded.get(modifier.decoder);
+			if (byType == null) {
+				byType = new HashMap<Class<?>, Object>(4);
+				decoded.put(modifier.decoder, byType);
+			}
+
+			Class<?> type = modifier.getValueType();
+			Object value;
+			if (byType.containsKey(type)) {
+				value = byType.get(type);
+			} else {
+				try {
+					value = modifier.decoder.decode(ByteBuffer.wrap(data).asReadOnlyBuffer(), type);
+				} catch (RuntimeException e) {
+					metrics.applyFailed();
+					LOGGER.error("decode data for " + type.getName() + " with " + modifier.decoder.getClass().getName()
+							+ " failed", e);
+					value = DECODE_FAILED;
+				}
+				byType.put(type, value);
+			}
+
+			if (value != DECODE_FAILED) {
+				try {
+					modifier.assign(value);
+				} catch (RuntimeException e) {
+					metrics.applyFailed();
+					LOGGER.error("assign decoded " + type.getName() + " failed", e);
+				}
+			}
+		}
+	}
+
+	public ValueDecoder getDecoder() {
+		return decoder;
+	}
 	
 	public CreateStrategy getCreateStrategy() {
 		return createStrategy;
@@ -3,35 +3,86 @@ package com.sky.zookeeper.type;
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.BeanFactoryUtils;
 import org.springframework.context.ApplicationContext;
 
 public class ModifierFactory {
 	private static ModifierFactory instance = null;
 
 	private ApplicationContext applicationContext;
+	private AccessStrategy accessStrategy;
+	private Map<Class<?>, ValueDecoder> decoders = new ConcurrentHashMap<Class<?>, ValueDecoder>();
 
 	private ModifierFactory(ApplicationContext applicationContext) {
+		this(applicationContext, AccessStrategy.METHOD_HANDLE);
+	}
+
+	/**
+	 * Factory of one context, members are bound with its own strategy and decoders are looked up in its own beans
+	 */
+	public ModifierFactory(ApplicationContext applicationContext, AccessStrategy accessStrategy) {
 		this.applicationContext = applicationContext;
+		this.accessStrategy = accessStrategy;
 	}
 
 	public FieldEditor getFieldEditor(Object object, Field field, SubscribeType subscribeType, CreateStrategy createStrategy) {
-		return new FieldEditor(object, field, applicationContext, subscribeType, createStrategy);
+		return new FieldEditor(object, field, applicationContext, subscribeType, createStrategy, accessStrategy);
 	}
 	
 	public MethodInvoker getMethodInvoker(Object object, Method method, SubscribeType subscribeType, CreateStrategy createStrategy) {
-		return new MethodInvoker(object, method, applicationContext, subscribeType, createStrategy);
+		return new MethodInvoker(object, method, applicationContext, subscribeType, createStrategy, accessStrategy);
+	}
+	
+	public AccessStrategy getAccessStrategy() {
+		return accessStrategy;
 	}
 	
 	public Modifier getModifier(Object object, AccessibleObject member, SubscribeType subscribeType, CreateStrategy createStrategy) {
+		return getModifier(object, member, subscribeType, createStrategy, null);
+	}
+
+	/**
+	 * @param decoderClass null or ValueDecoder.class to construct values by create strategy
+	 */
+	public Modifier getModifier(Object object, AccessibleObject member, SubscribeType subscribeType,
+			CreateStrategy createStrategy, Class<? extends ValueDecoder> decoderClass) {
+		ValueDecoder decoder = getDecoder(decoderClass);
+
 		if (member instanceof Field) {
-			return getFieldEditor(object, (Field) member, subscribeType, createStrategy);
+			return new FieldEditor(object, (Field) member, applicationContext, subscribeType, createStrategy,
+					accessStrategy, decoder);
 		} else if (member instanceof Method) {
-			return getMethodInvoker(object, (Method) member, subscribeType, createStrategy);
+			return new MethodInvoker(object, (Method) member, applicationContext, subscribeType, createStrategy,
+					accessStrategy, decoder);
 		}
 
 		return null;
 	}
+
+	/**
+	 * One decoder per class, the only bean of that class if the context has one, otherwise a new instance
+	 * @return null for null or ValueDecoder.class
+	 */
+	public ValueDecoder getDecoder(Class<? extends ValueDecoder> decoderClass) {
+		if (decoderClass == null || decoderClass == ValueDecoder.class) {
+			return null;
+		}
+
+		ValueDecoder decoder = decoders.get(decoderClass);
+		if (decoder == null) {
+			String[] names = applicationContext == null ? new String[0] : BeanFactoryUtils
+					.beanNamesForTypeIncludingAncestors(applicationContext, decoderClass);
+			decoder = names.length == 1 ? applicationContext.getBean(names[0], decoderClass) : BeanUtils
+					.instantiateClass(decoderClass);
+			decoders.put(decoderClass, decoder);
+		}
+
+		return decoder;
+	}
 	
 	public static ModifierFactory getInstance(ApplicationContext applicationContext) {
 		if (instance != null) {
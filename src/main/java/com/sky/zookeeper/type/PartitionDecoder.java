@@ -0,0 +1,53 @@
+package com.sky.zookeeper.type;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Decode a comma separated list of partitions (e.g. "0,5,17") into int[], an unmodifiable sorted Set or List of
+ * Integer, or the String itself
+ */
+public class PartitionDecoder implements ValueDecoder {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@Override
+	public boolean supports(Class<?> type) {
+		return type == int[].class || type == String.class || type == List.class
+				|| (type != Object.class && type.isAssignableFrom(TreeSet.class));
+	}
+
+	@Override
+	public Object decode(ByteBuffer data, Class<?> type) {
+		String text = UTF_8.decode(data).toString();
+		if (type == String.class) {
+			return text;
+		}
+
+		String[] items = text.isEmpty() ? new String[0] : text.split(",");
+		int[] partitions = new int[items.length];
+		for (int i = 0; i < items.length; i++) {
+			try {
+				partitions[i] = Integer.parseInt(items[i].trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("malformed partition list \"" + text + "\"", e);
+			}
+		}
+
+		if (type == int[].class) {
+			return partitions;
+		}
+
+		List<Integer> list = new ArrayList<Integer>(partitions.length);
+		for (int partition : partitions) {
+			list.add(partition);
+		}
+		if (type == List.class) {
+			return Collections.unmodifiableList(list);
+		}
+		return Collections.unmodifiableSortedSet(new TreeSet<Integer>(list));
+	}
+}
@@ -0,0 +1,139 @@
+package com.sky.zookeeper.type;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Decode primitives (and their wrappers), String and enums from text data
+ * Integral values are parsed straight from the bytes, surrounding whitespace is ignored except for String
+ */
+public class PrimitiveDecoder implements ValueDecoder {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@Override
+	public boolean supports(Class<?> type) {
+		return type.isPrimitive() && type != void.class || type == String.class || type.isEnum()
+				|| type == Integer.class || type == Long.class || type == Short.class || type == Byte.class
+				|| type == Double.class || type == Float.class || type == Boolean.class || type == Character.class;
+	}
+
+	@Override
+	public Object decode(ByteBuffer data, Class<?> type) {
+		if (type == int.class || type == Integer.class) {
+			return decodeInt(data);
+		} else if (type == long.class || type == Long.class) {
+			return decodeLong(data);
+		} else if (type == boolean.class || type == Boolean.class) {
+			return decodeBoolean(data);
+		} else if (type == String.class) {
+			return UTF_8.decode(data).toString();
+		} else if (type == double.class || type == Double.class) {
+			return decodeDouble(data);
+		} else if (type == float.class || type == Float.class) {
+			return Float.parseFloat(text(data));
+		} else if (type == short.class || type == Short.class) {
+			return (short) parseLong(data, Short.MIN_VALUE, Short.MAX_VALUE);
+		} else if (type == byte.class || type == Byte.class) {
+			return (byte) parseLong(data, Byte.MIN_VALUE, Byte.MAX_VALUE);
+		} else if (type == char.class || type == Character.class) {
+			String text = text(data);
+			if (text.length() != 1) {
+				throw new IllegalArgumentException("not a single character: \"" + text + "\"");
+			}
+			return text.charAt(0);
+		} else if (type.isEnum()) {
+			return toEnum(type, text(data));
+		}
+
+		throw new IllegalArgumentException("unsupported type " + type.getName());
+	}
+
+	public static int decodeInt(ByteBuffer data) {
+		return (int) parseLong(data, Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+
+	public static long decodeLong(ByteBuffer data) {
+		return parseLong(data, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * NOTE:goes through a String, exact rounding from the bytes is not worth it
+	 */
+	public static double decodeDouble(ByteBuffer data) {
+		return Double.parseDouble(text(data));
+	}
+
+	/**
+	 * "true" in any case, anything else is false
+	 */
+	public static boolean decodeBoolean(ByteBuffer data) {
+		return parseBoolean(data);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object toEnum(Class<?> type, String name) {
+		return Enum.valueOf((Class<? extends Enum>) type, name);
+	}
+
+	private static String text(ByteBuffer data) {
+		return UTF_8.decode(data).toString().trim();
+	}
+
+	private static int start(ByteBuffer data) {
+		int start = data.position();
+		while (start < data.limit() && data.get(start) <= ' ') {
+			start++;
+		}
+		return start;
+	}
+
+	private static int end(ByteBuffer data, int start) {
+		int end = data.limit();
+		while (end > start && data.get(end - 1) <= ' ') {
+			end--;
+		}
+		return end;
+	}
+
+	private static long parseLong(ByteBuffer data, long min, long max) {
+		int start = start(data);
+		int end = end(data, start);
+
+		int i = start;
+		boolean negative = false;
+		if (i < end && (data.get(i) == '-' || data.get(i) == '+')) {
+			negative = data.get(i) == '-';
+			i++;
+		}
+		if (i == end) {
+			throw invalid(data, start, end);
+		}
+
+		// accumulate negatively so that min of long fits
+		long limit = negative ? min : -max;
+		long result = 0;
+		for (; i < end; i++) {
+			int digit = data.get(i) - '0';
+			if (digit < 0 || digit > 9 || result < (limit + digit) / 10) {
+				throw invalid(data, start, end);
+			}
+			result = result * 10 - digit;
+		}
+
+		return negative ? result : -result;
+	}
+
+	private static boolean parseBoolean(ByteBuffer data) {
+		int start = start(data);
+		int end = end(data, start);
+
+		return end - start == 4 && (data.get(start) | 0x20) == 't' && (data.get(start + 1) | 0x20) == 'r'
+				&& (data.get(start + 2) | 0x20) == 'u' && (data.get(start + 3) | 0x20) == 'e';
+	}
+
+	private static NumberFormatException invalid(ByteBuffer data, int start, int end) {
+		ByteBuffer slice = data.duplicate();
+		slice.limit(end).position(start);
+		return new NumberFormatException("For input string: \"" + UTF_8.decode(slice) + "\"");
+	}
+}
@@ -0,0 +1,141 @@
+package com.sky.zookeeper.type;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.springframework.beans.FatalBeanException;
+
+/**
+ * Accessor goes through java.lang.reflect on every call
+ * NOTE:will change the member accessible state
+ */
+public class ReflectionAccessor extends Accessor {
+	private Object object;
+	private Field field;
+	private Method method;
+	private Constructor<?> constructor;
+
+	public ReflectionAccessor(Object object, Field field, Constructor<?> constructor) {
+		this.object = object;
+		this.field = field;
+		this.constructor = constructor;
+
+		this.field.setAccessible(true);
+	}
+
+	public ReflectionAccessor(Object object, Method method) {
+		this.object = object;
+		this.method = method;
+
+		this.method.setAccessible(true);
+	}
+
+	@Override
+	public void write(Object value) {
+		try {
+			if (field != null) {
+				field.set(object, value);
+			} else {
+				method.invoke(object, value);
+			}
+		} catch (IllegalArgumentException e) {
+			throw new FatalBeanException("writing value failed", e);
+		} catch (IllegalAccessException e) {
+			throw new FatalBeanException("writing value failed", e);
+		} catch (InvocationTargetException e) {
+			throw new FatalBeanException("writing value failed", e);
+		}
+	}
+
+	@Override
+	public void writeInt(int value) {
+		if (field == null) {
+			super.writeInt(value);
+			return;
+		}
+
+		try {
+			field.setInt(object, value);
+		} catch (IllegalArgumentException e) {
+			throw new FatalBeanException("writing value failed", e);
+		} catch (IllegalAccessException e) {
+			throw new FatalBeanException("writing value failed", e);
+		}
+	}
+
+	@Override
+	public void writeLong(long value) {
+		if (field == null) {
+			super.writeLong(value);
+			return;
+		}
+
+		try {
+			field.setLong(object, value);
+		} catch (IllegalArgumentException e) {
+			throw new FatalBeanException("writing value failed", e);
+		} catch (IllegalAccessException e) {
+			throw new FatalBeanException("writing value failed", e);
+		}
+	}
+
+	@Override
+	public void writeDouble(double value) {
+		if (field == null) {
+			super.writeDouble(value);
+			return;
+		}
+
+		try {
+			field.setDouble(object, value);
+		} catch (IllegalArgumentException e) {
+			throw new FatalBeanException("writing value failed", e);
+		} catch (IllegalAccessException e) {
+			throw new FatalBeanException("writing value failed", e);
+		}
+	}
+
+	@Override
+	public void writeBoolean(boolean value) {
+		if (field == null) {
+			super.writeBoolean(value);
+			return;
+		}
+
+		try {
+			field.setBoolean(object, value);
+		} catch (IllegalArgumentException e) {
+			throw new FatalBeanException("writing value failed", e);
+		} catch (IllegalAccessException e) {
+			throw new FatalBeanException("writing value failed", e);
+		}
+	}
+
+	@Override
+	public Object read() {
+		try {
+			return field.get(object);
+		} catch (IllegalArgumentException e) {
+			throw new FatalBeanException("getting field value failed", e);
+		} catch (IllegalAccessException e) {
+			throw new FatalBeanException("getting field value failed", e);
+		}
+	}
+
+	@Override
+	public Object construct(String value) {
+		try {
+			return constructor.newInstance(value);
+		} catch (IllegalArgumentException e) {
+			throw new FatalBeanException("construct new instance failed", e);
+		} catch (InstantiationException e) {
+			throw new FatalBeanException("construct new instance failed", e);
+		} catch (IllegalAccessException e) {
+			throw new FatalBeanException("construct new instance failed", e);
+		} catch (InvocationTargetException e) {
+			throw new FatalBeanException("construct new instance failed", e);
+		}
+	}
+}
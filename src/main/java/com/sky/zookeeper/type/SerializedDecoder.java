@@ -0,0 +1,116 @@
+package com.sky.zookeeper.type;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Decode objects written by ObjectOutputStream
+ * NOTE:only the member type and the allowed classes (with their superclasses and arrays of them) are resolved, any
+ * other class in the data is rejected before it is instantiated; declare a bean of this class to allow more, e.g. the
+ * element types of a collection
+ */
+public class SerializedDecoder implements ValueDecoder {
+	private volatile Set<Class<?>> allowedClasses = Collections.emptySet();
+
+	/**
+	 * Classes allowed in the data besides the type of the member
+	 */
+	public void setAllowedClasses(Class<?>... allowedClasses) {
+		this.allowedClasses = Collections.unmodifiableSet(new HashSet<Class<?>>(Arrays.asList(allowedClasses)));
+	}
+
+	@Override
+	public boolean supports(Class<?> type) {
+		return !type.isPrimitive();
+	}
+
+	@Override
+	public Object decode(final ByteBuffer data, final Class<?> type) {
+		InputStream in = new InputStream() {
+			@Override
+			public int read() {
+				return data.hasRemaining() ? data.get() & 0xFF : -1;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				if (!data.hasRemaining()) {
+					return -1;
+				}
+
+				len = Math.min(len, data.remaining());
+				data.get(b, off, len);
+				return len;
+			}
+		};
+
+		Object value;
+		try {
+			ObjectInputStream objectIn = new ObjectInputStream(in) {
+				@Override
+				protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+					// loaded without initialization
+					Class<?> cls = super.resolveClass(desc);
+					if (!isAllowed(cls, type)) {
+						throw new InvalidClassException(desc.getName(), "not allowed for " + type.getName());
+					}
+					return cls;
+				}
+
+				@Override
+				protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+					throw new InvalidClassException("proxy of " + Arrays.toString(interfaces), "not allowed");
+				}
+			};
+			value = objectIn.readObject();
+		} catch (IOException e) {
+			throw new IllegalArgumentException("malformed serialized data", e);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalArgumentException("class of serialized data not found", e);
+		}
+
+		if (value != null && !type.isInstance(value)) {
+			throw new IllegalArgumentException("decoded " + value.getClass().getName() + " is not a " + type.getName());
+		}
+		return value;
+	}
+
+	private boolean isAllowed(Class<?> cls, Class<?> type) {
+		while (cls.isArray()) {
+			cls = cls.getComponentType();
+		}
+		if (cls.isPrimitive() || isSuperclass(cls, type)) {
+			return true;
+		}
+
+		for (Class<?> allowed : allowedClasses) {
+			if (isSuperclass(cls, allowed)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Whether cls is the allowed class or a superclass read along with it, e.g. Number for Integer
+	 */
+	private static boolean isSuperclass(Class<?> cls, Class<?> allowed) {
+		while (allowed.isArray()) {
+			allowed = allowed.getComponentType();
+		}
+		for (Class<?> c = allowed; c != null; c = c.getSuperclass()) {
+			if (c == cls) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,21 @@
+package com.sky.zookeeper.type;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Turn the raw data of a znode into the value of a member, without going through a String
+ * One instance serves all members using it, and data of one change is decoded once per decoder and member type
+ * NOTE:implementations must be thread safe, and must not keep or modify the given buffer
+ */
+public interface ValueDecoder {
+	/**
+	 * Checked once when a member is bound
+	 */
+	boolean supports(Class<?> type);
+
+	/**
+	 * @param data read only buffer positioned at the start of the data
+	 * @param type type of the field or of the only method parameter
+	 */
+	Object decode(ByteBuffer data, Class<?> type);
+}
@@ -1,11 +1,19 @@
 package com.sky.zookeeper.util;
 
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.zookeeper.WatchedEvent;
 import org.apache.zookeeper.Watcher;
 import org.springframework.context.support.AbstractApplicationContext;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
+import com.sky.zookeeper.metrics.ZkMetrics;
 import com.sky.zookeeper.util.ZookeeperResource.ReloadContext;
 
 public class RefreshContextWatcher implements Watcher {
@@ -13,12 +21,66 @@ public class RefreshContextWatcher implements Watcher {
     private static Log log = LogFactory.getLog(RefreshContextWatcher.class);
 
     private AbstractApplicationContext ctx;
+    private ZookeeperConfigurer configurer;
     private boolean regressionZnodes;
     private ReloadContext reloadContext;
 
+    // wait for no more changes (in milliseconds) before reloading
+    private long quietPeriod;
+    // least time (in milliseconds) from the end of one reload to the start of the next
+    private long minInterval;
+
+    // reloading reads znodes asynchronously, whose callbacks come on the zookeeper event thread, so never reload on it
+    private ScheduledExecutorService reloadExecutor;
+    private ScheduledFuture<?> scheduledReload;
+    private boolean reloadRequested = false;
+    private boolean reloading = false;
+    private long lastReloadEnd = 0;
+
+    private Runnable reloadTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (RefreshContextWatcher.this) {
+                if (!reloadRequested) {
+                    return;
+                }
+                reloadRequested = false;
+                reloading = true;
+                scheduledReload = null;
+            }
+
+            try {
+                reload();
+            } finally {
+                synchronized (RefreshContextWatcher.this) {
+                    reloading = false;
+                    lastReloadEnd = System.currentTimeMillis();
+
+                    // changes during the reload are merged into one follow-up reload
+                    if (reloadRequested) {
+                        scheduleReload();
+                    }
+                }
+            }
+        }
+    };
+
     public RefreshContextWatcher(AbstractApplicationContext ctx, boolean regressionZnodes, ReloadContext reloadContext) {
+        this(ctx, null, regressionZnodes, reloadContext, 0, 0);
+    }
+
+    public RefreshContextWatcher(AbstractApplicationContext ctx, ZookeeperConfigurer configurer,
+            boolean regressionZnodes, ReloadContext reloadContext, long quietPeriod, long minInterval) {
         this.ctx = ctx;
+        this.configurer = configurer;
+        this.regressionZnodes = regressionZnodes;
         this.reloadContext = reloadContext;
+        this.quietPeriod = quietPeriod;
+        this.minInterval = minInterval;
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("zk-refresh-");
+        threadFactory.setDaemon(true);
+        this.reloadExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
     }
 
     @Override
@@ -32,8 +94,8 @@ public class RefreshContextWatcher implements Watcher {
             log.info("Detected ZNode or sub ZNode changed.");
             switch (reloadContext) {
             case AUTO:
-                log.info("Refresh spring context.");
-                ctx.refresh();
+            case INCREMENTAL:
+                requestReload();
                 break;
             case HOLD:
                 log.info("Keep context unchange according to configuration.");
@@ -48,4 +110,68 @@ public class RefreshContextWatcher implements Watcher {
             break;
         }
     }
+
+    /**
+     * Reload once no change arrives for the quiet period, and no sooner than min interval after the last reload
+     */
+    private synchronized void requestReload() {
+        reloadRequested = true;
+        if (!reloading) {
+            scheduleReload();
+        }
+    }
+
+    private synchronized void scheduleReload() {
+        if (reloadExecutor.isShutdown()) {
+            return;
+        }
+        if (scheduledReload != null) {
+            scheduledReload.cancel(false);
+        }
+
+        long delay = Math.max(quietPeriod, lastReloadEnd + minInterval - System.currentTimeMillis());
+        scheduledReload = reloadExecutor.schedule(reloadTask, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void reload() {
+        long start = System.nanoTime();
+        switch (reloadContext) {
+        case INCREMENTAL:
+            reinject();
+            break;
+        default:
+            refresh();
+            break;
+        }
+        ZkMetrics.getInstance().contextRefreshed(start);
+    }
+
+    private void refresh() {
+        log.info("Refresh spring context.");
+        try {
+            ctx.refresh();
+        } catch (Exception e) {
+            log.error("Failed to refresh spring context.", e);
+        }
+    }
+
+    private void reinject() {
+        if (configurer == null) {
+            log.warn("No configurer bound to the zookeeper resource, refresh spring context instead.");
+            refresh();
+            return;
+        }
+
+        log.info("Re-inject changed properties.");
+        try {
+            Set<String> beanNames = configurer.reinject();
+            log.info("Re-injected beans: " + beanNames);
+        } catch (Exception e) {
+            log.error("Failed to re-inject changed properties.", e);
+        }
+    }
+
+    public synchronized void shutdown() {
+        reloadExecutor.shutdown();
+    }
 }
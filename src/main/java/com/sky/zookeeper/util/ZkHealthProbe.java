@@ -0,0 +1,195 @@
+package com.sky.zookeeper.util;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.zookeeper.AsyncCallback.ChildrenCallback;
+import org.apache.zookeeper.AsyncCallback.StatCallback;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.sky.zookeeper.metrics.ZkMetrics;
+import com.sky.zookeeper.util.ZookeeperResource.PingCmd;
+
+/**
+ * Check connectivity and latency to the ensemble on a schedule through an existing ZooKeeper handle
+ * PingCmd.get probes with exists, PingCmd.ls with getChildren, both without watch
+ * NOTE:probes are asynchronous, a probe not answered before the next one is due counts as a failure and is abandoned,
+ * its late answer is ignored; each probe carries a sequence number to tell them apart
+ */
+public class ZkHealthProbe implements StatCallback, ChildrenCallback {
+    private static Log log = LogFactory.getLog(ZkHealthProbe.class);
+
+    private ZooKeeper zk;
+    private String znode;
+    private PingCmd pingCmd;
+    private long interval;
+
+    private ScheduledExecutorService scheduler;
+
+    private AtomicLong sequence = new AtomicLong();
+    // sequence number of the probe awaiting an answer, 0 for none
+    private AtomicLong outstanding = new AtomicLong();
+    private volatile boolean healthy = true;
+
+    private AtomicLong probeCount = new AtomicLong();
+    private AtomicLong failureCount = new AtomicLong();
+    private AtomicLong totalRoundTripNanos = new AtomicLong();
+    private volatile long lastRoundTripNanos = -1;
+    private volatile long maxRoundTripNanos = 0;
+
+    /**
+     * @param interval time between probes (in milliseconds)
+     */
+    public ZkHealthProbe(ZooKeeper zk, String znode, PingCmd pingCmd, long interval) {
+        this.zk = zk;
+        this.znode = znode;
+        this.pingCmd = pingCmd;
+        this.interval = interval;
+    }
+
+    public void start() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("zk-probe-");
+        threadFactory.setDaemon(true);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                probe();
+            }
+        }, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void probe() {
+        Probe probe = new Probe(sequence.incrementAndGet());
+        if (outstanding.getAndSet(probe.seq) != 0) {
+            fail("no answer in " + interval + "ms");
+        }
+
+        try {
+            if (pingCmd == PingCmd.ls) {
+                zk.getChildren(znode, false, this, probe);
+            } else {
+                zk.exists(znode, false, this, probe);
+            }
+        } catch (RuntimeException e) {
+            outstanding.compareAndSet(probe.seq, 0);
+            fail(e.toString());
+        }
+    }
+
+    @Override
+    public void processResult(int rc, String path, Object ctx, Stat stat) {
+        done(rc, (Probe) ctx);
+    }
+
+    @Override
+    public void processResult(int rc, String path, Object ctx, List<String> children) {
+        done(rc, (Probe) ctx);
+    }
+
+    private void done(int rc, Probe probe) {
+        long roundTripNanos = System.nanoTime() - probe.sentAt;
+        // an abandoned probe was already counted as failed
+        if (!outstanding.compareAndSet(probe.seq, 0)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Ignore late answer to probe " + probe.seq + " of " + znode);
+            }
+            return;
+        }
+
+        Code code = Code.get(rc);
+        // a missing znode still proves the ensemble answers
+        if (code != Code.OK && code != Code.NONODE) {
+            fail(code.toString());
+            return;
+        }
+
+        probeCount.incrementAndGet();
+        ZkMetrics.getInstance().probeAnswered(roundTripNanos);
+        totalRoundTripNanos.addAndGet(roundTripNanos);
+        lastRoundTripNanos = roundTripNanos;
+        if (roundTripNanos > maxRoundTripNanos) {
+            maxRoundTripNanos = roundTripNanos;
+        }
+
+        if (!healthy) {
+            log.info("Zookeeper server answers again, round trip " + roundTripNanos / 1000 + "us");
+            healthy = true;
+        } else if (log.isDebugEnabled()) {
+            log.debug("Probe of " + znode + " answered in " + roundTripNanos / 1000 + "us");
+        }
+    }
+
+    private void fail(String reason) {
+        probeCount.incrementAndGet();
+        failureCount.incrementAndGet();
+        ZkMetrics.getInstance().probeFailed();
+
+        if (healthy) {
+            log.warn("Probe of " + znode + " failed: " + reason);
+            healthy = false;
+        }
+    }
+
+    /**
+     * Whether the last probe was answered
+     */
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    public long getProbeCount() {
+        return probeCount.get();
+    }
+
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * Round trip of the last answered probe (in microseconds), -1 before any
+     */
+    public long getLastRoundTripTime() {
+        long last = lastRoundTripNanos;
+        return last < 0 ? -1 : last / 1000;
+    }
+
+    /**
+     * Mean round trip of answered probes (in microseconds)
+     */
+    public long getMeanRoundTripTime() {
+        long answered = probeCount.get() - failureCount.get();
+        return answered <= 0 ? 0 : totalRoundTripNanos.get() / answered / 1000;
+    }
+
+    /**
+     * Max round trip of answered probes (in microseconds)
+     */
+    public long getMaxRoundTripTime() {
+        return maxRoundTripNanos / 1000;
+    }
+
+    private static class Probe {
+        final long seq;
+        final long sentAt = System.nanoTime();
+
+        Probe(long seq) {
+            this.seq = seq;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package com.sky.zookeeper.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.zookeeper.data.Stat;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Last known data of znodes kept in a local file, so that startup does not have to wait for the ensemble
+ * File format (big endian): magic, format version, entry count, then per entry
+ * path length (unsigned short), path (UTF-8), mzxid (long), version (int), data length (int, -1 for null), data
+ * NOTE:the file is read whole and replaced atomically on save, a torn or corrupt file is ignored as if missing
+ * With auto save, changes are written together on a background thread once no change came for the save delay
+ */
+public class ZkSnapshot {
+    private static Log log = LogFactory.getLog(ZkSnapshot.class);
+
+    private static final int MAGIC = 0x5A4B534E;
+    private static final int FORMAT_VERSION = 1;
+    // path length, mzxid, version and data length of an entry without path nor data
+    private static final int MIN_ENTRY_SIZE = 2 + 8 + 4 + 4;
+
+    private static final ScheduledExecutorService saveExecutor;
+
+    static {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("zk-snapshot-");
+        threadFactory.setDaemon(true);
+        saveExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    /**
+     * Data of one znode with the versions it was read at
+     */
+    public static class Entry {
+        private final byte[] data;
+        private final long mzxid;
+        private final int version;
+
+        public Entry(byte[] data, long mzxid, int version) {
+            this.data = data;
+            this.mzxid = mzxid;
+            this.version = version;
+        }
+
+        public Entry(byte[] data, Stat stat) {
+            this(data, stat == null ? -1 : stat.getMzxid(), stat == null ? -1 : stat.getVersion());
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public long getMzxid() {
+            return mzxid;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+    }
+
+    private File file;
+    private Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+    private boolean autoSave = false;
+    private long saveDelay = 1000;
+    private boolean closed = false;
+
+    // orders writes of the file, taken before the lock of this snapshot
+    private final Object saveLock = new Object();
+    private ScheduledFuture<?> scheduledSave;
+
+    private Runnable saveTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (saveLock) {
+                synchronized (ZkSnapshot.this) {
+                    // saved meanwhile
+                    if (scheduledSave == null) {
+                        return;
+                    }
+                }
+
+                saveQuietly();
+            }
+        }
+    };
+
+    public ZkSnapshot(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Read entries from the file, replacing those in memory
+     * @return false if the file is missing or unreadable, entries are then left empty
+     */
+    public synchronized boolean load() {
+        entries.clear();
+
+        if (!file.isFile()) {
+            log.info("No snapshot found at " + file);
+            return false;
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                log.warn("Ignore snapshot " + file + " of unknown format");
+                return false;
+            }
+
+            // lengths are checked against the bytes left before allocating, a corrupt one never allocates much
+            int count = buffer.getInt();
+            checkRemaining(buffer, count, MIN_ENTRY_SIZE);
+            for (int i = 0; i < count; i++) {
+                byte[] path = new byte[buffer.getShort() & 0xFFFF];
+                checkRemaining(buffer, path.length, 1);
+                buffer.get(path);
+                long mzxid = buffer.getLong();
+                int version = buffer.getInt();
+
+                byte[] data = null;
+                int length = buffer.getInt();
+                if (length >= 0) {
+                    checkRemaining(buffer, length, 1);
+                    data = new byte[length];
+                    buffer.get(data);
+                } else if (length != -1) {
+                    throw new BufferUnderflowException();
+                }
+
+                entries.put(new String(path, "UTF-8"), new Entry(data, mzxid, version));
+            }
+        } catch (BufferUnderflowException e) {
+            log.warn("Ignore truncated or corrupt snapshot " + file);
+            entries.clear();
+            return false;
+        } catch (IOException e) {
+            log.warn("Failed to read snapshot " + file, e);
+            entries.clear();
+            return false;
+        }
+
+        log.info("Loaded " + entries.size() + " znode(s) from snapshot " + file);
+        return true;
+    }
+
+    private static void checkRemaining(ByteBuffer buffer, int count, int size) {
+        if (count < 0 || (long) count * size > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+    }
+
+    /**
+     * Write all entries to a temporary file and move it over the snapshot, a pending auto save is then done
+     * NOTE:entries are copied under the lock and written outside it, so updates do not wait for the disk
+     */
+    public void save() throws IOException {
+        synchronized (saveLock) {
+            Map<String, Entry> copy;
+            synchronized (this) {
+                if (scheduledSave != null) {
+                    scheduledSave.cancel(false);
+                    scheduledSave = null;
+                }
+                copy = new LinkedHashMap<String, Entry>(entries);
+            }
+
+            write(copy);
+        }
+    }
+
+    private void write(Map<String, Entry> entries) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Failed to create directory " + parent);
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                byte[] path = entry.getKey().getBytes("UTF-8");
+                out.writeShort(path.length);
+                out.write(path);
+                out.writeLong(entry.getValue().getMzxid());
+                out.writeInt(entry.getValue().getVersion());
+
+                byte[] data = entry.getValue().getData();
+                if (data == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(data.length);
+                    out.write(data);
+                }
+            }
+        } finally {
+            out.close();
+        }
+
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Record data of one znode, saved after the save delay with auto save
+     * @return whether the entry changed
+     */
+    public synchronized boolean update(String zkPath, byte[] data, Stat stat) {
+        Entry old = entries.get(zkPath);
+        if (old != null && old.getMzxid() == stat.getMzxid() && Arrays.equals(old.getData(), data)) {
+            return false;
+        }
+
+        entries.put(zkPath, new Entry(data, stat));
+        if (autoSave) {
+            scheduleSave();
+        }
+        return true;
+    }
+
+    /**
+     * Replace all entries, saved after the save delay with auto save
+     * @return whether any entry (or their order) changed
+     */
+    public synchronized boolean replace(Map<String, Entry> newEntries) {
+        if (sameEntries(entries, newEntries)) {
+            return false;
+        }
+
+        entries = new LinkedHashMap<String, Entry>(newEntries);
+        if (autoSave) {
+            scheduleSave();
+        }
+        return true;
+    }
+
+    /**
+     * Save once no further change comes for the save delay, changes meanwhile are written together
+     */
+    private synchronized void scheduleSave() {
+        if (closed) {
+            return;
+        }
+        if (scheduledSave != null) {
+            scheduledSave.cancel(false);
+        }
+
+        scheduledSave = saveExecutor.schedule(saveTask, saveDelay, TimeUnit.MILLISECONDS);
+    }
+
+    private static boolean sameEntries(Map<String, Entry> entries, Map<String, Entry> newEntries) {
+        if (entries.size() != newEntries.size()) {
+            return false;
+        }
+
+        Iterator<Map.Entry<String, Entry>> it = newEntries.entrySet().iterator();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            Map.Entry<String, Entry> newEntry = it.next();
+            if (!entry.getKey().equals(newEntry.getKey())
+                    || entry.getValue().getMzxid() != newEntry.getValue().getMzxid()
+                    || !Arrays.equals(entry.getValue().getData(), newEntry.getValue().getData())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException e) {
+            log.warn("Failed to save snapshot " + file, e);
+        }
+    }
+
+    /**
+     * Save after changes, off while startup still records the initial data
+     */
+    public synchronized void setAutoSave(boolean autoSave) {
+        this.autoSave = autoSave;
+    }
+
+    /**
+     * Milliseconds without further change before auto save writes the file
+     */
+    public synchronized void setSaveDelay(long saveDelay) {
+        this.saveDelay = saveDelay;
+    }
+
+    /**
+     * Write a pending auto save at once
+     */
+    public void flush() throws IOException {
+        synchronized (saveLock) {
+            synchronized (this) {
+                if (scheduledSave == null) {
+                    return;
+                }
+            }
+
+            save();
+        }
+    }
+
+    /**
+     * Write a pending auto save and stop saving, entries are still recorded in memory
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+
+        try {
+            flush();
+        } catch (IOException e) {
+            log.warn("Failed to save snapshot " + file, e);
+        }
+    }
+
+    /**
+     * @return null if the znode is not in the snapshot
+     */
+    public synchronized Entry get(String zkPath) {
+        return entries.get(zkPath);
+    }
+
+    /**
+     * Copy of all entries in the order they were recorded
+     */
+    public synchronized Map<String, Entry> getEntries() {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, Entry>(entries));
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,461 @@
+package com.sky.zookeeper.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.api.BackgroundCallback;
+import com.netflix.curator.framework.api.CuratorEvent;
+import com.netflix.curator.framework.api.CuratorWatcher;
+import com.netflix.curator.framework.state.ConnectionState;
+import com.netflix.curator.framework.state.ConnectionStateListener;
+
+/**
+ * In-process mirror of whole znode subtrees, filled in one pipelined pass and then kept up to date by watches
+ * Reads never block and never go to the ensemble
+ */
+public class ZkTreeCache implements CuratorWatcher, BackgroundCallback, ConnectionStateListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ZkTreeCache.class);
+
+    /**
+     * Immutable snapshot of one znode
+     * NOTE:data is shared, never modify it
+     */
+    public static class Node {
+        private final byte[] data;
+        private final Stat stat;
+        private final List<String> children;
+
+        public Node(byte[] data, Stat stat, List<String> children) {
+            this.data = data;
+            this.stat = stat;
+            this.children = children;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public Stat getStat() {
+            return stat;
+        }
+
+        public List<String> getChildren() {
+            return children;
+        }
+    }
+
+    /**
+     * Notified on the Curator event thread when data of a node changes, node is null when it's deleted
+     */
+    public interface Listener {
+        void nodeChanged(String zkPath, Node node);
+    }
+
+    /**
+     * Notified on the Curator event thread when no fetch is in flight any more, so all changes announced together
+     * (e.g. by one multi-op transaction) are in the mirror
+     */
+    public interface SettleListener {
+        void settled();
+    }
+
+    private CuratorFramework zkClient;
+    private List<String> zkRootPaths;
+
+    private ConcurrentMap<String, Node> nodes = new ConcurrentHashMap<String, Node>();
+
+    private List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    private ConcurrentMap<String, List<Listener>> zkPathListenerMapping = new ConcurrentHashMap<String, List<Listener>>();
+    private List<SettleListener> settleListeners = new CopyOnWriteArrayList<SettleListener>();
+
+    private AtomicInteger outstanding = new AtomicInteger();
+    private volatile CountDownLatch loadLatch;
+    private volatile boolean loaded = false;
+    private volatile boolean sessionLost = false;
+
+    public ZkTreeCache(CuratorFramework zkClient, String... zkRootPaths) {
+        this.zkClient = zkClient;
+        this.zkRootPaths = Arrays.asList(zkRootPaths);
+    }
+
+    /**
+     * Fill the mirror and wait for it (in milliseconds)
+     * @return false if the mirror is not complete before timeout, it keeps filling in background
+     */
+    public boolean start(long timeout) throws InterruptedException {
+        zkClient.getConnectionStateListenable().addListener(this);
+
+        boolean completed = load(timeout);
+        loaded = true;
+
+        return completed;
+    }
+
+    private boolean load(long timeout) throws InterruptedException {
+        LOGGER.debug("loading subtrees " + zkRootPaths + " into tree cache...");
+
+        CountDownLatch latch = new CountDownLatch(1);
+        loadLatch = latch;
+
+        // hold one reference so that the latch is not released before all roots are requested
+        outstanding.incrementAndGet();
+        for (String zkRootPath : zkRootPaths) {
+            loadNode(zkRootPath);
+        }
+        release();
+
+        return latch.await(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    private void loadNode(String zkPath) {
+        fetchData(zkPath);
+        fetchChildren(zkPath);
+    }
+
+    private void fetchData(String zkPath) {
+        outstanding.incrementAndGet();
+
+        try {
+            zkClient.getData().usingWatcher(this).inBackground(this).forPath(zkPath);
+        } catch (Exception e) {
+            LOGGER.error("fetch data failed (on path \"" + zkPath + "\")", e);
+            release();
+        }
+    }
+
+    private void fetchChildren(String zkPath) {
+        outstanding.incrementAndGet();
+
+        try {
+            zkClient.getChildren().usingWatcher(this).inBackground(this).forPath(zkPath);
+        } catch (Exception e) {
+            LOGGER.error("fetch children failed (on path \"" + zkPath + "\")", e);
+            release();
+        }
+    }
+
+    private void watchCreation(String zkPath) {
+        outstanding.incrementAndGet();
+
+        try {
+            zkClient.checkExists().usingWatcher(this).inBackground(this).forPath(zkPath);
+        } catch (Exception e) {
+            LOGGER.error("watch creation failed (on path \"" + zkPath + "\")", e);
+            release();
+        }
+    }
+
+    private void release() {
+        CountDownLatch latch = loadLatch;
+
+        if (outstanding.decrementAndGet() == 0) {
+            if (latch != null) {
+                latch.countDown();
+            }
+
+            if (loaded) {
+                for (SettleListener listener : settleListeners) {
+                    listener.settled();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+        try {
+            String zkPath = event.getPath();
+            Code code = Code.get(event.getResultCode());
+
+            switch (event.getType()) {
+            case GET_DATA:
+                if (code == Code.OK) {
+                    updateData(zkPath, event.getData(), event.getStat());
+                } else if (code == Code.NONODE) {
+                    removeSubtree(zkPath);
+                }
+
+                break;
+
+            case CHILDREN:
+                if (code == Code.OK) {
+                    updateChildren(zkPath, event.getChildren());
+                } else if (code == Code.NONODE && zkRootPaths.contains(zkPath)) {
+                    watchCreation(zkPath);
+                }
+
+                break;
+
+            case EXISTS:
+                if (code == Code.OK) {
+                    loadNode(zkPath);
+                }
+
+                break;
+
+            default:
+                break;
+            }
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public void process(WatchedEvent event) throws Exception {
+        String zkPath = event.getPath();
+
+        switch (event.getType()) {
+        case NodeDataChanged:
+            fetchData(zkPath);
+            break;
+
+        case NodeChildrenChanged:
+            fetchChildren(zkPath);
+            break;
+
+        case NodeCreated:
+            loadNode(zkPath);
+            break;
+
+        case NodeDeleted:
+            removeSubtree(zkPath);
+            if (zkRootPaths.contains(zkPath)) {
+                watchCreation(zkPath);
+            }
+            break;
+
+        default:
+            break;
+        }
+    }
+
+    @Override
+    public void stateChanged(CuratorFramework client, ConnectionState newState) {
+        switch (newState) {
+        case LOST:
+            sessionLost = true;
+            break;
+
+        case RECONNECTED:
+            // watches die with the session, so walk the subtrees again
+            if (sessionLost) {
+                sessionLost = false;
+                reloadAll();
+            }
+            break;
+
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Read data and children of every mirrored node and every root again, re-registering their watches
+     * Changes missed meanwhile are fired as usual, nodes gone are removed and new children are loaded by updateChildren
+     */
+    private void reloadAll() {
+        LOGGER.debug("reloading subtrees " + zkRootPaths + " after session loss...");
+
+        Set<String> zkPaths = new HashSet<String>(zkRootPaths);
+        zkPaths.addAll(nodes.keySet());
+        for (String zkPath : zkPaths) {
+            loadNode(zkPath);
+        }
+    }
+
+    /**
+     * NOTE:Curator delivers all background results on one thread, so read-modify-write of a node does not race
+     */
+    private void updateData(String zkPath, byte[] data, Stat stat) {
+        Node old = nodes.get(zkPath);
+        Node node = new Node(data, stat, old == null ? Collections.<String> emptyList() : old.getChildren());
+        nodes.put(zkPath, node);
+
+        if (old == null || old.getStat() == null || old.getStat().getMzxid() != stat.getMzxid()) {
+            fire(zkPath, node);
+        }
+    }
+
+    private void updateChildren(String zkPath, List<String> children) {
+        Node old = nodes.get(zkPath);
+        List<String> oldChildren = old == null ? Collections.<String> emptyList() : old.getChildren();
+
+        nodes.put(zkPath, new Node(old == null ? null : old.getData(), old == null ? null : old.getStat(),
+                Collections.unmodifiableList(new ArrayList<String>(children))));
+
+        Set<String> childSet = new HashSet<String>(children);
+        for (String child : oldChildren) {
+            if (!childSet.contains(child)) {
+                removeSubtree(childPath(zkPath, child));
+            }
+        }
+
+        Set<String> oldChildSet = new HashSet<String>(oldChildren);
+        for (String child : children) {
+            if (!oldChildSet.contains(child)) {
+                loadNode(childPath(zkPath, child));
+            }
+        }
+    }
+
+    private void removeSubtree(String zkPath) {
+        Node node = nodes.remove(zkPath);
+        if (node == null) {
+            return;
+        }
+
+        for (String child : node.getChildren()) {
+            removeSubtree(childPath(zkPath, child));
+        }
+
+        fire(zkPath, null);
+    }
+
+    private void fire(String zkPath, Node node) {
+        if (!loaded) {
+            return;
+        }
+
+        for (Listener listener : listeners) {
+            listener.nodeChanged(zkPath, node);
+        }
+
+        List<Listener> zkPathListeners = zkPathListenerMapping.get(zkPath);
+        if (zkPathListeners != null) {
+            for (Listener listener : zkPathListeners) {
+                listener.nodeChanged(zkPath, node);
+            }
+        }
+    }
+
+    private static String childPath(String zkPath, String child) {
+        return zkPath.endsWith("/") ? zkPath + child : zkPath + "/" + child;
+    }
+
+    /**
+     * Listen to changes of all mirrored nodes
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Listen to changes of the given node
+     */
+    public void addListener(String zkPath, Listener listener) {
+        List<Listener> zkPathListeners = zkPathListenerMapping.get(zkPath);
+        if (zkPathListeners == null) {
+            List<Listener> newListeners = new CopyOnWriteArrayList<Listener>();
+
+            zkPathListeners = zkPathListenerMapping.putIfAbsent(zkPath, newListeners);
+            if (zkPathListeners == null) {
+                zkPathListeners = newListeners;
+            }
+        }
+
+        zkPathListeners.add(listener);
+    }
+
+    public void addSettleListener(SettleListener listener) {
+        settleListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+
+        for (List<Listener> zkPathListeners : zkPathListenerMapping.values()) {
+            zkPathListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Whether the path is inside one of the mirrored subtrees
+     */
+    public boolean covers(String zkPath) {
+        for (String zkRootPath : zkRootPaths) {
+            if (zkPath.equals(zkRootPath) || zkPath.startsWith(zkRootPath.endsWith("/") ? zkRootPath : zkRootPath + "/")) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public List<String> getRootPaths() {
+        return zkRootPaths;
+    }
+
+    public Node getNode(String zkPath) {
+        return nodes.get(zkPath);
+    }
+
+    /**
+     * @return null if the node is not (yet) mirrored
+     */
+    public byte[] getData(String zkPath) {
+        Node node = nodes.get(zkPath);
+
+        return node == null ? null : node.getData();
+    }
+
+    public Stat getStat(String zkPath) {
+        Node node = nodes.get(zkPath);
+
+        return node == null ? null : node.getStat();
+    }
+
+    public List<String> getChildren(String zkPath) {
+        Node node = nodes.get(zkPath);
+
+        return node == null ? null : node.getChildren();
+    }
+
+    /**
+     * Snapshot of the subtree rooted at the path, in depth-first order with children in the order ZooKeeper lists them
+     */
+    public Map<String, Node> getSubtree(String zkPath) {
+        Map<String, Node> subtree = new LinkedHashMap<String, Node>();
+        collectSubtree(zkPath, subtree);
+
+        return subtree;
+    }
+
+    private void collectSubtree(String zkPath, Map<String, Node> subtree) {
+        Node node = nodes.get(zkPath);
+        if (node == null) {
+            return;
+        }
+
+        subtree.put(zkPath, node);
+        for (String child : node.getChildren()) {
+            collectSubtree(childPath(zkPath, child), subtree);
+        }
+    }
+
+    public void close() {
+        zkClient.getConnectionStateListenable().removeListener(this);
+        listeners.clear();
+        zkPathListenerMapping.clear();
+        settleListeners.clear();
+    }
+}
@@ -0,0 +1,171 @@
+package com.sky.zookeeper.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.zookeeper.AsyncCallback.ChildrenCallback;
+import org.apache.zookeeper.AsyncCallback.DataCallback;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+import com.sky.zookeeper.util.ZkSnapshot.Entry;
+
+/**
+ * Load data of znodes (and optionally their whole subtrees) level by level, issuing all requests of a level at once
+ * through the async ZooKeeper API. Data is returned in the same depth-first order as a recursive walk would give.
+ * NOTE:watches are left on every node read, exactly like getData(path, true)/getChildren(path, true)
+ * NOTE:never load on the ZooKeeper event thread, the callbacks waited for are delivered on it
+ */
+class ZkTreeLoader {
+    private ZooKeeper zk;
+    private Semaphore inFlight;
+    private long timeout;
+
+    private Map<String, Entry> zkPathEntryMapping = new ConcurrentHashMap<String, Entry>();
+    private Map<String, List<String>> zkPathChildrenMapping = new ConcurrentHashMap<String, List<String>>();
+    private Map<String, Code> zkPathErrorMapping = new ConcurrentHashMap<String, Code>();
+
+    private class LevelCallback implements DataCallback, ChildrenCallback {
+        private CountDownLatch latch;
+
+        public LevelCallback(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void processResult(int rc, String path, Object ctx, byte[] data, Stat stat) {
+            if (rc == Code.OK.intValue()) {
+                zkPathEntryMapping.put(path, new Entry(data == null ? new byte[0] : data, stat));
+            } else {
+                zkPathErrorMapping.put(path, Code.get(rc));
+            }
+            done();
+        }
+
+        @Override
+        public void processResult(int rc, String path, Object ctx, List<String> children) {
+            if (rc == Code.OK.intValue()) {
+                zkPathChildrenMapping.put(path, children == null ? Collections.<String> emptyList() : children);
+            } else {
+                zkPathErrorMapping.put(path, Code.get(rc));
+            }
+            done();
+        }
+
+        private void done() {
+            inFlight.release();
+            latch.countDown();
+        }
+    }
+
+    /**
+     * @param maxInFlight limit of requests waiting for response at any time
+     * @param timeout limit (in milliseconds) of a whole load
+     */
+    public ZkTreeLoader(ZooKeeper zk, int maxInFlight, long timeout) {
+        this.zk = zk;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return data of every node by path, in depth-first order with children in the order ZooKeeper lists them
+     * @throws IOException if the load does not finish in time
+     */
+    public Map<String, Entry> load(List<String> znodes, boolean regression) throws KeeperException,
+            InterruptedException, IOException {
+        long deadline = System.currentTimeMillis() + timeout;
+
+        List<String> level = znodes;
+        while (!level.isEmpty()) {
+            loadLevel(level, regression, deadline);
+
+            for (String znode : level) {
+                Code code = zkPathErrorMapping.get(znode);
+                // children may be removed after their parent is listed, only missing roots are errors
+                if (code != null && (code != Code.NONODE || znodes.contains(znode))) {
+                    throw KeeperException.create(code, znode);
+                }
+            }
+
+            List<String> nextLevel = new ArrayList<String>();
+            if (regression) {
+                for (String znode : level) {
+                    List<String> children = zkPathChildrenMapping.get(znode);
+                    if (children != null) {
+                        for (String child : children) {
+                            nextLevel.add(znode + "/" + child);
+                        }
+                    }
+                }
+            }
+            level = nextLevel;
+        }
+
+        Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+        for (String znode : znodes) {
+            collect(znode, entries);
+        }
+        return entries;
+    }
+
+    private void loadLevel(List<String> level, boolean regression, long deadline) throws InterruptedException,
+            IOException {
+        CountDownLatch latch = new CountDownLatch(regression ? level.size() * 2 : level.size());
+        LevelCallback callback = new LevelCallback(latch);
+
+        for (String znode : level) {
+            acquire(deadline);
+            zk.getData(znode, true, callback, null);
+
+            if (regression) {
+                acquire(deadline);
+                zk.getChildren(znode, true, callback, null);
+            }
+        }
+
+        if (!latch.await(remaining(deadline), TimeUnit.MILLISECONDS)) {
+            throw timedOut();
+        }
+    }
+
+    private void acquire(long deadline) throws InterruptedException, IOException {
+        if (!inFlight.tryAcquire(remaining(deadline), TimeUnit.MILLISECONDS)) {
+            throw timedOut();
+        }
+    }
+
+    private static long remaining(long deadline) {
+        return Math.max(deadline - System.currentTimeMillis(), 0);
+    }
+
+    private IOException timedOut() {
+        return new IOException("Znodes not loaded in " + timeout + "ms");
+    }
+
+    private void collect(String znode, Map<String, Entry> entries) {
+        Entry entry = zkPathEntryMapping.get(znode);
+        if (entry == null) {
+            return;
+        }
+
+        entries.put(znode, entry);
+
+        List<String> children = zkPathChildrenMapping.get(znode);
+        if (children != null) {
+            for (String child : children) {
+                collect(znode + "/" + child, entries);
+            }
+        }
+    }
+}
@@ -1,46 +1,338 @@
 package com.sky.zookeeper.util;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
-import org.apache.commons.lang.ArrayUtils;
+import org.apache.commons.lang.ObjectUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.beans.factory.config.PropertyPlaceholderConfigurer;
+import org.springframework.beans.factory.config.TypedStringValue;
 import org.springframework.core.io.Resource;
+import org.springframework.util.PropertiesPersister;
+import org.springframework.util.PropertyPlaceholderHelper;
 
 public class ZookeeperConfigurer extends PropertyPlaceholderConfigurer {
 
-    private Map<String, Object> ctxPropsMap = new HashMap<String, Object>();
+    private static Log log = LogFactory.getLog(ZookeeperConfigurer.class);
+
+    // replaced as a whole on every load, readers never see a half updated map
+    private volatile PropertySnapshot ctxProps = new PropertySnapshot(Collections.<String, Object> emptyMap(), 0);
 
     private ZookeeperResource zkLocation;
     private Resource[] localLocations = new Resource[0];
+    private boolean ignoreResourceNotFound = false;
+    private String fileEncoding;
+    private PropertiesPersister propertiesPersister;
+
+    private ConfigurableListableBeanFactory beanFactory;
+    private Properties lastProps = new Properties();
+    private List<PlaceholderBinding> bindings = new ArrayList<PlaceholderBinding>();
+
+    /**
+     * Immutable properties of one load, with typed values parsed at most once per key
+     */
+    private static class PropertySnapshot {
+        private final Map<String, Object> propsMap;
+        private final Map<String, TypedValue> typedValues;
+        private final long generation;
+
+        public PropertySnapshot(Map<String, Object> propsMap, long generation) {
+            this.propsMap = propsMap;
+            this.generation = generation;
+
+            Map<String, TypedValue> typedValues = new HashMap<String, TypedValue>(propsMap.size() * 4 / 3 + 1);
+            for (Map.Entry<String, Object> entry : propsMap.entrySet()) {
+                typedValues.put(entry.getKey(), new TypedValue(entry.getValue().toString().trim()));
+            }
+            this.typedValues = typedValues;
+        }
+    }
+
+    /**
+     * Value of one key kept as parsed primitives, so that typed getters neither box nor look up a second map
+     * NOTE:a value is written before its volatile flag and read after it, racing readers may both parse it
+     */
+    private static class TypedValue {
+        private final String rawValue;
+        private final boolean booleanValue;
+
+        private int intValue;
+        private volatile boolean intParsed = false;
+        private long longValue;
+        private volatile boolean longParsed = false;
+        private double doubleValue;
+        private volatile boolean doubleParsed = false;
+
+        public TypedValue(String rawValue) {
+            this.rawValue = rawValue;
+            this.booleanValue = Boolean.parseBoolean(rawValue);
+        }
+
+        private int getInt() {
+            if (!intParsed) {
+                intValue = Integer.parseInt(rawValue);
+                intParsed = true;
+            }
+            return intValue;
+        }
+
+        private long getLong() {
+            if (!longParsed) {
+                longValue = Long.parseLong(rawValue);
+                longParsed = true;
+            }
+            return longValue;
+        }
+
+        private double getDouble() {
+            if (!doubleParsed) {
+                doubleValue = Double.parseDouble(rawValue);
+                doubleParsed = true;
+            }
+            return doubleValue;
+        }
+    }
+
+    /**
+     * Bean property whose definition holds placeholders, recorded before they are resolved
+     */
+    private static class PlaceholderBinding {
+        private String beanName;
+        private String propertyName;
+        private String rawValue;
 
+        public PlaceholderBinding(String beanName, String propertyName, String rawValue) {
+            this.beanName = beanName;
+            this.propertyName = propertyName;
+            this.rawValue = rawValue;
+        }
+    }
+
+    /**
+     * NOTE:zkLocation is not handed to super, its properties are taken already parsed in loadProperties, parsed with
+     * the fileEncoding and propertiesPersister of this configurer
+     */
     @Override
     public void setLocation(Resource location) {
         zkLocation = (ZookeeperResource) location;
-        super.setLocations((Resource[]) ArrayUtils.add(localLocations, zkLocation));
+        zkLocation.setConfigurer(this);
+        zkLocation.setFileEncoding(fileEncoding);
+        zkLocation.setPropertiesPersister(propertiesPersister);
+    }
+
+    @Override
+    public void setFileEncoding(String encoding) {
+        this.fileEncoding = encoding;
+        super.setFileEncoding(encoding);
+        if (zkLocation != null) {
+            zkLocation.setFileEncoding(encoding);
+        }
+    }
+
+    @Override
+    public void setPropertiesPersister(PropertiesPersister propertiesPersister) {
+        this.propertiesPersister = propertiesPersister;
+        super.setPropertiesPersister(propertiesPersister);
+        if (zkLocation != null) {
+            zkLocation.setPropertiesPersister(propertiesPersister);
+        }
     }
 
     @Override
     public void setLocations(Resource[] locations) {
         this.localLocations = locations;
-        super.setLocations((Resource[]) ArrayUtils.add(locations, zkLocation));
+        super.setLocations(locations);
+    }
+
+    @Override
+    public void setIgnoreResourceNotFound(boolean ignoreResourceNotFound) {
+        this.ignoreResourceNotFound = ignoreResourceNotFound;
+        super.setIgnoreResourceNotFound(ignoreResourceNotFound);
+    }
+
+    /**
+     * Load local locations, then znodes over them (as the last location they always were), reusing properties parsed
+     * for unchanged znodes
+     */
+    @Override
+    protected void loadProperties(Properties props) throws IOException {
+        super.loadProperties(props);
+
+        if (zkLocation != null) {
+            if (log.isInfoEnabled()) {
+                log.info("Loading properties from " + zkLocation);
+            }
+
+            try {
+                props.putAll(zkLocation.getProperties());
+            } catch (IOException e) {
+                if (ignoreResourceNotFound) {
+                    log.warn("Could not load properties from " + zkLocation + ": " + e.getMessage());
+                } else {
+                    throw e;
+                }
+            }
+        }
     }
 
     @Override
     protected void processProperties(ConfigurableListableBeanFactory beanFactoryToProcess, Properties props)
             throws BeansException {
+        // placeholders are replaced in place by super, remember where they were first
+        recordBindings(beanFactoryToProcess);
+
         super.processProperties(beanFactoryToProcess, props);
 
-        for (Object key : props.keySet()) {
-            ctxPropsMap.put(key.toString(), props.get(key));
+        publish(props);
+
+        this.beanFactory = beanFactoryToProcess;
+        this.lastProps = props;
+    }
+
+    private void recordBindings(ConfigurableListableBeanFactory beanFactoryToProcess) {
+        bindings.clear();
+
+        for (String beanName : beanFactoryToProcess.getBeanDefinitionNames()) {
+            BeanDefinition beanDefinition = beanFactoryToProcess.getBeanDefinition(beanName);
+            if (!beanDefinition.isSingleton()) {
+                continue;
+            }
+
+            for (PropertyValue propertyValue : beanDefinition.getPropertyValues().getPropertyValues()) {
+                Object value = propertyValue.getValue();
+                String rawValue = null;
+                if (value instanceof TypedStringValue) {
+                    rawValue = ((TypedStringValue) value).getValue();
+                } else if (value instanceof String) {
+                    rawValue = (String) value;
+                }
+
+                if (rawValue != null && rawValue.contains(placeholderPrefix)) {
+                    bindings.add(new PlaceholderBinding(beanName, propertyValue.getName(), rawValue));
+                }
+            }
         }
     }
 
+    /**
+     * Reload properties and set the new values on those singleton properties whose placeholders resolve differently,
+     * instead of refreshing the whole context.
+     * NOTE:only property (setter) injection is re-injected, constructor arguments keep their values
+     * @return names of beans re-injected
+     */
+    public synchronized Set<String> reinject() throws IOException {
+        Properties newProps = mergeProperties();
+        convertProperties(newProps);
+
+        Set<String> changedBeanNames = new LinkedHashSet<String>();
+        if (newProps.equals(lastProps)) {
+            return changedBeanNames;
+        }
+
+        PropertyPlaceholderHelper helper = new PropertyPlaceholderHelper(placeholderPrefix, placeholderSuffix,
+                valueSeparator, ignoreUnresolvablePlaceholders);
+
+        for (PlaceholderBinding binding : bindings) {
+            String oldValue = helper.replacePlaceholders(binding.rawValue, lastProps);
+            String newValue = helper.replacePlaceholders(binding.rawValue, newProps);
+            if (ObjectUtils.equals(oldValue, newValue) || !beanFactory.containsSingleton(binding.beanName)) {
+                continue;
+            }
+
+            log.info("Re-inject property '" + binding.propertyName + "' of bean '" + binding.beanName + "'.");
+            BeanWrapper beanWrapper = new BeanWrapperImpl(beanFactory.getBean(binding.beanName));
+            beanFactory.copyRegisteredEditorsTo(beanWrapper);
+            beanWrapper.setPropertyValue(binding.propertyName, newValue);
+
+            changedBeanNames.add(binding.beanName);
+        }
+
+        publish(newProps);
+        lastProps = newProps;
+
+        return changedBeanNames;
+    }
+
+    /**
+     * NOTE:synchronized, loads and re-injects publish one at a time so that generations never repeat
+     */
+    private synchronized void publish(Properties props) {
+        Map<String, Object> propsMap = new HashMap<String, Object>(props.size() * 4 / 3 + 1);
+        for (Map.Entry<Object, Object> entry : props.entrySet()) {
+            propsMap.put(entry.getKey().toString(), entry.getValue());
+        }
+        ctxProps = new PropertySnapshot(Collections.unmodifiableMap(propsMap), ctxProps.generation + 1);
+    }
+
     public Object getProperty(String key) {
-        return ctxPropsMap.get(key);
+        return ctxProps.propsMap.get(key);
+    }
+
+    /**
+     * Number of loads (and re-injects) so far, typed values are parsed again after it changes
+     */
+    public long getGeneration() {
+        return ctxProps.generation;
+    }
+
+    /**
+     * NOTE:typed getters never lock nor box, they read the last published properties and parse a value only on its
+     * first read after each load
+     * @throws NumberFormatException if the value is not an int
+     */
+    public int getInt(String key, int defaultValue) {
+        TypedValue value = ctxProps.typedValues.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        return value.getInt();
+    }
+
+    /**
+     * @throws NumberFormatException if the value is not a long
+     */
+    public long getLong(String key, long defaultValue) {
+        TypedValue value = ctxProps.typedValues.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        return value.getLong();
+    }
+
+    /**
+     * @throws NumberFormatException if the value is not a double
+     */
+    public double getDouble(String key, double defaultValue) {
+        TypedValue value = ctxProps.typedValues.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        return value.getDouble();
+    }
+
+    /**
+     * "true" (ignoring case) is true, any other value is false
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        TypedValue value = ctxProps.typedValues.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        return value.booleanValue;
     }
 
     public ZookeeperResource getZkResoucre() {
@@ -1,17 +1,23 @@
 package com.sky.zookeeper.util;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.SequenceInputStream;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -20,22 +26,39 @@ import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.KeeperException.Code;
 import org.apache.zookeeper.WatchedEvent;
 import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
 import org.apache.zookeeper.ZooKeeper;
 import org.apache.zookeeper.data.Stat;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
 import org.springframework.context.support.AbstractApplicationContext;
 import org.springframework.core.io.AbstractResource;
+import org.springframework.util.DefaultPropertiesPersister;
+import org.springframework.util.PropertiesPersister;
 
-public class ZookeeperResource extends AbstractResource implements ApplicationContextAware, DisposableBean {
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.CuratorFrameworkFactory;
+import com.netflix.curator.retry.RetryNTimes;
+import com.sky.zookeeper.metrics.ZkMetrics;
+import com.sky.zookeeper.util.ZkSnapshot.Entry;
+import com.sky.zookeeper.util.ZkTreeCache.Node;
+
+public class ZookeeperResource extends AbstractResource implements ApplicationContextAware, DisposableBean,
+        ApplicationListener<ContextClosedEvent> {
     private static final String URL_HEADER = "zk://";
+    private static final long CACHE_LOAD_TIMEOUT = 30000;
     private static Log log = LogFactory.getLog(ZookeeperResource.class);
+    // snapshots serve the first load in a process only, context reloads must see current data
+    private static Set<String> startedSnapshotFiles = Collections.synchronizedSet(new HashSet<String>());
     private boolean printInputStream = false;
 
     public static enum ReloadContext {
-        AUTO, HOLD
+        AUTO, HOLD, INCREMENTAL
     };
 
     public static enum OnConnectionFailed {
@@ -50,7 +73,7 @@ public class ZookeeperResource extends AbstractResource implements ApplicationCo
 
     private String znodes;
     private String connString;
-    private String chKCmd;
+    private PingCmd pingCmd;
     private boolean connectFailed = false;
 
     private boolean zkResouceEnable = true;
@@ -58,7 +81,98 @@ public class ZookeeperResource extends AbstractResource implements ApplicationCo
     private OnConnectionFailed onConnectionFailed;
     private ReloadContext reloadContext;
     private RefreshContextWatcher watcher;
+    // every change reported to watcher goes through it, dropping the merged config first
+    private Watcher changeWatcher = new Watcher() {
+        @Override
+        public void process(WatchedEvent event) {
+            if (event.getType() != EventType.None) {
+                invalidateMergedConfig();
+            }
+            if (event.getPath() != null) {
+                ZkMetrics.getInstance().watchFired(rootOf(event.getPath()));
+            }
+            watcher.process(event);
+        }
+    };
+
+    // merged data of all znodes, shared (read only) by all input streams until the next change
+    private volatile byte[] mergedConfig;
+    private AtomicLong mergedConfigGeneration = new AtomicLong();
+
+    // parse states of each context by connection, znodes and parsing, kept across the resources of its refreshes
+    // (ReloadContext.AUTO) so that a new one parses only the znodes changed since the last one; dropped when the
+    // context is closed or collected
+    private static final Map<ApplicationContext, Map<ParseKey, ParseState>> parseStates =
+            new WeakHashMap<ApplicationContext, Map<ParseKey, ParseState>>();
+    // stateless, shared so that resources without a persister of their own share parse states
+    private static final PropertiesPersister DEFAULT_PERSISTER = new DefaultPropertiesPersister();
+    private ParseState parseState;
+    private volatile Properties mergedProperties;
+    private final Object mergedPropertiesLock = new Object();
+    private volatile long parsedZnodes = 0;
+
+    private String fileEncoding;
+    private PropertiesPersister propertiesPersister = DEFAULT_PERSISTER;
+
+    /**
+     * NOTE:the persister is compared by identity, persisters of the same class may parse differently
+     */
+    private static class ParseKey {
+        private final String source;
+        private final PropertiesPersister persister;
+
+        public ParseKey(String source, PropertiesPersister persister) {
+            this.source = source;
+            this.persister = persister;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ParseKey)) {
+                return false;
+            }
+            ParseKey other = (ParseKey) obj;
+            return source.equals(other.source) && persister == other.persister;
+        }
+
+        @Override
+        public int hashCode() {
+            return source.hashCode() * 31 + System.identityHashCode(persister);
+        }
+    }
+
+    private static class ParseState {
+        // parsed properties of every znode by path, reused as long as its mzxid is unchanged
+        private Map<String, ParsedZnode> zkPathParsedMapping = new LinkedHashMap<String, ParsedZnode>();
+        private Properties lastMergedProperties;
+    }
+
+    private static class ParsedZnode {
+        private long mzxid;
+        private Properties properties;
+
+        public ParsedZnode(long mzxid, Properties properties) {
+            this.mzxid = mzxid;
+            this.properties = properties;
+        }
+    }
     private ZkExecutor executor;
+    private ZkHealthProbe probe;
+    private long probeInterval = 10000;
+    private ZookeeperConfigurer configurer;
+
+    private boolean cache = false;
+    private int maxInFlight = 100;
+    private long loadTimeout = 30000;
+    private long refreshQuietPeriod = 0;
+    private long refreshMinInterval = 0;
+    private CuratorFramework cacheClient;
+    private ZkTreeCache treeCache;
+
+    private String snapshotFile;
+    private ZkSnapshot snapshot;
+    // started from the snapshot and not yet brought up to date
+    private volatile boolean snapshotPending = false;
 
     public ZookeeperResource() {
         try {
@@ -66,10 +180,16 @@ public class ZookeeperResource extends AbstractResource implements ApplicationCo
             this.zkResouceEnable = Boolean.parseBoolean(zkCfg.get("enable").toString());
             this.connString = zkCfg.getProperty("server");
             this.znodes = zkCfg.getProperty("znodes");
-            this.chKCmd = generateZkPingCmd(PingCmd.valueOf(zkCfg.getProperty("ping_cmd")));
+            this.pingCmd = PingCmd.valueOf(zkCfg.getProperty("ping_cmd"));
+            this.probeInterval = Long.parseLong(zkCfg.getProperty("probe_interval", "10000"));
             this.regression = Boolean.parseBoolean(zkCfg.get("regression").toString());
             this.onConnectionFailed = OnConnectionFailed.valueOf(zkCfg.get("on_connection_failed").toString());
             this.reloadContext = ReloadContext.valueOf(zkCfg.get("reload_context").toString());
+            this.cache = Boolean.parseBoolean(zkCfg.getProperty("cache", "false"));
+            this.maxInFlight = Integer.parseInt(zkCfg.getProperty("max_in_flight", "100"));
+            this.refreshQuietPeriod = Long.parseLong(zkCfg.getProperty("refresh_quiet_period", "0"));
+            this.refreshMinInterval = Long.parseLong(zkCfg.getProperty("refresh_min_interval", "0"));
+            this.snapshotFile = zkCfg.getProperty("snapshot_file");
         } catch (IOException e) {
             if (onConnectionFailed == OnConnectionFailed.THROW_EXCEPTION) {
                 throw new org.springframework.context.ApplicationContextException(
@@ -85,7 +205,7 @@ public class ZookeeperResource extends AbstractResource implements ApplicationCo
             OnConnectionFailed onConnectionFailed, ReloadContext reloadContext) {
         this.connString = connString;
         this.znodes = znodes;
-        this.chKCmd = generateZkPingCmd(chkCmd);
+        this.pingCmd = chkCmd;
         this.regression = regression;
         this.reloadContext = reloadContext;
         this.onConnectionFailed = onConnectionFailed;
@@ -97,71 +217,195 @@ public class ZookeeperResource extends AbstractResource implements ApplicationCo
         return props;
     }
 
-    private String generateZkPingCmd(PingCmd pingCmd) {
-        return "zkCli -server " + connString + " " + pingCmd.toString() + " " + znodes.split(",")[0];
+    /**
+     * Probe the ensemble through the connection of the executor, instead of running zkCli
+     */
+    private void startProbe(ZkExecutor zkExecutor) {
+        if (probeInterval <= 0) {
+            return;
+        }
+
+        this.probe = new ZkHealthProbe(zkExecutor.getZk(), znodes.split(",")[0], pingCmd, probeInterval);
+        this.probe.start();
     }
 
     private ZkExecutor startZkClientThread() throws IOException, InterruptedException {
         log.info("Start connecting to zookeeper server: " + this.connString + ", znodes:" + znodes + " regression: "
                 + regression);
-        this.watcher = new RefreshContextWatcher(ctx, this.regression, this.reloadContext);
+        this.watcher = new RefreshContextWatcher(ctx, this.configurer, this.regression, this.reloadContext,
+                this.refreshQuietPeriod, this.refreshMinInterval);
+        if (cache) {
+            createTreeCache();
+            startTreeCache();
+        }
         ZkExecutor zkExecutor = new ZkExecutor(this);
         synchronized (this) {
             new Thread(zkExecutor).start();
-            this.wait();
+            // the first event may come before waiting
+            while (!zkExecutor.zkResStarted) {
+                this.wait();
+            }
         }
         log.info("Zookeeper server connected");
+        startProbe(zkExecutor);
         return zkExecutor;
 
     }
 
-    static class StreamWriter extends Thread {
-        Log log;
+    /**
+     * Like startZkClientThread but returns at once, the snapshot is brought up to date once connected and the
+     * context is reloaded (according to reload_context) if the ensemble has different data
+     */
+    private ZkExecutor startZkClientInBackground() throws IOException {
+        log.info("Start from snapshot " + snapshotFile + ", connecting to zookeeper server: " + this.connString
+                + " in background");
+        this.watcher = new RefreshContextWatcher(ctx, this.configurer, this.regression, this.reloadContext,
+                this.refreshQuietPeriod, this.refreshMinInterval);
+        if (cache) {
+            createTreeCache();
+        }
+        final ZkExecutor zkExecutor = new ZkExecutor(this);
+        snapshotPending = true;
+        new Thread(zkExecutor).start();
+        startProbe(zkExecutor);
+
+        Thread syncThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    synchronized (ZookeeperResource.this) {
+                        while (!zkExecutor.zkResStarted) {
+                            ZookeeperResource.this.wait();
+                        }
+                    }
+                    log.info("Zookeeper server connected");
+
+                    if (cache) {
+                        startTreeCache();
+                    }
+
+                    boolean changed = snapshot.replace(loadEntries());
+                    snapshotPending = false;
+
+                    if (changed) {
+                        log.info("Snapshot " + snapshotFile + " is out of date, reload from zookeeper");
+                        changeWatcher.process(new WatchedEvent(EventType.NodeDataChanged, KeeperState.SyncConnected,
+                                znodes.split(",")[0]));
+                    }
+                } catch (Exception e) {
+                    log.error("Failed to bring snapshot " + snapshotFile + " up to date", e);
+                    snapshotPending = false;
+                }
+            }
+        }, "zk-snapshot-sync");
+        syncThread.setDaemon(true);
+        syncThread.start();
+
+        return zkExecutor;
+    }
 
-        BufferedReader br;
+    /**
+     * @return false if no snapshot is configured, it has no data of the znodes or it was already started from
+     */
+    private boolean loadSnapshot() {
+        if (snapshotFile == null) {
+            return false;
+        }
+        if (snapshot == null) {
+            snapshot = new ZkSnapshot(new File(snapshotFile));
+            snapshot.setAutoSave(true);
+        }
 
-        StreamWriter(InputStream inputStream, Log log) {
-            this.br = new BufferedReader(new InputStreamReader(inputStream));
-            this.log = log;
-            start();
+        if (!startedSnapshotFiles.add(snapshot.getFile().getAbsolutePath())) {
+            return false;
         }
+        return snapshot.load() && !getSnapshotEntries().isEmpty();
+    }
 
-        public void run() {
-            String line = null;
-            try {
-                while ((line = br.readLine()) != null) {
-                    log.info(line);
+    /**
+     * Entries of the snapshot under the znodes, the file may have been written with other settings
+     */
+    private Map<String, Entry> getSnapshotEntries() {
+        Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+        for (Map.Entry<String, Entry> entry : snapshot.getEntries().entrySet()) {
+            for (String znode : znodes.split(",")) {
+                if (entry.getKey().equals(znode) || (regression && entry.getKey().startsWith(znode + "/"))) {
+                    entries.put(entry.getKey(), entry.getValue());
+                    break;
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Mirror the znodes (with their subtrees) in memory, loading and change detection then never touch the ensemble
+     */
+    private void createTreeCache() {
+        log.info("Create tree cache of znodes: " + znodes);
+        this.cacheClient = CuratorFrameworkFactory.builder().connectString(connString).connectionTimeoutMs(3000)
+                .retryPolicy(new RetryNTimes(100, 10000)).build();
+        this.cacheClient.start();
+
+        this.treeCache = new ZkTreeCache(cacheClient, znodes.split(","));
+        this.treeCache.addListener(new ZkTreeCache.Listener() {
+            @Override
+            public void nodeChanged(String zkPath, Node node) {
+                boolean root = Arrays.asList(znodes.split(",")).contains(zkPath);
+                if (!root && !regression) {
+                    return;
+                }
+
+                if (node != null) {
+                    changeWatcher.process(new WatchedEvent(EventType.NodeDataChanged, KeeperState.SyncConnected,
+                            zkPath));
+                } else if (root) {
+                    changeWatcher.process(new WatchedEvent(EventType.NodeDeleted, KeeperState.SyncConnected, zkPath));
+                } else {
+                    changeWatcher.process(new WatchedEvent(EventType.NodeChildrenChanged, KeeperState.SyncConnected,
+                            zkPath.substring(0, zkPath.lastIndexOf('/'))));
                 }
-            } catch (IOException e) {
-                log.error("failed to log ZK process.", e);
             }
+        });
+    }
+
+    private void startTreeCache() throws InterruptedException {
+        log.info("Start tree cache of znodes: " + znodes);
+        if (!this.treeCache.start(CACHE_LOAD_TIMEOUT)) {
+            log.warn("Tree cache of znodes: " + znodes + " not filled in " + CACHE_LOAD_TIMEOUT + "ms");
         }
     }
 
     private static class ZkExecutor implements Runnable, Watcher, DataMonitorListener {
         private static Log log = LogFactory.getLog(ZkExecutor.class);
 
-        private String cmd;
-        private Process child;
         private ZooKeeper zk;
-        private DataMonitor dm;
+        private volatile DataMonitor dm;
         private String znodes;
         private ZookeeperResource zkRes;
 
-        private boolean zkResStarted = false;
+        private volatile boolean zkResStarted = false;
 
         public ZkExecutor(ZookeeperResource zkRes) throws IOException {
 
             this.znodes = zkRes.znodes;
-            this.cmd = zkRes.chKCmd;
-            this.zk = new ZooKeeper(zkRes.connString, 3000, this);
-            this.dm = new DataMonitor(zk, znodes, zkRes.watcher, this);
             this.zkRes = zkRes;
+            this.zk = new ZooKeeper(zkRes.connString, 3000, this);
+            // with a tree cache, changes are reported by the cache
+            this.dm = new DataMonitor(zk, znodes, zkRes.treeCache == null ? zkRes.changeWatcher : null, this);
         }
 
         @Override
         public void process(WatchedEvent event) {
-            dm.process(event);
+            if (event.getType() == EventType.None) {
+                ZkMetrics.getInstance().keeperStateChanged(event.getState());
+            }
+
+            // the connection event may arrive before the monitor exists, it sets its own watches when created
+            DataMonitor monitor = dm;
+            if (monitor != null) {
+                monitor.process(event);
+            }
             // at the first time ZK message send back, unlock zk resource object
             // to finish the init.
             if (!zkResStarted) {
@@ -189,45 +433,10 @@ public class ZookeeperResource extends AbstractResource implements ApplicationCo
         @Override
         public void exists(byte[] data) {
             if (data == null) {
-                if (child != null) {
-                    log.info("Stopping ZK process.");
-                    child.destroy();
-                    try {
-                        child.waitFor();
-                    } catch (InterruptedException e) {
-                        log.error("Error found when waiting for ZK process stopping", e);
-                    }
-                }
-                child = null;
+                log.info("Znode of config removed.");
             } else {
-                if (child != null) {
-                    log.info("Stopping ZK process.");
-                    child.destroy();
-                    try {
-                        child.waitFor();
-                    } catch (InterruptedException e) {
-                        log.error("Error found when waiting for ZK process stopping", e);
-                    }
-                }
                 log.info("Load config from zookeeper:\n" + new String(data));
-                try {
-                    log.info("Starting ZK process.");
-                    String _cmd = cmd;
-                    String osName = System.getProperty("os.name");
-                    if (osName != null && osName.toUpperCase().startsWith("WIN")) {
-                        _cmd = "cmd.exe " + cmd;
-                    }
-                    log.info("executing " + _cmd);
-
-                    child = Runtime.getRuntime().exec(_cmd);
-
-                    new StreamWriter(child.getInputStream(), log);
-                    new StreamWriter(child.getErrorStream(), log);
-                } catch (IOException e) {
-                    log.error("Failed to start ZK process.", e);
-                }
             }
-
         }
 
         @Override
@@ -345,6 +554,96 @@ public class ZookeeperResource extends AbstractResource implements ApplicationCo
         return executor.getZk();
     }
 
+    /**
+     * @return null unless cache is enabled and the resource is loaded
+     */
+    public ZkTreeCache getTreeCache() {
+        return treeCache;
+    }
+
+    /**
+     * Configurer loading this resource, used to re-inject changed properties with ReloadContext.INCREMENTAL
+     */
+    public void setConfigurer(ZookeeperConfigurer configurer) {
+        this.configurer = configurer;
+    }
+
+    /**
+     * Encoding of znode data for getProperties, null for the ISO-8859-1 of properties files
+     * Set by ZookeeperConfigurer from its own fileEncoding
+     */
+    public void setFileEncoding(String fileEncoding) {
+        this.fileEncoding = fileEncoding;
+    }
+
+    /**
+     * Parser of znode data for getProperties, set by ZookeeperConfigurer from its own propertiesPersister
+     */
+    public void setPropertiesPersister(PropertiesPersister propertiesPersister) {
+        this.propertiesPersister = propertiesPersister == null ? DEFAULT_PERSISTER : propertiesPersister;
+    }
+
+    /**
+     * Znodes parsed by getProperties of this resource, those unchanged since an earlier resource of the same znodes
+     * are not parsed again
+     */
+    public long getParsedZnodes() {
+        return parsedZnodes;
+    }
+
+    /**
+     * Time between health probes of the ensemble (in milliseconds), 0 to disable them
+     */
+    public void setProbeInterval(long probeInterval) {
+        this.probeInterval = probeInterval;
+    }
+
+    /**
+     * @return null until connected or if probes are disabled
+     */
+    public ZkHealthProbe getProbe() {
+        return probe;
+    }
+
+    /**
+     * Local file keeping the last loaded data, later starts read it at once and connect in background
+     */
+    public void setSnapshotFile(String snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+
+    public void setCache(boolean cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Changes are gathered until none arrives for this period (in milliseconds), then reloaded once
+     */
+    public void setRefreshQuietPeriod(long refreshQuietPeriod) {
+        this.refreshQuietPeriod = refreshQuietPeriod;
+    }
+
+    /**
+     * Least time (in milliseconds) between the end of one reload and the start of the next
+     */
+    public void setRefreshMinInterval(long refreshMinInterval) {
+        this.refreshMinInterval = refreshMinInterval;
+    }
+
+    /**
+     * Limit of concurrent requests while loading znodes
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Limit (in milliseconds) of loading all znodes from the ensemble, loading fails with an IOException past it
+     */
+    public void setLoadTimeout(long loadTimeout) {
+        this.loadTimeout = loadTimeout;
+    }
+
     @Override
     public boolean exists() {
         try {
@@ -379,19 +678,7 @@ public class ZookeeperResource extends AbstractResource implements ApplicationCo
 
     @Override
     public InputStream getInputStream() throws IOException {
-        if (executor == null || !executor.zkResStarted) {
-            try {
-                this.executor = startZkClientThread();
-            } catch (Exception e) {
-                if (onConnectionFailed == OnConnectionFailed.THROW_EXCEPTION) {
-                    throw new org.springframework.context.ApplicationContextException("Failed to connect to zk server"
-                            + this.connString, e);
-                } else {
-                    log.error("Failed to connect to zk server:" + this.connString, e);
-                }
-                connectFailed = true;
-            }
-        }
+        boolean fromSnapshot = connect();
 
         if (!zkResouceEnable) {
             // disabled tools, return nothing;
@@ -404,56 +691,301 @@ public class ZookeeperResource extends AbstractResource implements ApplicationCo
             return new ByteArrayInputStream(new byte[0]);
         } else {
             try {
-                SequenceInputStream pis = generateSequenceInputStream(znodes, regression);
-                if (printInputStream) {
-                    String ouput = getString(pis);
-                    log.info(ouput);
-                    return new ByteArrayInputStream(ouput.getBytes());
+                return new ByteArrayInputStream(getMergedConfig(fromSnapshot));
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Fail to get inputstream from zookeeper", e);
+            }
+        }
+    }
+
+    /**
+     * Properties of all znodes, later znodes override earlier ones exactly as when loaded from getInputStream.
+     * Only znodes changed since the last call are parsed again.
+     * NOTE:the result is shared until the next change, never modify it
+     */
+    public Properties getProperties() throws IOException {
+        boolean fromSnapshot = connect();
+
+        if (!zkResouceEnable) {
+            log.info("Zookeeper resource disbaled, skip loading resource from Zookeeper server.");
+            return new Properties();
+        }
+
+        if (connectFailed) {
+            return new Properties();
+        } else {
+            try {
+                return getMergedProperties(fromSnapshot);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Fail to get properties from zookeeper", e);
+            }
+        }
+    }
+
+    /**
+     * Connect on first use
+     * @return whether data is to be served from the snapshot
+     */
+    private boolean connect() {
+        boolean fromSnapshot = snapshotPending;
+        if (!fromSnapshot && (executor == null || !executor.zkResStarted)) {
+            try {
+                if (executor == null && loadSnapshot()) {
+                    this.executor = startZkClientInBackground();
+                    fromSnapshot = true;
                 } else {
-                    return pis;
+                    this.executor = startZkClientThread();
                 }
             } catch (Exception e) {
-                throw new IOException("Fail to get inputstream from zookeeper", e);
+                if (onConnectionFailed == OnConnectionFailed.THROW_EXCEPTION) {
+                    throw new org.springframework.context.ApplicationContextException("Failed to connect to zk server"
+                            + this.connString, e);
+                } else {
+                    log.error("Failed to connect to zk server:" + this.connString, e);
+                }
+                connectFailed = true;
+            }
+        }
+        return fromSnapshot;
+    }
+
+    /**
+     * Load data of the znodes (by path, in depth-first order) from the tree cache or the ensemble, recording it in the
+     * snapshot if any
+     */
+    private Map<String, Entry> loadEntries() throws KeeperException, InterruptedException, IOException {
+        Map<String, Entry> entries;
+        if (treeCache != null) {
+            entries = new LinkedHashMap<String, Entry>();
+            for (String znode : znodes.split(",")) {
+                Map<String, Node> nodes = regression ? treeCache.getSubtree(znode) : Collections.singletonMap(
+                        znode, treeCache.getNode(znode));
+                for (Map.Entry<String, Node> node : nodes.entrySet()) {
+                    if (node.getValue() != null && node.getValue().getData() != null) {
+                        entries.put(node.getKey(), new Entry(node.getValue().getData(), node.getValue().getStat()));
+                    }
+                }
             }
+        } else {
+            ZkTreeLoader loader = new ZkTreeLoader(getZk(), maxInFlight, loadTimeout);
+            entries = loader.load(Arrays.asList(znodes.split(",")), regression);
+        }
+
+        if (snapshot != null && !snapshotPending) {
+            snapshot.replace(entries);
         }
+        return entries;
     }
 
-    private String getString(SequenceInputStream pis) throws IOException {
-        BufferedReader br = new BufferedReader(new InputStreamReader(pis));
-        String line = null;
-        StringBuilder sb = new StringBuilder();
-        sb.append("\n");
-        while ((line = br.readLine()) != null) {
-            sb.append(line).append("\n");
+    /**
+     * Merged data of all znodes, built once per change
+     */
+    private byte[] getMergedConfig(boolean fromSnapshot) throws KeeperException, InterruptedException, IOException {
+        byte[] merged = mergedConfig;
+        if (merged != null) {
+            return merged;
+        }
+
+        long generation = mergedConfigGeneration.get();
+        long start = System.nanoTime();
+        merged = merge(fromSnapshot ? getSnapshotEntries() : loadEntries());
+        ZkMetrics.getInstance().resourceLoaded(start, merged.length);
+        // the text is only built when it is logged
+        if (printInputStream && log.isDebugEnabled()) {
+            log.debug("\n" + new String(merged));
         }
-        return sb.toString();
+
+        mergedConfig = merged;
+        // changed while merging, the next call merges again
+        if (mergedConfigGeneration.get() != generation) {
+            mergedConfig = null;
+        }
+        return merged;
     }
 
-    private SequenceInputStream generateSequenceInputStream(String znodes, boolean regressionZnodes)
-            throws KeeperException, InterruptedException {
-        List<InputStream> seqenceInputStreamCollector = new ArrayList<InputStream>();
+    /**
+     * Znode covering the path, changes under regression are counted by the znode configured
+     */
+    private String rootOf(String zkPath) {
         for (String znode : znodes.split(",")) {
-            getDataInputStream(znode, seqenceInputStreamCollector, regressionZnodes);
-        }
-        return new SequenceInputStream(Collections.enumeration(seqenceInputStreamCollector));
-    }
-
-    private void getDataInputStream(String currentZnode, List<InputStream> seqIsCollector, boolean regressionZnodes)
-            throws KeeperException, InterruptedException {
-        ZooKeeper zk = getZk();
-        seqIsCollector.add(new ByteArrayInputStream(zk.getData(currentZnode, true, null)));
-        // need add return between every stream otherwise top/last line will be
-        // join to one line.
-        seqIsCollector.add(new ByteArrayInputStream("\n".getBytes()));
-        if (regressionZnodes) {
-            List<String> children = zk.getChildren(currentZnode, true);
-            if (children != null) {
-                for (String child : children) {
-                    String childZnode = currentZnode + "/" + child;
-                    getDataInputStream(childZnode, seqIsCollector, regressionZnodes);
+            if (zkPath.equals(znode) || zkPath.startsWith(znode.endsWith("/") ? znode : znode + "/")) {
+                return znode;
+            }
+        }
+        return zkPath;
+    }
+
+    private void invalidateMergedConfig() {
+        mergedConfigGeneration.incrementAndGet();
+        mergedConfig = null;
+        mergedProperties = null;
+    }
+
+    /**
+     * Merged properties of all znodes, built once per change
+     */
+    private Properties getMergedProperties(boolean fromSnapshot) throws KeeperException, InterruptedException,
+            IOException {
+        Properties merged = mergedProperties;
+        if (merged != null) {
+            return merged;
+        }
+
+        synchronized (mergedPropertiesLock) {
+            merged = mergedProperties;
+            if (merged != null) {
+                return merged;
+            }
+
+            long generation = mergedConfigGeneration.get();
+            Map<String, Entry> entries = fromSnapshot ? getSnapshotEntries() : loadEntries();
+
+            ParseState state = getParseState();
+            synchronized (state) {
+                merged = mergeProperties(state, entries);
+            }
+
+            mergedProperties = merged;
+            // changed while merging, the next call merges again
+            if (mergedConfigGeneration.get() != generation) {
+                mergedProperties = null;
+            }
+            return merged;
+        }
+    }
+
+    /**
+     * NOTE:a resource outside of a context keeps its parse state to itself
+     */
+    private ParseState getParseState() {
+        if (parseState == null) {
+            if (ctx == null) {
+                parseState = new ParseState();
+                return parseState;
+            }
+
+            ParseKey key = new ParseKey(connString + "|" + znodes + "|" + regression + "|" + fileEncoding,
+                    propertiesPersister);
+            synchronized (parseStates) {
+                Map<ParseKey, ParseState> states = parseStates.get(ctx);
+                if (states == null) {
+                    states = new HashMap<ParseKey, ParseState>();
+                    parseStates.put(ctx, states);
+                }
+                parseState = states.get(key);
+                if (parseState == null) {
+                    parseState = new ParseState();
+                    states.put(key, parseState);
                 }
             }
         }
+        return parseState;
+    }
+
+    /**
+     * Merge properties of all znodes, parsing only those whose mzxid changed since the last merge of the state. With
+     * the same znodes in the same order, only keys of changed znodes are resolved again on a copy of the last merge.
+     * NOTE:called holding the lock of the state
+     */
+    private Properties mergeProperties(ParseState state, Map<String, Entry> entries) throws IOException {
+        Map<String, ParsedZnode> zkPathParsedMapping = state.zkPathParsedMapping;
+        Properties lastMergedProperties = state.lastMergedProperties;
+        Properties merged;
+        Map<String, ParsedZnode> parsedMapping = new LinkedHashMap<String, ParsedZnode>();
+        List<String> changedPaths = new ArrayList<String>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            ParsedZnode parsed = zkPathParsedMapping.get(entry.getKey());
+            if (parsed == null || parsed.mzxid != entry.getValue().getMzxid() || parsed.mzxid < 0) {
+                parsed = new ParsedZnode(entry.getValue().getMzxid(), parse(entry.getValue().getData()));
+                changedPaths.add(entry.getKey());
+            }
+            parsedMapping.put(entry.getKey(), parsed);
+        }
+
+        if (lastMergedProperties == null
+                || !new ArrayList<String>(zkPathParsedMapping.keySet()).equals(
+                        new ArrayList<String>(parsedMapping.keySet()))) {
+            merged = new Properties();
+            for (ParsedZnode parsed : parsedMapping.values()) {
+                merged.putAll(parsed.properties);
+            }
+        } else {
+            merged = new Properties();
+            merged.putAll(lastMergedProperties);
+
+            List<ParsedZnode> parsedList = new ArrayList<ParsedZnode>(parsedMapping.values());
+            for (String changedPath : changedPaths) {
+                Set<Object> keys = new HashSet<Object>(zkPathParsedMapping.get(changedPath).properties.keySet());
+                keys.addAll(parsedMapping.get(changedPath).properties.keySet());
+
+                for (Object key : keys) {
+                    resolve(key, parsedList, merged);
+                }
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Parsed " + changedPaths.size() + " of " + entries.size() + " znode(s)");
+        }
+        parsedZnodes += changedPaths.size();
+
+        state.zkPathParsedMapping = parsedMapping;
+        state.lastMergedProperties = merged;
+        return merged;
+    }
+
+    /**
+     * Parse like PropertiesLoaderSupport does a location, with the encoding and persister of the configurer
+     */
+    private Properties parse(byte[] data) throws IOException {
+        Properties properties = new Properties();
+        if (data != null) {
+            InputStream is = new ByteArrayInputStream(data);
+            if (fileEncoding != null) {
+                propertiesPersister.load(properties, new InputStreamReader(is, fileEncoding));
+            } else {
+                propertiesPersister.load(properties, is);
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Take the value of the key from the last znode having it
+     */
+    private static void resolve(Object key, List<ParsedZnode> parsedList, Properties merged) {
+        for (int i = parsedList.size() - 1; i >= 0; i--) {
+            Object value = parsedList.get(i).properties.get(key);
+            if (value != null) {
+                merged.put(key, value);
+                return;
+            }
+        }
+        merged.remove(key);
+    }
+
+    /**
+     * Copy data of every znode into one buffer of the exact size, each followed by a line break, otherwise the
+     * last line of one znode would join the first line of the next
+     */
+    private byte[] merge(Map<String, Entry> entries) {
+        int size = 0;
+        for (Entry entry : entries.values()) {
+            size += entry.getData().length + 1;
+        }
+
+        byte[] merged = new byte[size];
+        int offset = 0;
+        for (Entry entry : entries.values()) {
+            byte[] data = entry.getData();
+            System.arraycopy(data, 0, merged, offset, data.length);
+            offset += data.length;
+            merged[offset++] = '\n';
+        }
+        return merged;
     }
 
     @Override
@@ -461,9 +993,25 @@ public class ZookeeperResource extends AbstractResource implements ApplicationCo
         this.ctx = (AbstractApplicationContext) ctx;
     }
 
+    /**
+     * Drop the parse states of a closed context, a refresh keeps them
+     */
+    @Override
+    public void onApplicationEvent(ContextClosedEvent event) {
+        synchronized (parseStates) {
+            parseStates.remove(event.getApplicationContext());
+        }
+    }
+
     @Override
     public void destroy() throws Exception {
         log.info("Destory Zookeeper Resouce.");
+        if (watcher != null) {
+            watcher.shutdown();
+        }
+        if (probe != null) {
+            probe.stop();
+        }
         if (executor != null) {
             log.info("Close connection to Zookeeper Server.");
             try {
@@ -473,6 +1021,15 @@ public class ZookeeperResource extends AbstractResource implements ApplicationCo
                 log.error("Error found when close zookeeper connection.", e);
             }
         }
+        if (treeCache != null) {
+            log.info("Close tree cache.");
+            treeCache.close();
+            cacheClient.close();
+        }
+        if (snapshot != null) {
+            snapshot.close();
+        }
+        parseState = null;
 
     }
 
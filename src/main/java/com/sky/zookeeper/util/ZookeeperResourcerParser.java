@@ -30,6 +30,25 @@ public class ZookeeperResourcerParser extends AbstractSimpleBeanDefinitionParser
         case LOCAL_FILE:
             break;
         }
+
+        if (element.hasAttribute("cache")) {
+            builder.addPropertyValue("cache", Boolean.valueOf(element.getAttribute("cache")));
+        }
+        if (element.hasAttribute("snapshotFile")) {
+            builder.addPropertyValue("snapshotFile", element.getAttribute("snapshotFile"));
+        }
+        if (element.hasAttribute("maxInFlight")) {
+            builder.addPropertyValue("maxInFlight", Integer.valueOf(element.getAttribute("maxInFlight")));
+        }
+        if (element.hasAttribute("probeInterval")) {
+            builder.addPropertyValue("probeInterval", Long.valueOf(element.getAttribute("probeInterval")));
+        }
+        if (element.hasAttribute("refreshQuietPeriod")) {
+            builder.addPropertyValue("refreshQuietPeriod", Long.valueOf(element.getAttribute("refreshQuietPeriod")));
+        }
+        if (element.hasAttribute("refreshMinInterval")) {
+            builder.addPropertyValue("refreshMinInterval", Long.valueOf(element.getAttribute("refreshMinInterval")));
+        }
     }
 
     @Override
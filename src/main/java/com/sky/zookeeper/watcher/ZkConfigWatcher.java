@@ -0,0 +1,133 @@
+package com.sky.zookeeper.watcher;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sky.zookeeper.type.ConfigBinder;
+import com.sky.zookeeper.util.ZkTreeCache;
+import com.sky.zookeeper.util.ZkTreeCache.Node;
+
+/**
+ * Rebuild and publish the config objects bound to one subtree when any of its nodes changes
+ * The rebuild waits until the tree cache has settled, so nodes changed together are published together, changes
+ * arriving while a rebuild is pending are folded into it, and one object is built per config type and shared by all
+ * fields of that type
+ * NOTE:a tree cache busy with other subtrees delays the rebuild until it settles, and with a dispatch thread pool the
+ * rebuild may already see part of a later change
+ */
+public class ZkConfigWatcher implements ZkTreeCache.Listener, ZkTreeCache.SettleListener {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ZkConfigWatcher.class);
+
+	private String zkPath;
+	private Set<ConfigBinder> binderSet;
+	private ZkTreeCache treeCache;
+	private ZkEventDispatcher dispatcher;
+
+	private AtomicBoolean changed = new AtomicBoolean(false);
+	private AtomicBoolean rebuildPending = new AtomicBoolean(false);
+	private volatile List<Long> lastBuiltVersions;
+
+	private AtomicLong buildCount = new AtomicLong();
+
+	public ZkConfigWatcher(String zkPath, Set<ConfigBinder> binderSet, ZkTreeCache treeCache,
+			ZkEventDispatcher dispatcher) {
+		this.zkPath = zkPath;
+		this.binderSet = binderSet;
+		this.treeCache = treeCache;
+		this.dispatcher = dispatcher;
+	}
+
+	/**
+	 * Build and publish at once, then follow changes
+	 * NOTE:listeners are added before the first build so that no change in between is missed, a rebuild of an
+	 * unchanged subtree is skipped; a failed first build is thrown, later ones are logged and keep the last object
+	 */
+	public void watch() {
+		treeCache.addListener(this);
+		treeCache.addSettleListener(this);
+		try {
+			rebuild(true);
+		} catch (RuntimeException e) {
+			treeCache.removeListener(this);
+			changed.set(false);
+			throw e;
+		}
+	}
+
+	@Override
+	public void nodeChanged(String changedPath, Node node) {
+		if (!changedPath.equals(zkPath) && !changedPath.startsWith(zkPath.endsWith("/") ? zkPath : zkPath + "/")) {
+			return;
+		}
+
+		changed.set(true);
+	}
+
+	@Override
+	public void settled() {
+		if (!changed.getAndSet(false) || !rebuildPending.compareAndSet(false, true)) {
+			return;
+		}
+
+		dispatcher.dispatch(zkPath, new Runnable() {
+			@Override
+			public void run() {
+				rebuildPending.set(false);
+				rebuild(false);
+			}
+		});
+	}
+
+	// the first build on the caller thread may overlap a rebuild on the dispatcher
+	private synchronized void rebuild(boolean initial) {
+		Map<String, Node> subtree = treeCache.getSubtree(zkPath);
+
+		// every node of the subtree at the same version in the same order, nothing to rebuild
+		List<Long> versions = new ArrayList<Long>(subtree.size() * 2);
+		for (Node node : subtree.values()) {
+			versions.add(node.getStat() == null ? -1 : node.getStat().getMzxid());
+			versions.add(node.getStat() == null ? -1 : node.getStat().getPzxid());
+		}
+		if (versions.equals(lastBuiltVersions)) {
+			return;
+		}
+
+		Map<Class<?>, Object> built = new HashMap<Class<?>, Object>();
+		for (ConfigBinder binder : binderSet) {
+			Object config = built.get(binder.getType());
+			if (config == null) {
+				try {
+					config = binder.build(subtree);
+				} catch (RuntimeException e) {
+					if (initial) {
+						throw e;
+					}
+					LOGGER.error("build " + binder.getType().getName() + " from subtree(" + zkPath + ") failed", e);
+					continue;
+				}
+				built.put(binder.getType(), config);
+			}
+
+			binder.publish(config);
+		}
+
+		lastBuiltVersions = versions;
+		buildCount.incrementAndGet();
+		LOGGER.debug("published " + built.size() + " config object(s) of subtree(" + zkPath + ")");
+	}
+
+	/**
+	 * Number of times the subtree was rebuilt
+	 */
+	public long getBuildCount() {
+		return buildCount.get();
+	}
+}
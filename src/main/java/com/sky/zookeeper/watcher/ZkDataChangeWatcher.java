@@ -1,26 +1,56 @@
 package com.sky.zookeeper.watcher;
 
+import java.util.Arrays;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.api.BackgroundCallback;
+import com.netflix.curator.framework.api.CuratorEvent;
 import com.netflix.curator.framework.api.CuratorWatcher;
-import com.sky.zookeeper.type.FieldEditor;
-import com.sky.zookeeper.type.MethodInvoker;
+import com.sky.zookeeper.metrics.ZkMetrics;
 import com.sky.zookeeper.type.Modifier;
+import com.sky.zookeeper.util.ZkSnapshot;
+import com.sky.zookeeper.util.ZkTreeCache;
+import com.sky.zookeeper.util.ZkTreeCache.Node;
 
-public class ZkDataChangeWatcher implements CuratorWatcher {
+/**
+ * Apply data changes of one path to its modifiers, watching either the ensemble or a ZkTreeCache
+ */
+public class ZkDataChangeWatcher implements CuratorWatcher, ZkTreeCache.Listener {
 	private static final Logger LOGGER = LoggerFactory.getLogger(ZkDataChangeWatcher.class);
 
 	private CuratorFramework zkClient;
 	private Set<Modifier> modifierSet;
+	private ZkEventDispatcher dispatcher;
+	private int coalesceWindow;
+	private ZkTreeCache treeCache;
+	private ZkSnapshot snapshot;
 
-	public ZkDataChangeWatcher(CuratorFramework zkClient, Set<Modifier> modifierSet) {
+	private AtomicBoolean reloadPending = new AtomicBoolean(false);
+	private volatile long lastAppliedMzxid = -1;
+	private volatile byte[] lastAppliedData;
+
+	private AtomicLong appliedCount = new AtomicLong();
+	private AtomicLong skippedCount = new AtomicLong();
+
+	/**
+	 * @param dispatcher dispatcher of the context, shared by all paths so that their ordering and threads are kept
+	 * NOTE:changes inside coalesceWindow (in milliseconds) are read and applied once, 0 to apply every change
+	 */
+	public ZkDataChangeWatcher(CuratorFramework zkClient, Set<Modifier> modifierSet, ZkEventDispatcher dispatcher,
+			int coalesceWindow) {
 		this.zkClient = zkClient;
 		this.modifierSet = modifierSet;
+		this.dispatcher = dispatcher;
+		this.coalesceWindow = coalesceWindow;
 	}
 
 	@Override
@@ -29,17 +59,7 @@ public class ZkDataChangeWatcher implements CuratorWatcher {
 
 		switch (event.getType()) {
 		case NodeDataChanged:
-			String newValue = new String(zkClient.getData()
-						.usingWatcher(this)
-						.forPath(event.getPath()));
-
-			for (Modifier modifier : modifierSet) {
-				if (modifier instanceof FieldEditor) {
-					((FieldEditor) modifier).set(newValue);
-				} else if (modifier instanceof MethodInvoker) {
-					((MethodInvoker) modifier).invoke(newValue);
-				}
-			}
+			onChange(event.getPath());
 
 			break;
 
@@ -47,4 +67,187 @@ public class ZkDataChangeWatcher implements CuratorWatcher {
 			break;
 		}
 	}
-}
\ No newline at end of file
+
+	@Override
+	public void nodeChanged(String zkPath, Node node) {
+		if (node != null) {
+			onChange(zkPath);
+		}
+	}
+
+	private void onChange(final String zkPath) {
+		ZkMetrics.getInstance().watchFired(zkPath);
+
+		Runnable reloadTask = new Runnable() {
+			@Override
+			public void run() {
+				reloadPending.set(false);
+				reload(zkPath);
+			}
+		};
+
+		if (coalesceWindow <= 0) {
+			dispatcher.dispatch(zkPath, reloadTask);
+		} else if (reloadPending.compareAndSet(false, true)) {
+			// the watch is re-registered by the delayed read, so later changes in the window fold into it
+			dispatcher.schedule(zkPath, reloadTask, coalesceWindow);
+		}
+	}
+
+	/**
+	 * Register this watcher on the path, applying the current data unless it equals appliedData (the data the
+	 * modifiers were initialized with)
+	 */
+	public void watch(String zkPath, byte[] appliedData) throws Exception {
+		Stat stat = new Stat();
+		byte[] data = zkClient.getData()
+					.storingStatIn(stat)
+					.usingWatcher(this)
+					.forPath(zkPath);
+
+		lastAppliedData = appliedData;
+		apply(zkPath, stat, data);
+	}
+
+	/**
+	 * Like watch(zkPath, appliedData) but without waiting for the ensemble, the current data is applied once it is
+	 * read (used when modifiers were initialized from a snapshot)
+	 */
+	public void watchInBackground(String zkPath, byte[] appliedData) throws Exception {
+		readInBackground(zkPath, appliedData, true);
+	}
+
+	/**
+	 * Read and apply the current data once in background, without watching further changes
+	 */
+	public void readInBackground(String zkPath, byte[] appliedData) throws Exception {
+		readInBackground(zkPath, appliedData, false);
+	}
+
+	private void readInBackground(final String zkPath, byte[] appliedData, boolean watching) throws Exception {
+		lastAppliedData = appliedData;
+
+		BackgroundCallback callback = new BackgroundCallback() {
+			@Override
+			public void processResult(CuratorFramework client, final CuratorEvent event) throws Exception {
+				if (event.getResultCode() != KeeperException.Code.OK.intValue()) {
+					LOGGER.error("read zkData failed (on path \"" + zkPath + "\", code " + event.getResultCode()
+							+ "), keep data of snapshot");
+					return;
+				}
+
+				dispatcher.dispatch(zkPath, new Runnable() {
+					@Override
+					public void run() {
+						apply(zkPath, event.getStat(), event.getData());
+					}
+				});
+			}
+		};
+
+		if (watching) {
+			zkClient.getData().usingWatcher(this).inBackground(callback).forPath(zkPath);
+		} else {
+			zkClient.getData().inBackground(callback).forPath(zkPath);
+		}
+	}
+
+	/**
+	 * Listen to the path on the tree cache instead of the ensemble, applying the mirrored data unless it equals
+	 * appliedData
+	 */
+	public void watch(String zkPath, byte[] appliedData, ZkTreeCache treeCache) {
+		this.treeCache = treeCache;
+
+		lastAppliedData = appliedData;
+		treeCache.addListener(zkPath, this);
+
+		reload(zkPath);
+	}
+
+	/**
+	 * Re-read data (and re-register this watcher) then apply it to all modifiers
+	 */
+	private void reload(String zkPath) {
+		if (treeCache != null) {
+			Node node = treeCache.getNode(zkPath);
+
+			if (node != null && node.getData() != null) {
+				apply(zkPath, node.getStat(), node.getData());
+			}
+			return;
+		}
+
+		Stat stat = new Stat();
+		byte[] data;
+		long start = System.nanoTime();
+		try {
+			data = zkClient.getData()
+						.storingStatIn(stat)
+						.usingWatcher(this)
+						.forPath(zkPath);
+		} catch (Exception e) {
+			LOGGER.error("reload zkData failed (on path \"" + zkPath + "\")", e);
+			return;
+		}
+		ZkMetrics.getInstance().reRead(start);
+
+		apply(zkPath, stat, data);
+	}
+
+	/**
+	 * NOTE:data older than the last applied one (by mzxid) is dropped, data of the same mzxid or with the same bytes
+	 * is skipped without decoding
+	 */
+	private void apply(String zkPath, Stat stat, byte[] data) {
+		if (stat.getMzxid() < lastAppliedMzxid) {
+			LOGGER.debug("drop stale data(mzxid " + stat.getMzxid() + ") on ZkPath(" + zkPath + ")");
+			skippedCount.incrementAndGet();
+			ZkMetrics.getInstance().updateSkipped();
+			return;
+		}
+
+		if (stat.getMzxid() == lastAppliedMzxid || Arrays.equals(data, lastAppliedData)) {
+			LOGGER.debug("skip unchanged data(mzxid " + stat.getMzxid() + ") on ZkPath(" + zkPath + ")");
+			lastAppliedMzxid = stat.getMzxid();
+			skippedCount.incrementAndGet();
+			ZkMetrics.getInstance().updateSkipped();
+			record(zkPath, stat, data);
+			return;
+		}
+
+		lastAppliedMzxid = stat.getMzxid();
+		lastAppliedData = data;
+		appliedCount.incrementAndGet();
+		record(zkPath, stat, data);
+
+		Modifier.applyAll(modifierSet, data);
+	}
+
+	private void record(String zkPath, Stat stat, byte[] data) {
+		if (snapshot != null) {
+			snapshot.update(zkPath, data, stat);
+		}
+	}
+
+	/**
+	 * Snapshot recording the data of this path whenever it is read
+	 */
+	public void setSnapshot(ZkSnapshot snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * Number of changes applied to modifiers
+	 */
+	public long getAppliedCount() {
+		return appliedCount.get();
+	}
+
+	/**
+	 * Number of changes skipped as stale or unchanged
+	 */
+	public long getSkippedCount() {
+		return skippedCount.get();
+	}
+}
@@ -8,8 +8,7 @@ import org.slf4j.LoggerFactory;
 import com.netflix.curator.framework.CuratorFramework;
 import com.netflix.curator.framework.recipes.leader.LeaderSelectorListener;
 import com.netflix.curator.framework.state.ConnectionState;
-import com.sky.zookeeper.type.FieldEditor;
-import com.sky.zookeeper.type.MethodInvoker;
+import com.sky.zookeeper.metrics.ZkMetrics;
 import com.sky.zookeeper.type.Modifier;
 
 public class ZkElectionListener implements LeaderSelectorListener {
@@ -17,12 +16,31 @@ public class ZkElectionListener implements LeaderSelectorListener {
 	
 	private String zkPath;
 	private Set<Modifier> modifierSet;
+	private ZkEventDispatcher dispatcher;
 	
 	private Object lock = new Object();
+	// guarded by lock
+	private boolean leading = false;
 
-	public ZkElectionListener(String zkPath, Set<Modifier> modifierSet) {
+	public ZkElectionListener(String zkPath, Set<Modifier> modifierSet, ZkEventDispatcher dispatcher) {
 		this.zkPath = zkPath;
 		this.modifierSet = modifierSet;
+		this.dispatcher = dispatcher;
+	}
+
+	/**
+	 * Push leadership state to all modifiers through the dispatcher, in order with other transitions of this path
+	 */
+	private void setLeadership(final String leadership) {
+		dispatcher.dispatch(zkPath, new Runnable() {
+			@Override
+			public void run() {
+				// members take the String, leader gated tasks start or stop their schedule
+				for (Modifier modifier : modifierSet) {
+					modifier.eval(leadership);
+				}
+			}
+		});
 	}
 
 	@Override
@@ -32,13 +50,7 @@ public class ZkElectionListener implements LeaderSelectorListener {
 		switch (newState) {
 		case CONNECTED:
 		case LOST:
-			for (Modifier modifier : modifierSet) {
-				if (modifier instanceof FieldEditor) {
-					((FieldEditor) modifier).set("false");
-				} else if (modifier instanceof MethodInvoker) {
-					((MethodInvoker) modifier).invoke("false");
-				}
-			}
+			setLeadership("false");
 
 			break;
 
@@ -49,28 +61,45 @@ public class ZkElectionListener implements LeaderSelectorListener {
 
 	@Override
 	public void takeLeadership(CuratorFramework client) throws Exception {
-		LOGGER.debug("take leader ship(" + zkPath + ")");
+		LOGGER.debug("take leadership(" + zkPath + ")");
 		
-		for (Modifier modifier : modifierSet) {
-			if (modifier instanceof FieldEditor) {
-				((FieldEditor) modifier).set("true");
-			} else if (modifier instanceof MethodInvoker) {
-				((MethodInvoker) modifier).invoke("true");
-			}
-		}
-
+		ZkMetrics.getInstance().leadershipAcquired();
 		synchronized (lock) {
-			lock.wait();
+			leading = true;
 		}
+		setLeadership("true");
+
+		try {
+			// leads until interrupted, by closing the selector or losing the connection
+			synchronized (lock) {
+				while (true) {
+					lock.wait();
+				}
+			}
+		} finally {
+			ZkMetrics.getInstance().leadershipReleased();
+			setLeadership("false");
 
-		for (Modifier modifier : modifierSet) {
-			if (modifier instanceof FieldEditor) {
-				((FieldEditor) modifier).set("false");
-			} else if (modifier instanceof MethodInvoker) {
-				((MethodInvoker) modifier).invoke("false");
+			synchronized (lock) {
+				leading = false;
+				lock.notifyAll();
 			}
+			LOGGER.debug("release leadership(" + zkPath + ")");
 		}
+	}
 
-		LOGGER.debug("release leader ship(" + zkPath + ")");
+	/**
+	 * Wait until leadership, if held, is released and its release handed to the dispatcher
+	 * @return false if still leading after the timeout
+	 */
+	public boolean awaitRelease(long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		synchronized (lock) {
+			long remaining;
+			while (leading && (remaining = deadline - System.currentTimeMillis()) > 0) {
+				lock.wait(remaining);
+			}
+			return !leading;
+		}
 	}
 }
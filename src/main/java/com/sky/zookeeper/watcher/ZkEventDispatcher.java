@@ -0,0 +1,307 @@
+package com.sky.zookeeper.watcher;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.sky.zookeeper.metrics.ZkMetrics;
+import com.sky.zookeeper.type.DispatchMode;
+
+/**
+ * Dispatch stage between ZooKeeper events and modifiers
+ * Tasks of the same path run one by one in submission order, tasks of different paths run in parallel
+ */
+public class ZkEventDispatcher {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ZkEventDispatcher.class);
+
+	private DispatchMode dispatchMode;
+	private ExecutorService executor;
+	private ScheduledExecutorService scheduler;
+	private volatile boolean shutdown = false;
+
+	private ConcurrentMap<String, PathQueue> pathQueueMapping = new ConcurrentHashMap<String, PathQueue>();
+
+	private AtomicInteger queueDepth = new AtomicInteger();
+	private AtomicLong dispatchCount = new AtomicLong();
+	private AtomicLong dispatchLatencyTotal = new AtomicLong();
+	private AtomicLong dispatchLatencyMax = new AtomicLong();
+
+	/**
+	 * Pending tasks of one path, drained by at most one worker at a time
+	 */
+	private class PathQueue implements Runnable {
+		private Queue<Task> tasks = new ConcurrentLinkedQueue<Task>();
+		private AtomicBoolean scheduled = new AtomicBoolean(false);
+
+		public void submit(Task task) {
+			tasks.add(task);
+			queueDepth.incrementAndGet();
+			ZkMetrics.getInstance().dispatchQueued(1);
+
+			schedule();
+		}
+
+		private void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				try {
+					executor.execute(this);
+				} catch (RejectedExecutionException e) {
+					// shut down, the tasks left are dropped
+					int dropped = tasks.size();
+					LOGGER.debug("dispatcher is shut down, drop " + dropped + " task(s)");
+					queueDepth.addAndGet(-dropped);
+					ZkMetrics.getInstance().dispatchQueued(-dropped);
+					tasks.clear();
+					scheduled.set(false);
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				Task task;
+				while ((task = tasks.poll()) != null) {
+					queueDepth.decrementAndGet();
+					ZkMetrics.getInstance().dispatchQueued(-1);
+					task.run();
+				}
+			} finally {
+				scheduled.set(false);
+
+				// a task may have been added after the last poll but before the flag was cleared
+				if (!tasks.isEmpty()) {
+					schedule();
+				}
+			}
+		}
+	}
+
+	private class Task implements Runnable {
+		private String zkPath;
+		private Runnable runnable;
+		private long submitTime = System.nanoTime();
+
+		public Task(String zkPath, Runnable runnable) {
+			this.zkPath = zkPath;
+			this.runnable = runnable;
+		}
+
+		@Override
+		public void run() {
+			recordLatency(System.nanoTime() - submitTime);
+
+			try {
+				runnable.run();
+			} catch (RuntimeException e) {
+				LOGGER.error("dispatch task failed (on path \"" + zkPath + "\")", e);
+			}
+		}
+	}
+
+	public ZkEventDispatcher(DispatchMode dispatchMode, int threads) {
+		this.dispatchMode = dispatchMode;
+
+		switch (dispatchMode) {
+		case VIRTUAL_THREAD:
+			this.executor = newVirtualThreadExecutor();
+			if (this.executor != null) {
+				break;
+			}
+
+			LOGGER.warn("virtual threads are not available, dispatch on thread pool instead");
+			this.dispatchMode = DispatchMode.THREAD_POOL;
+
+			// fall through
+
+		case THREAD_POOL:
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("zk-dispatch-");
+			threadFactory.setDaemon(true);
+
+			// at most one task per path is queued in the pool, the rest wait in their own PathQueue
+			this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), threadFactory);
+			((ThreadPoolExecutor) this.executor).allowCoreThreadTimeOut(true);
+
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Run task after all tasks previously dispatched on the same path
+	 */
+	public void dispatch(String zkPath, Runnable runnable) {
+		Task task = new Task(zkPath, runnable);
+
+		if (executor == null) {
+			task.run();
+			return;
+		}
+
+		PathQueue pathQueue = pathQueueMapping.get(zkPath);
+		if (pathQueue == null) {
+			PathQueue newPathQueue = new PathQueue();
+
+			pathQueue = pathQueueMapping.putIfAbsent(zkPath, newPathQueue);
+			if (pathQueue == null) {
+				pathQueue = newPathQueue;
+			}
+		}
+
+		pathQueue.submit(task);
+	}
+
+	/**
+	 * Dispatch task on the path after delay (in milliseconds), dropped once the dispatcher is shut down
+	 */
+	public void schedule(final String zkPath, final Runnable runnable, long delay) {
+		ScheduledExecutorService timer = getScheduler();
+		if (timer == null) {
+			return;
+		}
+
+		try {
+			timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					dispatch(zkPath, runnable);
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			LOGGER.debug("dispatcher is shut down, drop task (on path \"" + zkPath + "\")");
+		}
+	}
+
+	/**
+	 * @return null once shut down
+	 */
+	private synchronized ScheduledExecutorService getScheduler() {
+		if (shutdown) {
+			return null;
+		}
+
+		if (scheduler == null) {
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("zk-dispatch-timer-");
+			threadFactory.setDaemon(true);
+
+			scheduler = new ScheduledThreadPoolExecutor(1, threadFactory);
+		}
+
+		return scheduler;
+	}
+
+	private void recordLatency(long latency) {
+		ZkMetrics.getInstance().dispatched(latency);
+		dispatchCount.incrementAndGet();
+		dispatchLatencyTotal.addAndGet(latency);
+
+		long max;
+		while (latency > (max = dispatchLatencyMax.get())) {
+			if (dispatchLatencyMax.compareAndSet(max, latency)) {
+				break;
+			}
+		}
+	}
+
+	public DispatchMode getDispatchMode() {
+		return dispatchMode;
+	}
+
+	/**
+	 * Number of tasks waiting to be run, over all paths
+	 */
+	public int getQueueDepth() {
+		return queueDepth.get();
+	}
+
+	/**
+	 * Number of tasks waiting to be run on the given path
+	 */
+	public int getQueueDepth(String zkPath) {
+		PathQueue pathQueue = pathQueueMapping.get(zkPath);
+
+		return pathQueue == null ? 0 : pathQueue.tasks.size();
+	}
+
+	public long getDispatchCount() {
+		return dispatchCount.get();
+	}
+
+	/**
+	 * Mean time (in nanoseconds) from dispatch to start of run
+	 */
+	public long getDispatchLatencyMean() {
+		long count = dispatchCount.get();
+
+		return count == 0 ? 0 : dispatchLatencyTotal.get() / count;
+	}
+
+	/**
+	 * Max time (in nanoseconds) from dispatch to start of run
+	 */
+	public long getDispatchLatencyMax() {
+		return dispatchLatencyMax.get();
+	}
+
+	/**
+	 * Stop the threads of the dispatcher, tasks already queued still run but later ones are dropped
+	 */
+	public synchronized void shutdown() {
+		shutdown = true;
+
+		if (scheduler != null) {
+			scheduler.shutdown();
+		}
+
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Wait for the tasks queued before shutdown to finish
+	 * @param timeout in milliseconds
+	 * @return false if some were still running at the timeout
+	 */
+	public boolean awaitTermination(long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+
+		ScheduledExecutorService timer;
+		synchronized (this) {
+			timer = scheduler;
+		}
+		if (timer != null && !timer.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+			return false;
+		}
+
+		return executor == null
+				|| executor.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+	}
+}
@@ -0,0 +1,314 @@
+package com.sky.zookeeper.watcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.api.BackgroundCallback;
+import com.netflix.curator.framework.api.CuratorEvent;
+import com.netflix.curator.framework.api.CuratorWatcher;
+import com.netflix.curator.framework.state.ConnectionState;
+import com.netflix.curator.framework.state.ConnectionStateListener;
+import com.netflix.curator.utils.ZKPaths;
+import com.sky.zookeeper.metrics.ZkMetrics;
+import com.sky.zookeeper.type.Modifier;
+
+/**
+ * Leader election of one path on ephemeral sequential nodes, the owner of the lowest sequence leads and every other
+ * member watches only its predecessor
+ * All reads are in background and no thread waits while leading, transitions reach the modifiers through the
+ * dispatcher in order with other events of the path
+ * NOTE:leadership is dropped as soon as the connection is suspended, and taken again only once the node is confirmed
+ * to be first after reconnecting
+ * A failed join is retried with exponential backoff until it succeeds or the election is closed
+ */
+public class ZkLeaderElection implements CuratorWatcher, BackgroundCallback, ConnectionStateListener {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ZkLeaderElection.class);
+
+	// same name as the lock nodes of LeaderSelector, with protection the created node reads _c_<uuid>-lock-<sequence>
+	private static final String NODE_NAME = "lock-";
+	private static final int SEQUENCE_LENGTH = 10;
+
+	private static final long MIN_RETRY_DELAY = 100;
+	private static final long MAX_RETRY_DELAY = 30000;
+
+	private static final Comparator<String> BY_SEQUENCE = new Comparator<String>() {
+		@Override
+		public int compare(String node1, String node2) {
+			return sequenceOf(node1).compareTo(sequenceOf(node2));
+		}
+	};
+
+	private CuratorFramework zkClient;
+	private String zkPath;
+	private Set<Modifier> modifierSet;
+	private ZkEventDispatcher dispatcher;
+
+	private volatile String ourPath;
+	private volatile boolean closed = false;
+	// null until the first transition is published
+	private Boolean leader;
+	// a create is in flight or its retry is pending, guarded by joinLock
+	private boolean joining = false;
+	private long retryDelay = MIN_RETRY_DELAY;
+	private final Object joinLock = new Object();
+
+	public ZkLeaderElection(CuratorFramework zkClient, String zkPath, Set<Modifier> modifierSet,
+			ZkEventDispatcher dispatcher) {
+		this.zkClient = zkClient;
+		this.zkPath = zkPath;
+		this.modifierSet = modifierSet;
+		this.dispatcher = dispatcher;
+	}
+
+	private static String sequenceOf(String node) {
+		return node.substring(node.length() - SEQUENCE_LENGTH);
+	}
+
+	/**
+	 * Publish follower state and join the election
+	 */
+	public void start() throws Exception {
+		setLeader(false);
+
+		zkClient.getConnectionStateListenable().addListener(this);
+		join();
+	}
+
+	/**
+	 * Leave the election, deleting our node so that the next member takes over at once
+	 */
+	public void close() throws Exception {
+		closed = true;
+		zkClient.getConnectionStateListenable().removeListener(this);
+
+		String path = ourPath;
+		ourPath = null;
+		if (path != null) {
+			zkClient.delete().inBackground().forPath(path);
+		}
+		setLeader(false);
+	}
+
+	private void join() throws Exception {
+		synchronized (joinLock) {
+			if (closed || joining) {
+				return;
+			}
+			joining = true;
+		}
+
+		create();
+	}
+
+	private void create() throws Exception {
+		if (closed) {
+			synchronized (joinLock) {
+				joining = false;
+			}
+			return;
+		}
+
+		try {
+			zkClient.create()
+					.creatingParentsIfNeeded()
+					.withProtection()
+					.withMode(CreateMode.EPHEMERAL_SEQUENTIAL)
+					.inBackground(this)
+					.forPath(ZKPaths.makePath(zkPath, NODE_NAME));
+		} catch (Exception e) {
+			synchronized (joinLock) {
+				joining = false;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Create our node again after a delay doubling on every failure, a reconnection does not join meanwhile
+	 */
+	private void retryJoin(KeeperException.Code code) {
+		long delay;
+		synchronized (joinLock) {
+			delay = retryDelay;
+			retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+		}
+		LOGGER.error("join election failed (on path \"" + zkPath + "\", code " + code + "), retry in " + delay
+				+ "ms");
+
+		dispatcher.schedule(zkPath, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					create();
+				} catch (Exception e) {
+					LOGGER.error("join election failed (on path \"" + zkPath + "\")", e);
+				}
+			}
+		}, delay);
+	}
+
+	private void check() throws Exception {
+		if (closed || ourPath == null) {
+			return;
+		}
+
+		zkClient.getChildren().inBackground(this).forPath(zkPath);
+	}
+
+	@Override
+	public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+		KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+
+		switch (event.getType()) {
+		case CREATE:
+			if (code != KeeperException.Code.OK) {
+				retryJoin(code);
+				return;
+			}
+
+			synchronized (joinLock) {
+				joining = false;
+				retryDelay = MIN_RETRY_DELAY;
+			}
+			ourPath = event.getName();
+			if (closed) {
+				zkClient.delete().inBackground().forPath(event.getName());
+				return;
+			}
+			check();
+
+			break;
+
+		case CHILDREN:
+			if (code != KeeperException.Code.OK) {
+				LOGGER.error("list candidates failed (on path \"" + zkPath + "\", code " + code + ")");
+				return;
+			}
+
+			elect(event.getChildren());
+
+			break;
+
+		case EXISTS:
+			// the predecessor left between listing and watching
+			if (code == KeeperException.Code.NONODE) {
+				check();
+			}
+
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	private void elect(List<String> children) throws Exception {
+		String path = ourPath;
+		if (closed || path == null) {
+			return;
+		}
+
+		List<String> candidates = new ArrayList<String>(children.size());
+		for (String child : children) {
+			if (child.length() > SEQUENCE_LENGTH) {
+				candidates.add(child);
+			}
+		}
+		Collections.sort(candidates, BY_SEQUENCE);
+
+		int index = candidates.indexOf(ZKPaths.getNodeFromPath(path));
+		if (index < 0) {
+			// the session expired and took our node with it
+			LOGGER.warn("node " + path + " of election is gone, join again");
+			ourPath = null;
+			setLeader(false);
+			join();
+		} else if (index == 0) {
+			setLeader(true);
+		} else {
+			setLeader(false);
+			zkClient.checkExists()
+					.usingWatcher(this)
+					.inBackground(this)
+					.forPath(ZKPaths.makePath(zkPath, candidates.get(index - 1)));
+		}
+	}
+
+	@Override
+	public void process(WatchedEvent event) throws Exception {
+		if (event.getType() == EventType.NodeDeleted) {
+			check();
+		}
+	}
+
+	@Override
+	public void stateChanged(CuratorFramework client, ConnectionState newState) {
+		LOGGER.debug("state has changed to " + newState);
+
+		try {
+			switch (newState) {
+			case SUSPENDED:
+			case LOST:
+				setLeader(false);
+
+				break;
+
+			case RECONNECTED:
+				if (ourPath == null) {
+					join();
+				} else {
+					check();
+				}
+
+				break;
+
+			default:
+				break;
+			}
+		} catch (Exception e) {
+			LOGGER.error("rejoin election failed (on path \"" + zkPath + "\")", e);
+		}
+	}
+
+	/**
+	 * Push a leadership change to all modifiers through the dispatcher, in order with other transitions of this path
+	 */
+	private synchronized void setLeader(boolean leader) {
+		if (this.leader != null && this.leader == leader) {
+			return;
+		}
+
+		if (leader) {
+			ZkMetrics.getInstance().leadershipAcquired();
+		} else if (this.leader != null) {
+			ZkMetrics.getInstance().leadershipReleased();
+		}
+		this.leader = leader;
+		LOGGER.debug((leader ? "take" : "release") + " leadership(" + zkPath + ")");
+
+		final String leadership = String.valueOf(leader);
+		dispatcher.dispatch(zkPath, new Runnable() {
+			@Override
+			public void run() {
+				for (Modifier modifier : modifierSet) {
+					modifier.eval(leadership);
+				}
+			}
+		});
+	}
+
+	public synchronized boolean isLeader() {
+		return leader != null && leader;
+	}
+}
@@ -0,0 +1,472 @@
+package com.sky.zookeeper.watcher;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.api.BackgroundCallback;
+import com.netflix.curator.framework.api.CuratorEvent;
+import com.netflix.curator.framework.api.CuratorWatcher;
+import com.netflix.curator.framework.state.ConnectionState;
+import com.netflix.curator.framework.state.ConnectionStateListener;
+import com.netflix.curator.utils.ZKPaths;
+import com.sky.zookeeper.metrics.ZkMetrics;
+import com.sky.zookeeper.type.Modifier;
+
+/**
+ * Leadership of many roles derived from one ephemeral membership node per process, the leader of a role is the member
+ * ranking highest for it by rendezvous hashing, so roles spread evenly and a member joining or leaving moves only the
+ * roles it wins or held
+ * One child watch on the membership path replaces an election per role, transitions reach the modifiers through the
+ * dispatcher in order with other events of the role path
+ * Partitioned work is split the same way, every partition goes to the highest ranking member with room left, no member
+ * taking more than its even share (consistent hashing with bounded loads)
+ * NOTE:members agree once they have seen the same member list, while a change propagates two members may both lead a
+ * role or own a partition for a moment
+ * A failed join is retried with exponential backoff until it succeeds or the membership is closed
+ */
+public class ZkMembership implements CuratorWatcher, BackgroundCallback, ConnectionStateListener {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ZkMembership.class);
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final String NODE_NAME = "member-";
+
+	private static final long MIN_RETRY_DELAY = 100;
+	private static final long MAX_RETRY_DELAY = 30000;
+
+	/**
+	 * Leadership state of one role
+	 */
+	private class Role {
+		private final String zkPath;
+		private final Set<Modifier> modifierSet;
+		// null until the first transition is published
+		private Boolean leader;
+
+		Role(String zkPath, Set<Modifier> modifierSet) {
+			this.zkPath = zkPath;
+			this.modifierSet = modifierSet;
+		}
+
+		void setLeader(boolean leader) {
+			if (this.leader != null && this.leader == leader) {
+				return;
+			}
+
+			if (leader) {
+				ZkMetrics.getInstance().leadershipAcquired();
+			} else if (this.leader != null) {
+				ZkMetrics.getInstance().leadershipReleased();
+			}
+			this.leader = leader;
+			LOGGER.debug((leader ? "take" : "release") + " leadership(" + zkPath + ")");
+
+			final String leadership = String.valueOf(leader);
+			dispatcher.dispatch(zkPath, new Runnable() {
+				@Override
+				public void run() {
+					for (Modifier modifier : modifierSet) {
+						modifier.eval(leadership);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Partitions of one partitioned work owned by this member
+	 */
+	private class Partitioned {
+		private final String name;
+		private final int partitions;
+		private final Set<Modifier> modifierSet;
+		// comma separated, null until the first assignment is published
+		private String assignment;
+
+		Partitioned(String name, int partitions, Set<Modifier> modifierSet) {
+			this.name = name;
+			this.partitions = partitions;
+			this.modifierSet = modifierSet;
+		}
+
+		void setAssignment(String assignment) {
+			if (assignment.equals(this.assignment)) {
+				return;
+			}
+
+			this.assignment = assignment;
+			LOGGER.debug("own partitions [" + assignment + "] of " + name);
+
+			final byte[] data = assignment.getBytes(UTF_8);
+			dispatcher.dispatch(name, new Runnable() {
+				@Override
+				public void run() {
+					Modifier.applyAll(modifierSet, data);
+				}
+			});
+		}
+	}
+
+	private CuratorFramework zkClient;
+	private String membershipPath;
+	private ZkEventDispatcher dispatcher;
+
+	private Map<String, Role> roles = new LinkedHashMap<String, Role>();
+	private Map<String, Partitioned> partitionedWorks = new LinkedHashMap<String, Partitioned>();
+	private List<String> members = Collections.emptyList();
+
+	private volatile String ourPath;
+	private volatile boolean closed = false;
+	// a create is in flight or its retry is pending, guarded by joinLock
+	private boolean joining = false;
+	private long retryDelay = MIN_RETRY_DELAY;
+	private final Object joinLock = new Object();
+
+	public ZkMembership(CuratorFramework zkClient, String membershipPath, ZkEventDispatcher dispatcher) {
+		this.zkClient = zkClient;
+		this.membershipPath = membershipPath;
+		this.dispatcher = dispatcher;
+	}
+
+	/**
+	 * Register a role before start
+	 */
+	public synchronized void addRole(String zkPath, Set<Modifier> modifierSet) {
+		roles.put(zkPath, new Role(zkPath, modifierSet));
+	}
+
+	/**
+	 * Register a partitioned work before start
+	 */
+	public synchronized void addPartitioned(String name, int partitions, Set<Modifier> modifierSet) {
+		partitionedWorks.put(name, new Partitioned(name, partitions, modifierSet));
+	}
+
+	/**
+	 * Rank of a member for a role, the highest ranking member leads it
+	 * NOTE:must give the same result on every member, hence a fixed hash of the UTF-8 bytes
+	 */
+	private static long rank(String role, String member) {
+		// FNV-1a over role, a separator and member, then a 64 bit finalizer to spread close inputs
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : role.getBytes(UTF_8)) {
+			hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+		}
+		hash = (hash ^ 0xff) * 0x100000001b3L;
+		for (byte b : member.getBytes(UTF_8)) {
+			hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * Member leading a role, decided alike on every member seeing the same list
+	 * @return null if there is no member
+	 */
+	public static String leaderOf(String role, List<String> members) {
+		String leader = null;
+		long leaderRank = 0;
+		for (String member : members) {
+			long rank = rank(role, member);
+			// ties (practically never) go to the smaller name so that every member decides alike
+			if (leader == null || rank > leaderRank || (rank == leaderRank && member.compareTo(leader) < 0)) {
+				leader = member;
+				leaderRank = rank;
+			}
+		}
+		return leader;
+	}
+
+	/**
+	 * Owner of every partition, decided alike on every member seeing the same list
+	 * Partitions in turn go to the highest ranking member (by rank(name + "#" + partition, member)) with room left, a
+	 * member has room below partitions / members, and one more as long as fewer than partitions % members members took
+	 * one more; shares then differ by one at most and a membership change moves few partitions
+	 * @return owners by partition, all null if there is no member
+	 */
+	public static String[] assignPartitions(String name, int partitions, List<String> members) {
+		String[] owners = new String[partitions];
+		if (members.isEmpty()) {
+			return owners;
+		}
+
+		// sorted so that loads are indexed alike whatever the order of the list
+		List<String> sorted = new ArrayList<String>(members);
+		Collections.sort(sorted);
+		int share = partitions / sorted.size();
+		int extra = partitions % sorted.size();
+		int[] loads = new int[sorted.size()];
+
+		for (int partition = 0; partition < partitions; partition++) {
+			String key = name + "#" + partition;
+			int best = -1;
+			long bestRank = 0;
+			for (int i = 0; i < sorted.size(); i++) {
+				if (loads[i] > share || (loads[i] == share && extra == 0)) {
+					continue;
+				}
+
+				// ties go to the smaller name, which comes first
+				long rank = rank(key, sorted.get(i));
+				if (best < 0 || rank > bestRank) {
+					best = i;
+					bestRank = rank;
+				}
+			}
+
+			if (loads[best]++ == share) {
+				extra--;
+			}
+			owners[partition] = sorted.get(best);
+		}
+		return owners;
+	}
+
+	/**
+	 * Publish follower state of every role, no partitions owned, and register this process as a member
+	 */
+	public void start() throws Exception {
+		releaseAll();
+
+		zkClient.getConnectionStateListenable().addListener(this);
+		join();
+	}
+
+	/**
+	 * Leave the membership, deleting our node so that the other members take over our roles at once
+	 */
+	public void close() throws Exception {
+		closed = true;
+		zkClient.getConnectionStateListenable().removeListener(this);
+
+		String path = ourPath;
+		ourPath = null;
+		if (path != null) {
+			zkClient.delete().inBackground().forPath(path);
+		}
+		releaseAll();
+	}
+
+	private void join() throws Exception {
+		synchronized (joinLock) {
+			if (closed || joining) {
+				return;
+			}
+			joining = true;
+		}
+
+		create();
+	}
+
+	private void create() throws Exception {
+		if (closed) {
+			synchronized (joinLock) {
+				joining = false;
+			}
+			return;
+		}
+
+		try {
+			zkClient.create()
+					.creatingParentsIfNeeded()
+					.withProtection()
+					.withMode(CreateMode.EPHEMERAL_SEQUENTIAL)
+					.inBackground(this)
+					.forPath(ZKPaths.makePath(membershipPath, NODE_NAME));
+		} catch (Exception e) {
+			synchronized (joinLock) {
+				joining = false;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Create our node again after a delay doubling on every failure, a reconnection does not join meanwhile
+	 */
+	private void retryJoin(KeeperException.Code code) {
+		long delay;
+		synchronized (joinLock) {
+			delay = retryDelay;
+			retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+		}
+		LOGGER.error("join membership failed (on path \"" + membershipPath + "\", code " + code + "), retry in "
+				+ delay + "ms");
+
+		dispatcher.schedule(membershipPath, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					create();
+				} catch (Exception e) {
+					LOGGER.error("join membership failed (on path \"" + membershipPath + "\")", e);
+				}
+			}
+		}, delay);
+	}
+
+	private void list() throws Exception {
+		if (closed || ourPath == null) {
+			return;
+		}
+
+		zkClient.getChildren().usingWatcher(this).inBackground(this).forPath(membershipPath);
+	}
+
+	@Override
+	public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+		KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+
+		switch (event.getType()) {
+		case CREATE:
+			if (code != KeeperException.Code.OK) {
+				retryJoin(code);
+				return;
+			}
+
+			synchronized (joinLock) {
+				joining = false;
+				retryDelay = MIN_RETRY_DELAY;
+			}
+			ourPath = event.getName();
+			if (closed) {
+				zkClient.delete().inBackground().forPath(event.getName());
+				return;
+			}
+			list();
+
+			break;
+
+		case CHILDREN:
+			if (code != KeeperException.Code.OK) {
+				LOGGER.error("list members failed (on path \"" + membershipPath + "\", code " + code + ")");
+				return;
+			}
+
+			assign(event.getChildren());
+
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	private synchronized void assign(List<String> children) throws Exception {
+		String path = ourPath;
+		if (closed || path == null) {
+			return;
+		}
+
+		String us = ZKPaths.getNodeFromPath(path);
+		if (!children.contains(us)) {
+			// the session expired and took our node with it
+			LOGGER.warn("member node " + path + " is gone, join again");
+			ourPath = null;
+			releaseAll();
+			join();
+			return;
+		}
+
+		members = children;
+		for (Role role : roles.values()) {
+			role.setLeader(us.equals(leaderOf(role.zkPath, children)));
+		}
+
+		for (Partitioned partitioned : partitionedWorks.values()) {
+			String[] owners = assignPartitions(partitioned.name, partitioned.partitions, children);
+
+			StringBuilder assignment = new StringBuilder();
+			for (int partition = 0; partition < owners.length; partition++) {
+				if (us.equals(owners[partition])) {
+					assignment.append(assignment.length() == 0 ? "" : ",").append(partition);
+				}
+			}
+			partitioned.setAssignment(assignment.toString());
+		}
+	}
+
+	private synchronized void releaseAll() {
+		for (Role role : roles.values()) {
+			role.setLeader(false);
+		}
+		for (Partitioned partitioned : partitionedWorks.values()) {
+			partitioned.setAssignment("");
+		}
+	}
+
+	@Override
+	public void process(WatchedEvent event) throws Exception {
+		if (event.getType() == EventType.NodeChildrenChanged) {
+			list();
+		}
+	}
+
+	@Override
+	public void stateChanged(CuratorFramework client, ConnectionState newState) {
+		LOGGER.debug("state has changed to " + newState);
+
+		try {
+			switch (newState) {
+			case SUSPENDED:
+			case LOST:
+				releaseAll();
+
+				break;
+
+			case RECONNECTED:
+				if (ourPath == null) {
+					join();
+				} else {
+					list();
+				}
+
+				break;
+
+			default:
+				break;
+			}
+		} catch (Exception e) {
+			LOGGER.error("rejoin membership failed (on path \"" + membershipPath + "\")", e);
+		}
+	}
+
+	/**
+	 * Names of the member nodes last seen, including ours
+	 */
+	public synchronized List<String> getMembers() {
+		return members;
+	}
+
+	public synchronized boolean isLeader(String zkPath) {
+		Role role = roles.get(zkPath);
+		return role != null && role.leader != null && role.leader;
+	}
+
+	/**
+	 * Partitions of the work owned by this member, comma separated
+	 * @return null for an unknown work
+	 */
+	public synchronized String getAssignment(String name) {
+		Partitioned partitioned = partitionedWorks.get(name);
+		return partitioned == null ? null : partitioned.assignment;
+	}
+}
@@ -0,0 +1,122 @@
+package com.sky.zookeeper;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.context.support.StaticApplicationContext;
+
+import com.sky.zookeeper.util.RefreshContextWatcher;
+import com.sky.zookeeper.util.ZookeeperResource.ReloadContext;
+
+/**
+ * Debounce of context reloads: bursts merge into one reload, reloads keep the min interval apart and changes during a
+ * reload merge into one follow-up
+ */
+public class RefreshContextWatcherTest {
+
+    /**
+     * Context recording when every refresh starts and ends instead of refreshing
+     */
+    public static class RecordingContext extends StaticApplicationContext {
+        private final long refreshTime;
+        private final List<Long> starts = new CopyOnWriteArrayList<Long>();
+        private final List<Long> ends = new CopyOnWriteArrayList<Long>();
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        public RecordingContext(long refreshTime) {
+            this.refreshTime = refreshTime;
+        }
+
+        @Override
+        public void refresh() {
+            starts.add(System.currentTimeMillis());
+            started.countDown();
+            try {
+                Thread.sleep(refreshTime);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ends.add(System.currentTimeMillis());
+        }
+    }
+
+    private RefreshContextWatcher watcher;
+
+    @After
+    public void after() {
+        if (watcher != null) {
+            watcher.shutdown();
+        }
+    }
+
+    private static WatchedEvent dataChanged() {
+        return new WatchedEvent(EventType.NodeDataChanged, KeeperState.SyncConnected, "/refresh_test");
+    }
+
+    private static void awaitRefreshes(RecordingContext ctx, int count) throws InterruptedException {
+        for (int i = 0; i < 200 && ctx.ends.size() < count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, ctx.ends.size());
+    }
+
+    @Test
+    public void burstWithinQuietPeriodReloadsOnce() throws Exception {
+        RecordingContext ctx = new RecordingContext(0);
+        watcher = new RefreshContextWatcher(ctx, null, true, ReloadContext.AUTO, 300, 0);
+
+        long first = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            watcher.process(dataChanged());
+            Thread.sleep(20);
+        }
+        long last = System.currentTimeMillis();
+
+        awaitRefreshes(ctx, 1);
+        Thread.sleep(500);
+        assertEquals(1, ctx.starts.size());
+        // the quiet period restarts with every change
+        assertTrue(ctx.starts.get(0) - first >= 300);
+        assertTrue(ctx.starts.get(0) >= last);
+    }
+
+    @Test
+    public void respectMinInterval() throws Exception {
+        RecordingContext ctx = new RecordingContext(0);
+        watcher = new RefreshContextWatcher(ctx, null, true, ReloadContext.AUTO, 0, 500);
+
+        watcher.process(dataChanged());
+        awaitRefreshes(ctx, 1);
+
+        watcher.process(dataChanged());
+        awaitRefreshes(ctx, 2);
+        assertTrue(ctx.starts.get(1) - ctx.ends.get(0) >= 500);
+    }
+
+    @Test
+    public void changesDuringReloadMergeIntoOneFollowUp() throws Exception {
+        RecordingContext ctx = new RecordingContext(300);
+        watcher = new RefreshContextWatcher(ctx, null, true, ReloadContext.AUTO, 0, 0);
+
+        watcher.process(dataChanged());
+        assertTrue(ctx.started.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            watcher.process(dataChanged());
+        }
+
+        awaitRefreshes(ctx, 2);
+        Thread.sleep(500);
+        assertEquals(2, ctx.starts.size());
+        // the follow-up waits for the reload in progress
+        assertTrue(ctx.starts.get(1) >= ctx.ends.get(0));
+    }
+}
@@ -0,0 +1,228 @@
+package com.sky.zookeeper;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.sky.zookeeper.annotation.ZkValue;
+import com.sky.zookeeper.type.AccessStrategy;
+import com.sky.zookeeper.type.CreateStrategy;
+import com.sky.zookeeper.type.FieldEditor;
+import com.sky.zookeeper.type.MethodInvoker;
+import com.sky.zookeeper.type.Modifier;
+import com.sky.zookeeper.type.PrimitiveDecoder;
+import com.sky.zookeeper.type.SerializedDecoder;
+import com.sky.zookeeper.type.SubscribeType;
+import com.sky.zookeeper.type.ValueDecoder;
+
+/**
+ * Decode raw data into members, once per change for all members sharing a decoder and type
+ */
+public class ValueDecoderTest {
+	public static class CountingDecoder extends PrimitiveDecoder {
+		private AtomicInteger decodeCount = new AtomicInteger();
+
+		@Override
+		public Object decode(ByteBuffer data, Class<?> type) {
+			decodeCount.incrementAndGet();
+			return super.decode(data, type);
+		}
+	}
+
+	public static class Target {
+		@ZkValue(value = "/decoder/size", decoder = PrimitiveDecoder.class)
+		private int size;
+
+		@ZkValue(value = "/decoder/size", decoder = PrimitiveDecoder.class)
+		private Integer boxedSize;
+
+		private long longSize;
+
+		@ZkValue("/decoder/size")
+		private String text;
+
+		@ZkValue(value = "/decoder/size", decoder = PrimitiveDecoder.class)
+		public void setLongSize(long longSize) {
+			this.longSize = longSize;
+		}
+	}
+
+	public static class PrimitiveTarget {
+		@ZkValue("/decoder/primitive")
+		private int size;
+
+		@ZkValue("/decoder/primitive")
+		private volatile long version;
+
+		@ZkValue("/decoder/primitive")
+		private double ratio;
+
+		@ZkValue("/decoder/flag")
+		private volatile boolean enabled;
+
+		@ZkValue("/decoder/primitive")
+		private short small;
+	}
+
+	private static final PrimitiveDecoder DECODER = new PrimitiveDecoder();
+
+	private static Object decode(String data, Class<?> type) {
+		return DECODER.decode(ByteBuffer.wrap(data.getBytes(Charset.forName("UTF-8"))).asReadOnlyBuffer(), type);
+	}
+
+	@Test
+	public void decodePrimitives() {
+		assertEquals(42, decode(" 42\n", int.class));
+		assertEquals(-2147483648, decode("-2147483648", Integer.class));
+		assertEquals(Long.MIN_VALUE, decode("-9223372036854775808", long.class));
+		assertEquals(Long.MAX_VALUE, decode("+9223372036854775807", long.class));
+		assertEquals((short) -7, decode("-7", short.class));
+		assertEquals(true, decode("TRUE", boolean.class));
+		assertEquals(false, decode("yes", Boolean.class));
+		assertEquals(0.5, decode("0.5", double.class));
+		assertEquals('x', decode(" x ", char.class));
+		assertEquals(" 中 ", decode(" 中 ", String.class));
+		assertEquals(TimeUnit.SECONDS, decode("SECONDS\n", TimeUnit.class));
+
+		for (String invalid : new String[] { "", "-", "1x", "2147483648", "1 2" }) {
+			try {
+				decode(invalid, int.class);
+				fail("decoded \"" + invalid + "\"");
+			} catch (NumberFormatException e) {
+				// expected
+			}
+		}
+
+		assertFalse(DECODER.supports(Object.class));
+		assertTrue(DECODER.supports(int.class));
+	}
+
+	@Test
+	public void decodeOncePerChange() throws Exception {
+		CountingDecoder decoder = new CountingDecoder();
+		Target target = new Target();
+
+		List<Modifier> modifiers = new ArrayList<Modifier>();
+		for (String name : new String[] { "size", "boxedSize", "text" }) {
+			modifiers.add(new FieldEditor(target, Target.class.getDeclaredField(name), null, SubscribeType.DATA_CHANGE,
+					CreateStrategy.CONSTRUCTOR, AccessStrategy.METHOD_HANDLE, "text".equals(name) ? null : decoder));
+		}
+		modifiers.add(new FieldEditor(target, Target.class.getDeclaredField("size"), null, SubscribeType.DATA_CHANGE,
+				CreateStrategy.CONSTRUCTOR, AccessStrategy.REFLECTION, decoder));
+		modifiers.add(new MethodInvoker(target, Target.class.getMethod("setLongSize", long.class), null,
+				SubscribeType.DATA_CHANGE, CreateStrategy.CONSTRUCTOR, AccessStrategy.METHOD_HANDLE, decoder));
+
+		Modifier.applyAll(modifiers, "12".getBytes());
+
+		assertEquals(12, target.size);
+		assertEquals(Integer.valueOf(12), target.boxedSize);
+		assertEquals(12L, target.longSize);
+		assertEquals("12", target.text);
+		// int, Integer and long
+		assertEquals(3, decoder.decodeCount.get());
+
+		// a malformed value leaves the decoded members alone
+		Modifier.applyAll(modifiers, "x".getBytes());
+		assertEquals(12, target.size);
+		assertEquals("x", target.text);
+	}
+
+	@Test
+	public void applyAfterFailedModifier() throws Exception {
+		Target target = new Target();
+
+		List<Modifier> modifiers = new ArrayList<Modifier>();
+		for (String name : new String[] { "boxedSize", "text" }) {
+			modifiers.add(new FieldEditor(target, Target.class.getDeclaredField(name), null, SubscribeType.DATA_CHANGE,
+					CreateStrategy.CONSTRUCTOR, AccessStrategy.REFLECTION));
+		}
+
+		// new Integer("x") fails, the String after it still gets the value
+		Modifier.applyAll(modifiers, "x".getBytes());
+		assertNull(target.boxedSize);
+		assertEquals("x", target.text);
+
+		Modifier.applyAll(modifiers, "\u00e9".getBytes(Charset.forName("UTF-8")));
+		assertEquals("\u00e9", target.text);
+	}
+
+	@Test
+	public void primitiveFields() throws Exception {
+		for (AccessStrategy accessStrategy : AccessStrategy.values()) {
+			PrimitiveTarget target = new PrimitiveTarget();
+
+			List<Modifier> modifiers = new ArrayList<Modifier>();
+			for (String name : new String[] { "size", "version", "ratio", "small" }) {
+				modifiers.add(new FieldEditor(target, PrimitiveTarget.class.getDeclaredField(name), null,
+						SubscribeType.DATA_CHANGE, CreateStrategy.CONSTRUCTOR, accessStrategy));
+			}
+			FieldEditor enabled = new FieldEditor(target, PrimitiveTarget.class.getDeclaredField("enabled"), null,
+					SubscribeType.DATA_CHANGE, CreateStrategy.CONSTRUCTOR, accessStrategy);
+
+			Modifier.applyAll(modifiers, "7\n".getBytes());
+			enabled.evalData("true".getBytes());
+
+			assertEquals(7, target.size);
+			assertEquals(7L, target.version);
+			assertEquals(7.0, target.ratio, 0);
+			assertEquals((short) 7, target.small);
+			assertTrue(target.enabled);
+
+			// an invalid value keeps the last one
+			Modifier.applyAll(modifiers, "seven".getBytes());
+			assertEquals(7, target.size);
+
+			enabled.set("false");
+			assertFalse(target.enabled);
+			assertEquals(Boolean.FALSE, enabled.get());
+		}
+	}
+
+	private static ByteBuffer serialize(Object value) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(value);
+		out.close();
+		return ByteBuffer.wrap(bytes.toByteArray()).asReadOnlyBuffer();
+	}
+
+	@Test
+	public void decodeAllowedClassesOnly() throws Exception {
+		SerializedDecoder decoder = new SerializedDecoder();
+		assertEquals(Integer.valueOf(7), decoder.decode(serialize(7), Integer.class));
+		assertEquals(TimeUnit.SECONDS, decoder.decode(serialize(TimeUnit.SECONDS), TimeUnit.class));
+
+		// any other class is rejected, even if it is a member type
+		List<Integer> list = new ArrayList<Integer>(Arrays.asList(1, 2));
+		for (Object value : new Object[] { list, new HashMap<String, String>() }) {
+			try {
+				decoder.decode(serialize(value), Object.class);
+				fail(value.getClass().getName() + " decoded");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+
+		decoder.setAllowedClasses(ArrayList.class, Integer.class);
+		assertEquals(list, decoder.decode(serialize(list), List.class));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void rejectUnsupportedType() throws Exception {
+		ValueDecoder decoder = new PrimitiveDecoder();
+		new FieldEditor(new Object(), ValueDecoderTest.class.getDeclaredField("DECODER"), null, SubscribeType.NONE,
+				CreateStrategy.CONSTRUCTOR, AccessStrategy.REFLECTION, decoder);
+	}
+}
@@ -0,0 +1,151 @@
+package com.sky.zookeeper;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.support.StaticApplicationContext;
+
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.CuratorFrameworkFactory;
+import com.netflix.curator.retry.RetryNTimes;
+import com.netflix.curator.test.TestingServer;
+import com.sky.zookeeper.annotation.ZkConfig;
+import com.sky.zookeeper.annotation.ZkManage;
+
+/**
+ * Bind immutable config objects to a subtree, readers never see fields of two versions mixed
+ */
+public class ZkConfigTest {
+	private static TestingServer server;
+	private static CuratorFramework zkClient;
+
+	public static class Pool {
+		private int min = 1;
+		private int max = 1;
+	}
+
+	public static class DbConfig {
+		private final String url;
+		private final int port;
+		private final boolean readOnly;
+		private final TimeUnit unit;
+		private final Pool pool;
+		private final String missing = "default";
+
+		private DbConfig() {
+			url = null;
+			port = 0;
+			readOnly = false;
+			unit = null;
+			pool = null;
+		}
+	}
+
+	@ZkManage
+	public static class ManagedBean {
+		@ZkConfig("/config_test/db")
+		private volatile DbConfig db;
+
+		@ZkConfig("/config_test/db")
+		private volatile DbConfig sameDb;
+	}
+
+	public static class ConfigContext extends ZkContext {
+		@Override
+		public String getZkConnection() {
+			return server.getConnectString();
+		}
+
+		@Override
+		public Integer getZkConnectionTimeout() {
+			return 1000;
+		}
+	}
+
+	@BeforeClass
+	public static void startServer() throws Exception {
+		server = new TestingServer();
+
+		zkClient = CuratorFrameworkFactory.builder()
+				.connectString(server.getConnectString())
+				.connectionTimeoutMs(1000)
+				.retryPolicy(new RetryNTimes(3, 1000))
+				.build();
+		zkClient.start();
+
+		zkClient.create().creatingParentsIfNeeded().forPath("/config_test/db/url", "jdbc:h2:mem:0".getBytes());
+		zkClient.create().forPath("/config_test/db/port", "0".getBytes());
+		zkClient.create().forPath("/config_test/db/readOnly", "true".getBytes());
+		zkClient.create().forPath("/config_test/db/unit", "SECONDS".getBytes());
+		zkClient.create().forPath("/config_test/db/pool");
+		zkClient.create().forPath("/config_test/db/pool/min", "2".getBytes());
+		zkClient.create().forPath("/config_test/db/pool/max", "8".getBytes());
+	}
+
+	@AfterClass
+	public static void stopServer() throws Exception {
+		zkClient.close();
+		server.close();
+	}
+
+	@Test
+	public void bindSubtree() throws Exception {
+		StaticApplicationContext ctx = new StaticApplicationContext();
+		ctx.registerSingleton("managedBean", ManagedBean.class);
+		ctx.registerSingleton("zkContext", ConfigContext.class);
+		ctx.refresh();
+
+		final ManagedBean bean = ctx.getBean(ManagedBean.class);
+		DbConfig db = bean.db;
+		assertEquals("jdbc:h2:mem:0", db.url);
+		assertEquals(0, db.port);
+		assertTrue(db.readOnly);
+		assertEquals(TimeUnit.SECONDS, db.unit);
+		assertEquals(2, db.pool.min);
+		assertEquals(8, db.pool.max);
+		assertEquals("default", db.missing);
+		assertSame(db, bean.sameDb);
+
+		// url and port always change together, a reader must never see them apart
+		final AtomicBoolean stop = new AtomicBoolean(false);
+		final AtomicReference<String> torn = new AtomicReference<String>();
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				while (!stop.get()) {
+					DbConfig config = bean.db;
+					if (!config.url.equals("jdbc:h2:mem:" + config.port)) {
+						torn.set(config.url + " on port " + config.port);
+					}
+				}
+			}
+		};
+		reader.start();
+
+		for (int i = 1; i <= 20; i++) {
+			zkClient.inTransaction()
+					.setData().forPath("/config_test/db/url", ("jdbc:h2:mem:" + i).getBytes()).and()
+					.setData().forPath("/config_test/db/port", String.valueOf(i).getBytes()).and()
+					.commit();
+		}
+
+		for (int i = 0; i < 200 && bean.db.port != 20; i++) {
+			Thread.sleep(10);
+		}
+		stop.set(true);
+		reader.join();
+
+		assertEquals(20, bean.db.port);
+		assertNotSame(db, bean.db);
+		assertEquals(0, db.port);
+		assertNull(torn.get(), torn.get());
+
+		ctx.close();
+	}
+}
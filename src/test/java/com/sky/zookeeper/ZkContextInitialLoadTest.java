@@ -0,0 +1,144 @@
+package com.sky.zookeeper;
+
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.support.StaticApplicationContext;
+
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.CuratorFrameworkFactory;
+import com.netflix.curator.retry.RetryNTimes;
+import com.netflix.curator.test.TestingServer;
+import com.sky.zookeeper.annotation.ZkManage;
+import com.sky.zookeeper.annotation.ZkValue;
+
+/**
+ * Compare startup time of the serial and the pipelined initial load against an in-process ZooKeeper server
+ */
+public class ZkContextInitialLoadTest {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ZkContextInitialLoadTest.class);
+
+	private static final int PATH_COUNT = 8;
+	private static final int BEAN_COUNT = 100;
+
+	private static TestingServer server;
+
+	@ZkManage
+	public static class ManagedBean {
+		@ZkValue("/initial_load/0")
+		private String value0;
+		@ZkValue("/initial_load/1")
+		private String value1;
+		@ZkValue("/initial_load/2")
+		private String value2;
+		@ZkValue("/initial_load/3")
+		private String value3;
+		@ZkValue("/initial_load/4")
+		private String value4;
+		@ZkValue("/initial_load/5")
+		private String value5;
+		@ZkValue("/initial_load/6")
+		private String value6;
+		@ZkValue("/initial_load/7")
+		private String value7;
+
+		private String shared;
+
+		@ZkValue("/initial_load/0")
+		public void setShared(String shared) {
+			this.shared = shared;
+		}
+
+		public String[] getValues() {
+			return new String[] { value0, value1, value2, value3, value4, value5, value6, value7 };
+		}
+
+		public String getShared() {
+			return shared;
+		}
+	}
+
+	public static class SerialContext extends ZkContext {
+		@Override
+		public String getZkConnection() {
+			return server.getConnectString();
+		}
+
+		@Override
+		public Integer getZkConnectionTimeout() {
+			return 1000;
+		}
+	}
+
+	public static class PipelinedContext extends SerialContext {
+		@Override
+		public boolean isPipelinedInitialLoad() {
+			return true;
+		}
+	}
+
+	@BeforeClass
+	public static void startServer() throws Exception {
+		server = new TestingServer();
+
+		CuratorFramework zkClient = CuratorFrameworkFactory.builder()
+				.connectString(server.getConnectString())
+				.connectionTimeoutMs(1000)
+				.retryPolicy(new RetryNTimes(3, 1000))
+				.build();
+		zkClient.start();
+
+		for (int i = 0; i < PATH_COUNT; i++) {
+			zkClient.create().creatingParentsIfNeeded().forPath("/initial_load/" + i, ("value" + i).getBytes());
+		}
+
+		zkClient.close();
+	}
+
+	@AfterClass
+	public static void stopServer() throws Exception {
+		server.close();
+	}
+
+	private long startContext(Class<? extends ZkContext> contextClass) {
+		StaticApplicationContext ctx = new StaticApplicationContext();
+		for (int i = 0; i < BEAN_COUNT; i++) {
+			ctx.registerSingleton("managedBean" + i, ManagedBean.class);
+		}
+		ctx.registerSingleton("zkContext", contextClass);
+
+		long start = System.nanoTime();
+		ctx.refresh();
+		long elapsed = System.nanoTime() - start;
+
+		for (int i = 0; i < BEAN_COUNT; i++) {
+			ManagedBean bean = (ManagedBean) ctx.getBean("managedBean" + i);
+
+			String[] values = bean.getValues();
+			for (int j = 0; j < PATH_COUNT; j++) {
+				assertEquals("value" + j, values[j]);
+			}
+			assertEquals("value0", bean.getShared());
+		}
+
+		ctx.close();
+
+		return elapsed;
+	}
+
+	@Test
+	public void compareInitialLoad() {
+		// warm up class loading and the server before measuring
+		startContext(SerialContext.class);
+
+		long serial = startContext(SerialContext.class);
+		long pipelined = startContext(PipelinedContext.class);
+
+		LOGGER.info("initial load of " + BEAN_COUNT * (PATH_COUNT + 1) + " members on " + PATH_COUNT
+				+ " paths: serial " + serial / 1000000 + "ms, pipelined " + pipelined / 1000000 + "ms");
+	}
+}
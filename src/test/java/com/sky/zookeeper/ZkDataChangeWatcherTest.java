@@ -0,0 +1,128 @@
+package com.sky.zookeeper;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.CuratorFrameworkFactory;
+import com.netflix.curator.retry.RetryNTimes;
+import com.netflix.curator.test.TestingServer;
+import com.sky.zookeeper.metrics.ZkMetrics;
+import com.sky.zookeeper.type.CreateStrategy;
+import com.sky.zookeeper.type.DispatchMode;
+import com.sky.zookeeper.type.MethodInvoker;
+import com.sky.zookeeper.type.Modifier;
+import com.sky.zookeeper.type.SubscribeType;
+import com.sky.zookeeper.watcher.ZkDataChangeWatcher;
+import com.sky.zookeeper.watcher.ZkEventDispatcher;
+
+public class ZkDataChangeWatcherTest {
+	private static final String ZK_PATH = "/watcher_test";
+
+	private TestingServer server;
+	private CuratorFramework zkClient;
+	private ZkEventDispatcher dispatcher;
+
+	public static class Target {
+		private AtomicInteger updateCount = new AtomicInteger();
+		private volatile String value;
+
+		public void setValue(String value) {
+			this.value = value;
+			updateCount.incrementAndGet();
+		}
+	}
+
+	@Before
+	public void before() throws Exception {
+		server = new TestingServer();
+		zkClient = CuratorFrameworkFactory.builder()
+				.connectString(server.getConnectString())
+				.connectionTimeoutMs(1000)
+				.retryPolicy(new RetryNTimes(3, 1000))
+				.build();
+		zkClient.start();
+		zkClient.create().forPath(ZK_PATH, "0".getBytes());
+
+		dispatcher = new ZkEventDispatcher(DispatchMode.THREAD_POOL, 2);
+	}
+
+	@After
+	public void after() throws Exception {
+		dispatcher.shutdown();
+		zkClient.close();
+		server.close();
+	}
+
+	private ZkDataChangeWatcher watch(Target target, int coalesceWindow) throws Exception {
+		Set<Modifier> modifierSet = new HashSet<Modifier>();
+		modifierSet.add(new MethodInvoker(target, Target.class.getMethod("setValue", String.class), null,
+				SubscribeType.DATA_CHANGE, CreateStrategy.CONSTRUCTOR));
+
+		ZkDataChangeWatcher watcher = new ZkDataChangeWatcher(zkClient, modifierSet, dispatcher, coalesceWindow);
+		watcher.watch(ZK_PATH, "0".getBytes());
+
+		return watcher;
+	}
+
+	private void waitFor(Target target, String value) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!value.equals(target.value) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		assertEquals(value, target.value);
+	}
+
+	@Test
+	public void coalesceBurst() throws Exception {
+		Target target = new Target();
+		watch(target, 500);
+
+		for (int i = 1; i <= 10; i++) {
+			zkClient.setData().forPath(ZK_PATH, String.valueOf(i).getBytes());
+		}
+
+		waitFor(target, "10");
+		Thread.sleep(1000);
+
+		assertEquals("10", target.value);
+		assertEquals(1, target.updateCount.get());
+	}
+
+	@Test
+	public void skipUnchangedData() throws Exception {
+		Target target = new Target();
+		ZkDataChangeWatcher watcher = watch(target, 0);
+
+		zkClient.setData().forPath(ZK_PATH, "1".getBytes());
+		waitFor(target, "1");
+		// the initial read may already be counted as skipped
+		long skipped = watcher.getSkippedCount();
+		long skippedUpdates = ZkMetrics.getInstance().getSkippedUpdates();
+
+		// touch-writes bump the version but keep the bytes, each is written once the last one is read (and watched)
+		for (int i = 1; i <= 5; i++) {
+			zkClient.setData().forPath(ZK_PATH, "1".getBytes());
+
+			long deadline = System.currentTimeMillis() + 10000;
+			while (watcher.getSkippedCount() < skipped + i && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+		}
+		zkClient.setData().forPath(ZK_PATH, "2".getBytes());
+		waitFor(target, "2");
+
+		assertEquals(2, target.updateCount.get());
+		assertEquals(2, watcher.getAppliedCount());
+		assertEquals(skipped + 5, watcher.getSkippedCount());
+		assertTrue(ZkMetrics.getInstance().getSkippedUpdates() >= skippedUpdates + 5);
+	}
+}
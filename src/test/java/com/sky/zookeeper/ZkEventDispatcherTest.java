@@ -0,0 +1,159 @@
+package com.sky.zookeeper;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.sky.zookeeper.metrics.ZkMetrics;
+import com.sky.zookeeper.type.DispatchMode;
+import com.sky.zookeeper.watcher.ZkEventDispatcher;
+
+public class ZkEventDispatcherTest {
+	private static final int TASK_COUNT = 1000;
+
+	@Test
+	public void keepOrderPerPath() throws InterruptedException {
+		ZkEventDispatcher dispatcher = new ZkEventDispatcher(DispatchMode.THREAD_POOL, 4);
+
+		final List<Integer> first = Collections.synchronizedList(new ArrayList<Integer>());
+		final List<Integer> second = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch latch = new CountDownLatch(TASK_COUNT * 2);
+
+		for (int i = 0; i < TASK_COUNT; i++) {
+			final int value = i;
+
+			dispatcher.dispatch("/first", new Runnable() {
+				@Override
+				public void run() {
+					first.add(value);
+					latch.countDown();
+				}
+			});
+			dispatcher.dispatch("/second", new Runnable() {
+				@Override
+				public void run() {
+					second.add(value);
+					latch.countDown();
+				}
+			});
+		}
+
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+		for (int i = 0; i < TASK_COUNT; i++) {
+			assertEquals(Integer.valueOf(i), first.get(i));
+			assertEquals(Integer.valueOf(i), second.get(i));
+		}
+		assertEquals(0, dispatcher.getQueueDepth());
+		assertEquals(TASK_COUNT * 2, dispatcher.getDispatchCount());
+
+		dispatcher.shutdown();
+	}
+
+	@Test
+	public void drainOnShutdown() throws InterruptedException {
+		ZkEventDispatcher dispatcher = new ZkEventDispatcher(DispatchMode.THREAD_POOL, 1);
+
+		final List<Integer> ran = Collections.synchronizedList(new ArrayList<Integer>());
+		for (int i = 0; i < 10; i++) {
+			final int value = i;
+
+			dispatcher.dispatch("/drain", new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Thread.sleep(10);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					ran.add(value);
+				}
+			});
+		}
+
+		// tasks queued before shutdown have all run once it returns
+		dispatcher.shutdown();
+		assertTrue(dispatcher.awaitTermination(10000));
+		assertEquals(10, ran.size());
+		assertEquals(0, dispatcher.getQueueDepth());
+	}
+
+	@Test
+	public void slowPathDoesNotBlockOthers() throws InterruptedException {
+		ZkEventDispatcher dispatcher = new ZkEventDispatcher(DispatchMode.THREAD_POOL, 2);
+
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch fast = new CountDownLatch(1);
+
+		dispatcher.dispatch("/slow", new Runnable() {
+			@Override
+			public void run() {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		dispatcher.dispatch("/fast", new Runnable() {
+			@Override
+			public void run() {
+				fast.countDown();
+			}
+		});
+
+		assertTrue(fast.await(10, TimeUnit.SECONDS));
+
+		release.countDown();
+		dispatcher.shutdown();
+	}
+
+	@Test
+	public void exportQueueDepthAndLatency() throws InterruptedException {
+		ZkEventDispatcher dispatcher = new ZkEventDispatcher(DispatchMode.THREAD_POOL, 1);
+		ZkMetrics metrics = ZkMetrics.getInstance();
+		long depth = metrics.getDispatchQueueDepth();
+		long dispatched = metrics.getDispatchLatency().getCount();
+
+		final CountDownLatch blocker = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(6);
+		dispatcher.dispatch("/metrics", new Runnable() {
+			@Override
+			public void run() {
+				try {
+					blocker.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				done.countDown();
+			}
+		});
+		for (int i = 0; i < 5; i++) {
+			dispatcher.dispatch("/metrics", new Runnable() {
+				@Override
+				public void run() {
+					done.countDown();
+				}
+			});
+		}
+
+		// the first task runs and blocks the path, the others wait behind it
+		for (int i = 0; i < 100 && metrics.getDispatchQueueDepth() != depth + 5; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(depth + 5, metrics.getDispatchQueueDepth());
+
+		blocker.countDown();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(depth, metrics.getDispatchQueueDepth());
+		assertEquals(dispatched + 6, metrics.getDispatchLatency().getCount());
+
+		dispatcher.shutdown();
+	}
+}
@@ -0,0 +1,330 @@
+package com.sky.zookeeper;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.zookeeper.CreateMode;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.support.StaticApplicationContext;
+
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.CuratorFrameworkFactory;
+import com.netflix.curator.retry.RetryNTimes;
+import com.netflix.curator.test.TestingServer;
+import com.sky.zookeeper.annotation.ZkLeader;
+import com.sky.zookeeper.annotation.ZkManage;
+import com.sky.zookeeper.type.DispatchMode;
+import com.sky.zookeeper.type.ElectionMode;
+import com.sky.zookeeper.type.Modifier;
+import com.sky.zookeeper.watcher.ZkEventDispatcher;
+import com.sky.zookeeper.watcher.ZkLeaderElection;
+import com.sky.zookeeper.watcher.ZkMembership;
+
+/**
+ * Elect a leader among contexts with ElectionMode.EVENT_DRIVEN and MEMBERSHIP, leadership moves on when the leader goes
+ * away
+ */
+public class ZkLeaderElectionTest {
+	private static TestingServer server;
+
+	@ZkManage
+	public static class Member {
+		@ZkLeader("/election/role")
+		private volatile Boolean leader;
+	}
+
+	public static class ElectionContext extends ZkContext {
+		@Override
+		public String getZkConnection() {
+			return server.getConnectString();
+		}
+
+		@Override
+		public Integer getZkConnectionTimeout() {
+			return 1000;
+		}
+
+		@Override
+		public ElectionMode getElectionMode() {
+			return ElectionMode.EVENT_DRIVEN;
+		}
+	}
+
+	@ZkManage
+	public static class SelectorMember {
+		@ZkLeader("/selector/role")
+		private volatile Boolean leader;
+	}
+
+	public static class SelectorContext extends ElectionContext {
+		@Override
+		public ElectionMode getElectionMode() {
+			return ElectionMode.SELECTOR;
+		}
+	}
+
+	@ZkManage
+	public static class MultiRoleMember {
+		@ZkLeader("/roles/a")
+		private volatile Boolean a;
+		@ZkLeader("/roles/b")
+		private volatile Boolean b;
+		@ZkLeader("/roles/c")
+		private volatile Boolean c;
+		@ZkLeader("/roles/d")
+		private volatile Boolean d;
+
+		Boolean[] roles() {
+			return new Boolean[] { a, b, c, d };
+		}
+	}
+
+	public static class MembershipContext extends ElectionContext {
+		@Override
+		public ElectionMode getElectionMode() {
+			return ElectionMode.MEMBERSHIP;
+		}
+	}
+
+	@BeforeClass
+	public static void startServer() throws Exception {
+		server = new TestingServer();
+	}
+
+	@AfterClass
+	public static void stopServer() throws Exception {
+		server.close();
+	}
+
+	private StaticApplicationContext startMember() {
+		StaticApplicationContext ctx = new StaticApplicationContext();
+		ctx.registerSingleton("member", Member.class);
+		ctx.registerSingleton("zkContext", ElectionContext.class);
+		ctx.refresh();
+
+		return ctx;
+	}
+
+	private static Member member(StaticApplicationContext ctx) {
+		return (Member) ctx.getBean("member");
+	}
+
+	private static void awaitLeader(Member member, boolean leader) throws InterruptedException {
+		for (int i = 0; i < 100 && !Boolean.valueOf(leader).equals(member.leader); i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(leader, member.leader);
+	}
+
+	@Test
+	public void leadershipMovesOn() throws Exception {
+		StaticApplicationContext first = startMember();
+		awaitLeader(member(first), true);
+
+		StaticApplicationContext second = startMember();
+		StaticApplicationContext third = startMember();
+		assertEquals(Boolean.FALSE, member(second).leader);
+		assertEquals(Boolean.FALSE, member(third).leader);
+
+		// closing the leader's context is enough, only its successor takes over
+		first.close();
+		awaitLeader(member(second), true);
+		assertEquals(Boolean.FALSE, member(third).leader);
+
+		second.close();
+		awaitLeader(member(third), true);
+
+		third.close();
+	}
+
+	private StaticApplicationContext startSelectorMember() {
+		StaticApplicationContext ctx = new StaticApplicationContext();
+		ctx.registerSingleton("member", SelectorMember.class);
+		ctx.registerSingleton("zkContext", SelectorContext.class);
+		ctx.refresh();
+
+		return ctx;
+	}
+
+	private static void awaitSelectorLeader(StaticApplicationContext ctx, boolean leader) throws InterruptedException {
+		SelectorMember member = (SelectorMember) ctx.getBean("member");
+		for (int i = 0; i < 100 && !Boolean.valueOf(leader).equals(member.leader); i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(leader, member.leader);
+	}
+
+	@Test
+	public void selectorTakesOverAfterClose() throws Exception {
+		StaticApplicationContext first = startSelectorMember();
+		awaitSelectorLeader(first, true);
+		StaticApplicationContext second = startSelectorMember();
+		awaitSelectorLeader(second, false);
+
+		// destroying the context closes the selector and the client, the other context takes over
+		SelectorMember firstMember = (SelectorMember) first.getBean("member");
+		first.close();
+		awaitSelectorLeader(second, true);
+		assertEquals(Boolean.FALSE, firstMember.leader);
+
+		second.close();
+	}
+
+	private static CuratorFramework startClient() {
+		CuratorFramework client = CuratorFrameworkFactory.builder()
+				.connectString(server.getConnectString())
+				.connectionTimeoutMs(1000)
+				.retryPolicy(new RetryNTimes(3, 1000))
+				.build();
+		client.start();
+
+		return client;
+	}
+
+	@Test
+	public void retryFailedJoin() throws Exception {
+		CuratorFramework blocker = startClient();
+		CuratorFramework zkClient = startClient();
+		ZkEventDispatcher dispatcher = new ZkEventDispatcher(DispatchMode.THREAD_POOL, 1);
+		ZkLeaderElection election = new ZkLeaderElection(zkClient, "/blocked/election",
+				Collections.<Modifier> emptySet(), dispatcher);
+		try {
+			// ephemeral nodes have no children, joining fails until the blocker goes away
+			blocker.create().creatingParentsIfNeeded().withMode(CreateMode.EPHEMERAL).forPath("/blocked/election");
+			election.start();
+			Thread.sleep(500);
+			assertFalse(election.isLeader());
+
+			blocker.close();
+			for (int i = 0; i < 100 && !election.isLeader(); i++) {
+				Thread.sleep(50);
+			}
+			assertTrue(election.isLeader());
+			assertEquals(1, zkClient.getChildren().forPath("/blocked/election").size());
+		} finally {
+			election.close();
+			dispatcher.shutdown();
+			zkClient.close();
+		}
+	}
+
+	@Test
+	public void retryFailedMembershipJoin() throws Exception {
+		CuratorFramework blocker = startClient();
+		CuratorFramework zkClient = startClient();
+		ZkEventDispatcher dispatcher = new ZkEventDispatcher(DispatchMode.THREAD_POOL, 1);
+		ZkMembership membership = new ZkMembership(zkClient, "/blocked/members", dispatcher);
+		membership.addRole("/blocked/role", Collections.<Modifier> emptySet());
+		try {
+			// ephemeral nodes have no children, joining fails until the blocker goes away
+			blocker.create().creatingParentsIfNeeded().withMode(CreateMode.EPHEMERAL).forPath("/blocked/members");
+			membership.start();
+			Thread.sleep(500);
+			assertFalse(membership.isLeader("/blocked/role"));
+
+			blocker.close();
+			for (int i = 0; i < 100 && !membership.isLeader("/blocked/role"); i++) {
+				Thread.sleep(50);
+			}
+			assertTrue(membership.isLeader("/blocked/role"));
+			assertEquals(1, zkClient.getChildren().forPath("/blocked/members").size());
+		} finally {
+			membership.close();
+			dispatcher.shutdown();
+			zkClient.close();
+		}
+	}
+
+	private StaticApplicationContext startMultiRoleMember() {
+		StaticApplicationContext ctx = new StaticApplicationContext();
+		ctx.registerSingleton("member", MultiRoleMember.class);
+		ctx.registerSingleton("zkContext", MembershipContext.class);
+		ctx.refresh();
+
+		return ctx;
+	}
+
+	/**
+	 * Wait until every role has exactly one leader among the members
+	 */
+	private static void awaitOneLeaderPerRole(List<StaticApplicationContext> ctxs) throws InterruptedException {
+		boolean agreed = false;
+		for (int i = 0; i < 100 && !agreed; i++) {
+			Thread.sleep(50);
+
+			agreed = true;
+			for (int role = 0; role < 4; role++) {
+				int leaders = 0;
+				for (StaticApplicationContext ctx : ctxs) {
+					if (Boolean.TRUE.equals(((MultiRoleMember) ctx.getBean("member")).roles()[role])) {
+						leaders++;
+					}
+				}
+				agreed &= leaders == 1;
+			}
+		}
+		assertTrue(agreed);
+	}
+
+	@Test
+	public void rolesFromMembership() throws Exception {
+		List<StaticApplicationContext> ctxs = new ArrayList<StaticApplicationContext>();
+		for (int i = 0; i < 3; i++) {
+			ctxs.add(startMultiRoleMember());
+		}
+		awaitOneLeaderPerRole(ctxs);
+
+		// one node per context whatever the number of roles
+		ZkMembership membership = ((ZkContext) ctxs.get(0).getBean("zkContext")).getMembership();
+		assertEquals(3, ((ZkContext) ctxs.get(0).getBean("zkContext")).getZkClient().getChildren()
+				.forPath("/spring-zookeeper/members").size());
+		for (int i = 0; i < 100 && membership.getMembers().size() != 3; i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(3, membership.getMembers().size());
+
+		StaticApplicationContext leaving = ctxs.remove(0);
+		leaving.close();
+		awaitOneLeaderPerRole(ctxs);
+
+		for (StaticApplicationContext ctx : ctxs) {
+			ctx.close();
+		}
+	}
+
+	@Test
+	public void rendezvousSpreadsRoles() {
+		List<String> members = new ArrayList<String>();
+		for (int i = 0; i < 10; i++) {
+			members.add("_c_" + i + "-member-000000000" + i);
+		}
+
+		Map<String, String> leaders = new HashMap<String, String>();
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (int i = 0; i < 1000; i++) {
+			String leader = ZkMembership.leaderOf("/role/" + i, members);
+			leaders.put("/role/" + i, leader);
+			counts.put(leader, counts.containsKey(leader) ? counts.get(leader) + 1 : 1);
+		}
+		assertEquals(10, counts.size());
+		for (int count : counts.values()) {
+			assertTrue(count > 50 && count < 150);
+		}
+
+		// only the roles of the member leaving move
+		String gone = members.remove(3);
+		for (Map.Entry<String, String> entry : leaders.entrySet()) {
+			String leader = ZkMembership.leaderOf(entry.getKey(), members);
+			if (!entry.getValue().equals(gone)) {
+				assertEquals(entry.getValue(), leader);
+			}
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package com.sky.zookeeper;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.AccessibleObject;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sky.zookeeper.annotation.ZkLeader;
+import com.sky.zookeeper.annotation.ZkValue;
+import com.sky.zookeeper.index.ZkMemberIndex;
+
+/**
+ * Members recorded by ZkIndexProcessor while compiling the tests
+ */
+public class ZkMemberIndexTest {
+	public static class SubBean extends ZkSnapshotTest.ManagedBean {
+		@ZkValue("/snapshot/c")
+		private String c;
+	}
+
+	public static class PlainBean {
+		@ZkValue("/snapshot/a")
+		private String a;
+	}
+
+	/**
+	 * Index holding only the given lines, as left by a jar compiled with the processor next to classes compiled
+	 * without it
+	 */
+	private static ZkMemberIndex load(String... lines) throws IOException {
+		final File file = File.createTempFile("members", ".index");
+		file.deleteOnExit();
+		StringBuilder sb = new StringBuilder();
+		for (String line : lines) {
+			sb.append(line).append('\n');
+		}
+		Files.write(file.toPath(), sb.toString().getBytes(Charset.forName("UTF-8")));
+
+		return ZkMemberIndex.load(new ClassLoader(ZkMemberIndexTest.class.getClassLoader()) {
+			@Override
+			public Enumeration<URL> getResources(String name) throws IOException {
+				return Collections.enumeration(Collections.singletonList(file.toURI().toURL()));
+			}
+		});
+	}
+
+	@Test
+	public void scanUnindexedClasses() throws Exception {
+		String managed = ZkSnapshotTest.ManagedBean.class.getName();
+
+		// subclass compiled without the processor
+		ZkMemberIndex index = load(managed + "\ttype\t\t", managed + "\tfield\ta\tZkValue", managed
+				+ "\tmethod\tsetB(java.lang.String)\tZkValue");
+		assertTrue(index.isIndexed(SubBean.class));
+		List<AccessibleObject> members = index.getMembers(SubBean.class, ZkValue.class);
+		assertEquals(3, members.size());
+		assertEquals(SubBean.class.getDeclaredField("c"), members.get(0));
+		assertTrue(members.contains(ZkSnapshotTest.ManagedBean.class.getMethod("setB", String.class)));
+
+		// superclass from a jar without index
+		index = load(SubBean.class.getName() + "\tfield\tc\tZkValue");
+		members = index.getMembers(SubBean.class, ZkValue.class);
+		assertEquals(3, members.size());
+		assertTrue(members.contains(ZkSnapshotTest.ManagedBean.class.getDeclaredField("a")));
+		assertTrue(index.getMembers(SubBean.class, ZkLeader.class).isEmpty());
+	}
+
+	@Test
+	public void resolveMembers() throws Exception {
+		ZkMemberIndex index = ZkMemberIndex.load(getClass().getClassLoader());
+
+		assertTrue(index.isIndexed(ZkSnapshotTest.ManagedBean.class));
+		assertTrue(index.isIndexed(SubBean.class));
+		assertFalse(index.isIndexed(PlainBean.class));
+
+		List<AccessibleObject> members = index.getMembers(SubBean.class, ZkValue.class);
+		assertEquals(3, members.size());
+		assertEquals(SubBean.class.getDeclaredField("c"), members.get(0));
+		assertTrue(members.contains(ZkSnapshotTest.ManagedBean.class.getDeclaredField("a")));
+		assertTrue(members.contains(ZkSnapshotTest.ManagedBean.class.getMethod("setB", String.class)));
+
+		assertTrue(index.getMembers(SubBean.class, ZkLeader.class).isEmpty());
+		assertSame(members.get(1), index.getMembers(SubBean.class, ZkValue.class).get(1));
+	}
+}
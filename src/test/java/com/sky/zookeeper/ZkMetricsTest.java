@@ -0,0 +1,108 @@
+package com.sky.zookeeper;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.junit.Test;
+
+import com.netflix.curator.framework.state.ConnectionState;
+import com.sky.zookeeper.metrics.LatencyHistogram;
+import com.sky.zookeeper.metrics.ZkMetrics;
+import com.sky.zookeeper.type.AccessStrategy;
+import com.sky.zookeeper.type.CreateStrategy;
+import com.sky.zookeeper.type.FieldEditor;
+import com.sky.zookeeper.type.Modifier;
+import com.sky.zookeeper.type.PrimitiveDecoder;
+import com.sky.zookeeper.type.SubscribeType;
+
+/**
+ * Record latencies into power of two buckets and read metrics over JMX
+ */
+public class ZkMetricsTest {
+	public static class Target {
+		private int size;
+	}
+
+	@Test
+	public void histogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(0.99));
+
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		histogram.record(-5);
+
+		assertEquals(1001, histogram.getCount());
+		// 500 falls in [256, 512)
+		assertEquals(511, histogram.getPercentile(0.5));
+		// capped by the max rather than the bucket bound of 1023
+		assertEquals(1000, histogram.getPercentile(0.99));
+		assertEquals(0, histogram.getPercentile(0));
+
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(1001, snapshot.getCount());
+		assertEquals(500, snapshot.getMean());
+		assertEquals(1000, snapshot.getMax());
+	}
+
+	@Test
+	public void exportedOverJmx() throws Exception {
+		ZkMetrics metrics = ZkMetrics.getInstance();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(ZkMetrics.OBJECT_NAME);
+		assertTrue(server.isRegistered(name));
+
+		long applied = metrics.getApplyLatency().getCount();
+		long failures = metrics.getApplyFailures();
+
+		Target target = new Target();
+		Modifier modifier = new FieldEditor(target, Target.class.getDeclaredField("size"), null,
+				SubscribeType.DATA_CHANGE, CreateStrategy.CONSTRUCTOR, AccessStrategy.METHOD_HANDLE,
+				new PrimitiveDecoder());
+		Modifier.applyAll(Collections.singleton(modifier), "42".getBytes());
+		Modifier.applyAll(Collections.singleton(modifier), "forty-two".getBytes());
+		assertEquals(42, target.size);
+
+		metrics.watchFired("/metrics/a");
+		metrics.watchFired("/metrics/a");
+
+		CompositeData applyLatency = (CompositeData) server.getAttribute(name, "ApplyLatency");
+		assertEquals(applied + 2, applyLatency.get("count"));
+		assertTrue((Long) applyLatency.get("max") > 0);
+		assertEquals(failures + 1, server.getAttribute(name, "ApplyFailures"));
+		assertEquals(2L, metrics.getWatchFires().get("/metrics/a").longValue());
+		assertNotNull(server.getAttribute(name, "WatchFires"));
+
+		// paths beyond the cap share one counter, those already counted go on
+		for (int i = 0; i < ZkMetrics.MAX_WATCH_PATHS * 2; i++) {
+			metrics.watchFired("/metrics/cap/" + i);
+		}
+		metrics.watchFired("/metrics/a");
+		assertTrue(metrics.getWatchFires().size() <= ZkMetrics.MAX_WATCH_PATHS + 1);
+		assertTrue(metrics.getWatchFires().get(ZkMetrics.OTHER_PATHS) >= ZkMetrics.MAX_WATCH_PATHS);
+		assertEquals(3L, metrics.getWatchFires().get("/metrics/a").longValue());
+	}
+
+	@Test
+	public void statesBySource() {
+		ZkMetrics metrics = ZkMetrics.getInstance();
+		Long lost = metrics.getConnectionStates().get("LOST");
+		Long expired = metrics.getKeeperStates().get("Expired");
+
+		metrics.connectionStateChanged(ConnectionState.LOST);
+		metrics.keeperStateChanged(KeeperState.Expired);
+
+		assertEquals((lost == null ? 0 : lost) + 1, metrics.getConnectionStates().get("LOST").longValue());
+		assertEquals((expired == null ? 0 : expired) + 1, metrics.getKeeperStates().get("Expired").longValue());
+		assertFalse(metrics.getConnectionStates().containsKey("Expired"));
+		assertFalse(metrics.getKeeperStates().containsKey("LOST"));
+	}
+}
@@ -0,0 +1,161 @@
+package com.sky.zookeeper;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.support.StaticApplicationContext;
+
+import com.netflix.curator.test.TestingServer;
+import com.sky.zookeeper.annotation.ZkManage;
+import com.sky.zookeeper.annotation.ZkPartitioned;
+import com.sky.zookeeper.watcher.ZkMembership;
+
+/**
+ * Split partitions among live members, evenly and moving few partitions when a member leaves
+ */
+public class ZkPartitionedTest {
+	private static final int PARTITIONS = 16;
+
+	private static TestingServer server;
+
+	@ZkManage
+	public static class Worker {
+		@ZkPartitioned(value = "indexer", partitions = PARTITIONS)
+		private volatile int[] partitions;
+
+		private volatile Set<Integer> owned;
+
+		@ZkPartitioned(value = "indexer", partitions = PARTITIONS)
+		public void setOwned(Set<Integer> owned) {
+			this.owned = owned;
+		}
+	}
+
+	public static class PartitionedContext extends ZkContext {
+		@Override
+		public String getZkConnection() {
+			return server.getConnectString();
+		}
+
+		@Override
+		public Integer getZkConnectionTimeout() {
+			return 1000;
+		}
+
+		@Override
+		public String getMembershipPath() {
+			return "/partitioned/members";
+		}
+	}
+
+	@BeforeClass
+	public static void startServer() throws Exception {
+		server = new TestingServer();
+	}
+
+	@AfterClass
+	public static void stopServer() throws Exception {
+		server.close();
+	}
+
+	private StaticApplicationContext startWorker() {
+		StaticApplicationContext ctx = new StaticApplicationContext();
+		ctx.registerSingleton("worker", Worker.class);
+		ctx.registerSingleton("zkContext", PartitionedContext.class);
+		ctx.refresh();
+
+		return ctx;
+	}
+
+	/**
+	 * Wait until every partition is owned by exactly one worker, shares differing by one at most
+	 */
+	private static void awaitCovered(List<StaticApplicationContext> ctxs) throws InterruptedException {
+		boolean covered = false;
+		for (int i = 0; i < 100 && !covered; i++) {
+			Thread.sleep(50);
+
+			int[] owners = new int[PARTITIONS];
+			int total = 0;
+			int share = PARTITIONS / ctxs.size();
+			covered = true;
+			for (StaticApplicationContext ctx : ctxs) {
+				Worker worker = (Worker) ctx.getBean("worker");
+				int[] partitions = worker.partitions;
+				covered &= partitions.length == share || partitions.length == share + 1;
+				covered &= worker.owned != null && worker.owned.size() == partitions.length;
+				for (int partition : partitions) {
+					owners[partition]++;
+					total++;
+				}
+			}
+			covered &= total == PARTITIONS;
+			for (int count : owners) {
+				covered &= count == 1;
+			}
+		}
+		assertTrue(covered);
+	}
+
+	@Test
+	public void splitAmongMembers() throws Exception {
+		List<StaticApplicationContext> ctxs = new ArrayList<StaticApplicationContext>();
+		for (int i = 0; i < 3; i++) {
+			ctxs.add(startWorker());
+		}
+		awaitCovered(ctxs);
+
+		Worker worker = (Worker) ctxs.get(1).getBean("worker");
+		assertEquals(((ZkContext) ctxs.get(1).getBean("zkContext")).getMembership().getAssignment("indexer"),
+				Arrays.toString(worker.partitions).replaceAll("[\\[\\] ]", ""));
+
+		StaticApplicationContext leaving = ctxs.remove(0);
+		leaving.close();
+		awaitCovered(ctxs);
+
+		for (StaticApplicationContext ctx : ctxs) {
+			ctx.close();
+		}
+	}
+
+	@Test
+	public void boundedLoadsMoveFewPartitions() {
+		List<String> members = new ArrayList<String>();
+		for (int i = 0; i < 10; i++) {
+			members.add("_c_" + i + "-member-000000000" + i);
+		}
+
+		String[] owners = ZkMembership.assignPartitions("work", 1024, members);
+		int[] loads = new int[members.size()];
+		for (String owner : owners) {
+			loads[members.indexOf(owner)]++;
+		}
+		for (int load : loads) {
+			assertTrue(load == 102 || load == 103);
+		}
+
+		// the order of the member list does not matter
+		List<String> reversed = new ArrayList<String>(members);
+		Collections.reverse(reversed);
+		assertArrayEquals(owners, ZkMembership.assignPartitions("work", 1024, reversed));
+
+		// a member leaving moves its partitions and few others
+		String gone = members.remove(3);
+		String[] after = ZkMembership.assignPartitions("work", 1024, members);
+		int moved = 0;
+		for (int partition = 0; partition < owners.length; partition++) {
+			if (!owners[partition].equals(gone) && !owners[partition].equals(after[partition])) {
+				moved++;
+			}
+		}
+		assertTrue("moved " + moved, moved < 1024 / 20);
+	}
+}
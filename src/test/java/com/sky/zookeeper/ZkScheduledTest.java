@@ -0,0 +1,147 @@
+package com.sky.zookeeper;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.beans.FatalBeanException;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import com.netflix.curator.test.TestingServer;
+import com.sky.zookeeper.annotation.ZkManage;
+import com.sky.zookeeper.annotation.ZkScheduled;
+import com.sky.zookeeper.type.ElectionMode;
+import com.sky.zookeeper.type.LeaderGatedTask;
+
+/**
+ * Run ZkScheduled methods on the leader only, stopping them on leadership loss
+ */
+public class ZkScheduledTest {
+	private static TestingServer server;
+
+	@ZkManage
+	public static class Job {
+		private AtomicInteger runs = new AtomicInteger();
+
+		@ZkScheduled(value = "/scheduled/job", fixedRate = 20)
+		public void run() {
+			runs.incrementAndGet();
+		}
+	}
+
+	public static class SlowJob {
+		private CountDownLatch started = new CountDownLatch(1);
+		private CountDownLatch interrupted = new CountDownLatch(1);
+
+		@ZkScheduled(value = "/scheduled/slow", fixedDelay = 10)
+		public void run() {
+			started.countDown();
+			try {
+				Thread.sleep(10000);
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+			}
+		}
+
+		@ZkScheduled(value = "/scheduled/slow", fixedDelay = 10, fixedRate = 10)
+		public void ambiguous() {
+		}
+	}
+
+	public static class ScheduledContext extends ZkContext {
+		@Override
+		public String getZkConnection() {
+			return server.getConnectString();
+		}
+
+		@Override
+		public Integer getZkConnectionTimeout() {
+			return 1000;
+		}
+
+		@Override
+		public ElectionMode getElectionMode() {
+			return ElectionMode.EVENT_DRIVEN;
+		}
+	}
+
+	@BeforeClass
+	public static void startServer() throws Exception {
+		server = new TestingServer();
+	}
+
+	@AfterClass
+	public static void stopServer() throws Exception {
+		server.close();
+	}
+
+	private StaticApplicationContext startJob() {
+		StaticApplicationContext ctx = new StaticApplicationContext();
+		ctx.registerSingleton("job", Job.class);
+		ctx.registerSingleton("zkContext", ScheduledContext.class);
+		ctx.refresh();
+
+		return ctx;
+	}
+
+	private static AtomicInteger runs(StaticApplicationContext ctx) {
+		return ((Job) ctx.getBean("job")).runs;
+	}
+
+	@Test
+	public void runOnLeaderOnly() throws Exception {
+		StaticApplicationContext leader = startJob();
+		for (int i = 0; i < 100 && runs(leader).get() == 0; i++) {
+			Thread.sleep(50);
+		}
+		assertTrue(runs(leader).get() > 0);
+
+		StaticApplicationContext follower = startJob();
+		Thread.sleep(200);
+		assertEquals(0, runs(follower).get());
+
+		// the leader goes away, its schedule stops and the follower's starts
+		leader.close();
+		int stopped = runs(leader).get();
+		for (int i = 0; i < 100 && runs(follower).get() == 0; i++) {
+			Thread.sleep(50);
+		}
+		assertTrue(runs(follower).get() > 0);
+		assertEquals(stopped, runs(leader).get());
+
+		follower.close();
+	}
+
+	@Test
+	public void interruptOnLoss() throws Exception {
+		ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+		scheduler.afterPropertiesSet();
+		try {
+			SlowJob job = new SlowJob();
+			LeaderGatedTask task = new LeaderGatedTask(job, SlowJob.class.getMethod("run"), scheduler);
+			assertFalse(task.isScheduled());
+
+			task.eval("true");
+			assertTrue(job.started.await(5, TimeUnit.SECONDS));
+
+			task.eval("false");
+			assertFalse(task.isScheduled());
+			assertTrue(job.interrupted.await(5, TimeUnit.SECONDS));
+
+			try {
+				new LeaderGatedTask(job, SlowJob.class.getMethod("ambiguous"), scheduler);
+				fail();
+			} catch (FatalBeanException e) {
+				// expected
+			}
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+}
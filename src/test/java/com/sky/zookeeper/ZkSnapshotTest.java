@@ -0,0 +1,272 @@
+package com.sky.zookeeper;
+
+import static org.junit.Assert.*;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.apache.zookeeper.data.Stat;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.support.StaticApplicationContext;
+
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.CuratorFrameworkFactory;
+import com.netflix.curator.retry.RetryNTimes;
+import com.netflix.curator.test.TestingServer;
+import com.sky.zookeeper.annotation.ZkManage;
+import com.sky.zookeeper.annotation.ZkValue;
+import com.sky.zookeeper.util.ZkSnapshot;
+import com.sky.zookeeper.util.ZkSnapshot.Entry;
+
+/**
+ * Save and load snapshots, and start ZkContext from a snapshot with and without a reachable ensemble
+ */
+public class ZkSnapshotTest {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ZkSnapshotTest.class);
+
+	private static final int BEAN_COUNT = 100;
+
+	private static TestingServer server;
+	private static CuratorFramework zkClient;
+	private static File snapshotFile;
+	private static String connection;
+
+	@ZkManage
+	public static class ManagedBean {
+		@ZkValue("/snapshot/a")
+		private String a;
+
+		private volatile String b;
+
+		@ZkValue("/snapshot/b")
+		public void setB(String b) {
+			this.b = b;
+		}
+	}
+
+	public static class SnapshotContext extends ZkContext {
+		@Override
+		public String getZkConnection() {
+			return connection;
+		}
+
+		@Override
+		public Integer getZkConnectionTimeout() {
+			return 1000;
+		}
+
+		@Override
+		public String getSnapshotFile() {
+			return snapshotFile.getPath();
+		}
+	}
+
+	@BeforeClass
+	public static void startServer() throws Exception {
+		server = new TestingServer();
+
+		zkClient = CuratorFrameworkFactory.builder()
+				.connectString(server.getConnectString())
+				.connectionTimeoutMs(1000)
+				.retryPolicy(new RetryNTimes(3, 1000))
+				.build();
+		zkClient.start();
+
+		zkClient.create().creatingParentsIfNeeded().forPath("/snapshot/a", "a0".getBytes());
+		zkClient.create().creatingParentsIfNeeded().forPath("/snapshot/b", "b0".getBytes());
+
+		snapshotFile = File.createTempFile("zk_test", ".snapshot");
+		snapshotFile.delete();
+	}
+
+	@AfterClass
+	public static void stopServer() throws Exception {
+		zkClient.close();
+		server.close();
+		snapshotFile.delete();
+	}
+
+	@Test
+	public void saveAndLoad() throws Exception {
+		File file = File.createTempFile("zk_test", ".snapshot");
+		try {
+			Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+			entries.put("/a", new Entry("value".getBytes(), 10, 1));
+			entries.put("/a/中", new Entry(new byte[0], 11, 0));
+			entries.put("/b", new Entry(null, -1, -1));
+
+			ZkSnapshot snapshot = new ZkSnapshot(file);
+			assertTrue(snapshot.replace(entries));
+			assertFalse(snapshot.replace(entries));
+			snapshot.save();
+
+			ZkSnapshot loaded = new ZkSnapshot(file);
+			assertTrue(loaded.load());
+			assertEquals(3, loaded.getEntries().size());
+			assertArrayEquals("value".getBytes(), loaded.get("/a").getData());
+			assertEquals(10, loaded.get("/a").getMzxid());
+			assertEquals(1, loaded.get("/a").getVersion());
+			assertEquals(0, loaded.get("/a/中").getData().length);
+			assertNull(loaded.get("/b").getData());
+			assertFalse(loaded.replace(entries));
+
+			// a torn file is ignored
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			raf.setLength(raf.length() - 3);
+			raf.close();
+			assertFalse(loaded.load());
+			assertTrue(loaded.isEmpty());
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static void writeHeader(File file, int count, int pathLength, int dataLength) throws Exception {
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			out.writeInt(0x5A4B534E);
+			out.writeInt(1);
+			out.writeInt(count);
+			out.writeShort(pathLength);
+			out.write(new byte[Math.min(pathLength, 2)]);
+			out.writeLong(1);
+			out.writeInt(1);
+			out.writeInt(dataLength);
+		} finally {
+			out.close();
+		}
+	}
+
+	@Test
+	public void ignoreCorruptLengths() throws Exception {
+		File file = File.createTempFile("zk_test", ".snapshot");
+		try {
+			ZkSnapshot snapshot = new ZkSnapshot(file);
+
+			// lengths beyond the file are never allocated
+			writeHeader(file, Integer.MAX_VALUE, 2, 0);
+			assertFalse(snapshot.load());
+			writeHeader(file, 1, 2, Integer.MAX_VALUE);
+			assertFalse(snapshot.load());
+			writeHeader(file, 1, 0xFFFF, 0);
+			assertFalse(snapshot.load());
+			writeHeader(file, 1, 2, -2);
+			assertFalse(snapshot.load());
+			assertTrue(snapshot.isEmpty());
+
+			writeHeader(file, 1, 2, 0);
+			assertTrue(snapshot.load());
+			assertEquals(0, snapshot.get("\0\0").getData().length);
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void batchAutoSaves() throws Exception {
+		File file = File.createTempFile("zk_test", ".snapshot");
+		file.delete();
+		try {
+			ZkSnapshot snapshot = new ZkSnapshot(file);
+			snapshot.setAutoSave(true);
+			snapshot.setSaveDelay(200);
+
+			Stat stat = new Stat();
+			for (int i = 0; i < 10; i++) {
+				stat.setMzxid(i);
+				snapshot.update("/a", ("a" + i).getBytes(), stat);
+			}
+			// written in background once changes stop
+			assertFalse(file.exists());
+			for (int i = 0; i < 100 && !file.exists(); i++) {
+				Thread.sleep(20);
+			}
+			ZkSnapshot loaded = new ZkSnapshot(file);
+			assertTrue(loaded.load());
+			assertArrayEquals("a9".getBytes(), loaded.get("/a").getData());
+
+			// a pending save is written on close
+			snapshot.setSaveDelay(60000);
+			stat.setMzxid(10);
+			snapshot.update("/a", "a10".getBytes(), stat);
+			snapshot.close();
+			assertTrue(loaded.load());
+			assertArrayEquals("a10".getBytes(), loaded.get("/a").getData());
+		} finally {
+			file.delete();
+		}
+	}
+
+	private StaticApplicationContext startContext() {
+		StaticApplicationContext ctx = new StaticApplicationContext();
+		for (int i = 0; i < BEAN_COUNT; i++) {
+			ctx.registerSingleton("managedBean" + i, ManagedBean.class);
+		}
+		ctx.registerSingleton("zkContext", SnapshotContext.class);
+		ctx.refresh();
+
+		return ctx;
+	}
+
+	private long measureStartup() {
+		long start = System.nanoTime();
+		StaticApplicationContext ctx = startContext();
+		long elapsed = System.nanoTime() - start;
+
+		ctx.close();
+		return elapsed;
+	}
+
+	@Test
+	public void startFromSnapshot() throws Exception {
+		connection = server.getConnectString();
+		snapshotFile.delete();
+
+		long withoutSnapshot = measureStartup();
+		assertTrue(snapshotFile.isFile());
+		long withSnapshot = measureStartup();
+
+		// no ensemble at all, beans still get the last known data
+		connection = "127.0.0.1:1";
+		long start = System.nanoTime();
+		StaticApplicationContext ctx = startContext();
+		long unreachable = System.nanoTime() - start;
+
+		ManagedBean bean = (ManagedBean) ctx.getBean("managedBean0");
+		assertEquals("a0", bean.a);
+		assertEquals("b0", bean.b);
+		ctx.close();
+
+		LOGGER.info("startup of " + BEAN_COUNT * 2 + " members: without snapshot " + withoutSnapshot / 1000000
+				+ "ms, with snapshot " + withSnapshot / 1000000 + "ms, with snapshot and no ensemble " + unreachable
+				/ 1000000 + "ms");
+
+		// data changed while down is applied in background
+		zkClient.setData().forPath("/snapshot/b", "b1".getBytes());
+		connection = server.getConnectString();
+		ctx = startContext();
+		bean = (ManagedBean) ctx.getBean("managedBean" + (BEAN_COUNT - 1));
+		for (int i = 0; i < 100 && !"b1".equals(bean.b); i++) {
+			Thread.sleep(50);
+		}
+		assertEquals("b1", bean.b);
+
+		assertArrayEquals("b1".getBytes(), ((ZkContext) ctx.getBean("zkContext")).getSnapshot().get("/snapshot/b")
+				.getData());
+		// saved at the latest when the context closes
+		ctx.close();
+		ZkSnapshot saved = new ZkSnapshot(snapshotFile);
+		assertTrue(saved.load());
+		assertArrayEquals("b1".getBytes(), saved.get("/snapshot/b").getData());
+
+		zkClient.setData().forPath("/snapshot/b", "b0".getBytes());
+	}
+}
@@ -0,0 +1,124 @@
+package com.sky.zookeeper;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.CuratorFrameworkFactory;
+import com.netflix.curator.framework.state.ConnectionState;
+import com.netflix.curator.framework.state.ConnectionStateListener;
+import com.netflix.curator.retry.RetryNTimes;
+import com.netflix.curator.test.KillSession;
+import com.netflix.curator.test.TestingServer;
+import com.sky.zookeeper.util.ZkTreeCache;
+
+public class ZkTreeCacheTest {
+	private TestingServer server;
+	private CuratorFramework zkClient;
+	private ZkTreeCache treeCache;
+
+	@Before
+	public void before() throws Exception {
+		server = new TestingServer();
+		zkClient = CuratorFrameworkFactory.builder()
+				.connectString(server.getConnectString())
+				.connectionTimeoutMs(1000)
+				.retryPolicy(new RetryNTimes(3, 1000))
+				.build();
+		zkClient.start();
+
+		zkClient.create().forPath("/tree", "root".getBytes());
+		zkClient.create().forPath("/tree/a", "a".getBytes());
+		zkClient.create().forPath("/tree/a/aa", "aa".getBytes());
+		zkClient.create().forPath("/tree/b", "b".getBytes());
+
+		treeCache = new ZkTreeCache(zkClient, "/tree");
+		assertTrue(treeCache.start(10000));
+	}
+
+	@After
+	public void after() throws Exception {
+		treeCache.close();
+		zkClient.close();
+		server.close();
+	}
+
+	private void waitFor(String zkPath, String value) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (System.currentTimeMillis() < deadline) {
+			byte[] data = treeCache.getData(zkPath);
+			if (value == null ? data == null : data != null && value.equals(new String(data))) {
+				return;
+			}
+
+			Thread.sleep(10);
+		}
+
+		fail("node " + zkPath + " is not " + value);
+	}
+
+	@Test
+	public void mirrorSubtree() throws Exception {
+		assertEquals("root", new String(treeCache.getData("/tree")));
+		assertEquals("aa", new String(treeCache.getData("/tree/a/aa")));
+		assertEquals(new ArrayList<String>(zkClient.getChildren().forPath("/tree")), treeCache.getChildren("/tree"));
+		assertEquals(4, treeCache.getSubtree("/tree").size());
+
+		assertTrue(treeCache.covers("/tree/a/aa"));
+		assertFalse(treeCache.covers("/treeX"));
+	}
+
+	@Test
+	public void followChanges() throws Exception {
+		zkClient.setData().forPath("/tree/a/aa", "aa2".getBytes());
+		waitFor("/tree/a/aa", "aa2");
+
+		zkClient.create().forPath("/tree/b/bb", "bb".getBytes());
+		waitFor("/tree/b/bb", "bb");
+		assertEquals(Arrays.asList("bb"), treeCache.getChildren("/tree/b"));
+
+		zkClient.delete().forPath("/tree/a/aa");
+		waitFor("/tree/a/aa", null);
+	}
+
+	@Test
+	public void followChangesAcrossSessionLoss() throws Exception {
+		final CuratorFramework writer = CuratorFrameworkFactory.builder()
+				.connectString(server.getConnectString())
+				.connectionTimeoutMs(1000)
+				.retryPolicy(new RetryNTimes(3, 1000))
+				.build();
+		writer.start();
+
+		try {
+			// listeners are called one by one, so this write lands after the cache saw LOST and before it reconnects
+			zkClient.getConnectionStateListenable().addListener(new ConnectionStateListener() {
+				@Override
+				public void stateChanged(CuratorFramework client, ConnectionState newState) {
+					if (newState == ConnectionState.LOST) {
+						try {
+							writer.setData().forPath("/tree/a/aa", "aa-down".getBytes());
+						} catch (Exception e) {
+							throw new IllegalStateException(e);
+						}
+					}
+				}
+			});
+
+			KillSession.kill(zkClient.getZookeeperClient().getZooKeeper(), server.getConnectString());
+			waitFor("/tree/a/aa", "aa-down");
+
+			// the watch of the grandchild is set again on the new session
+			writer.setData().forPath("/tree/a/aa", "aa-up".getBytes());
+			waitFor("/tree/a/aa", "aa-up");
+		} finally {
+			writer.close();
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package com.sky.zookeeper;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+import com.sky.zookeeper.util.ZookeeperConfigurer;
+
+public class ZookeeperConfigurerTest {
+    private MutableResource resource;
+    private GenericApplicationContext ctx;
+
+    public static class MutableResource extends AbstractResource {
+        private volatile String content;
+
+        public MutableResource(String content) {
+            this.content = content;
+        }
+
+        public void setContent(String content) {
+            this.content = content;
+        }
+
+        @Override
+        public String getDescription() {
+            return "mutable resource";
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new ByteArrayInputStream(content.getBytes("ISO-8859-1"));
+        }
+    }
+
+    public static class Target {
+        private String url;
+        private int size;
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public void setSize(int size) {
+            this.size = size;
+        }
+    }
+
+    @Before
+    public void before() {
+        resource = new MutableResource("host=db1\nsize=1\nother=x\n");
+
+        ctx = new GenericApplicationContext();
+        ctx.registerBeanDefinition("zkPropConfigurer", BeanDefinitionBuilder
+                .genericBeanDefinition(ZookeeperConfigurer.class)
+                .addPropertyValue("locations", new Resource[] { resource })
+                .getBeanDefinition());
+        ctx.registerBeanDefinition("dataSource", BeanDefinitionBuilder.genericBeanDefinition(Target.class)
+                .addPropertyValue("url", "jdbc:mysql://${host}:3306/testdb")
+                .addPropertyValue("size", "${size}")
+                .getBeanDefinition());
+        ctx.registerBeanDefinition("other", BeanDefinitionBuilder.genericBeanDefinition(Target.class)
+                .addPropertyValue("url", "${other}")
+                .getBeanDefinition());
+        ctx.refresh();
+    }
+
+    @Test
+    public void reinjectChangedProperties() throws IOException {
+        ZookeeperConfigurer configurer = ctx.getBean(ZookeeperConfigurer.class);
+        Target dataSource = (Target) ctx.getBean("dataSource");
+        Target other = (Target) ctx.getBean("other");
+        assertEquals("jdbc:mysql://db1:3306/testdb", dataSource.getUrl());
+
+        resource.setContent("host=db2\nsize=5\nother=x\n");
+
+        assertEquals(Collections.singleton("dataSource"), configurer.reinject());
+        assertSame(dataSource, ctx.getBean("dataSource"));
+        assertEquals("jdbc:mysql://db2:3306/testdb", dataSource.getUrl());
+        assertEquals(5, dataSource.getSize());
+        assertEquals("x", other.getUrl());
+        assertEquals("db2", configurer.getProperty("host"));
+
+        assertTrue(configurer.reinject().isEmpty());
+    }
+
+    @Test
+    public void typedLookup() throws IOException {
+        ZookeeperConfigurer configurer = ctx.getBean(ZookeeperConfigurer.class);
+        long generation = configurer.getGeneration();
+
+        assertEquals(1, configurer.getInt("size", 0));
+        assertEquals(1L, configurer.getLong("size", 0L));
+        assertEquals(1.0, configurer.getDouble("size", 0.0), 0.0);
+        assertFalse(configurer.getBoolean("size", true));
+        assertEquals(7, configurer.getInt("missing", 7));
+        assertTrue(configurer.getBoolean("missing", true));
+        try {
+            configurer.getInt("host", 0);
+            fail();
+        } catch (NumberFormatException e) {
+        }
+
+        resource.setContent("host=db1\nsize= 5 \nother=x\nenabled=TRUE\n");
+        configurer.reinject();
+
+        assertEquals(generation + 1, configurer.getGeneration());
+        assertEquals(5, configurer.getInt("size", 0));
+        assertTrue(configurer.getBoolean("enabled", false));
+    }
+}
@@ -0,0 +1,507 @@
+package com.sky.zookeeper;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.zookeeper.AsyncCallback.StatCallback;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.support.AbstractRefreshableApplicationContext;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.util.DefaultPropertiesPersister;
+import org.springframework.util.PropertiesPersister;
+
+import com.netflix.curator.test.TestingServer;
+import com.sky.zookeeper.metrics.ZkMetrics;
+import com.sky.zookeeper.util.ZkHealthProbe;
+import com.sky.zookeeper.util.ZookeeperConfigurer;
+import com.sky.zookeeper.util.ZookeeperResource;
+import com.sky.zookeeper.util.ZookeeperResource.OnConnectionFailed;
+import com.sky.zookeeper.util.ZookeeperResource.PingCmd;
+import com.sky.zookeeper.util.ZookeeperResource.ReloadContext;
+
+/**
+ * Load a config tree from an in-process ZooKeeper server and compare with a plain recursive walk
+ */
+public class ZookeeperResourceLoadTest {
+    private static final int WIDTH = 5;
+    private static final int DEPTH = 3;
+
+    private static TestingServer server;
+    private static ZooKeeper zk;
+
+    @BeforeClass
+    public static void before() throws Exception {
+        server = new TestingServer();
+        zk = new ZooKeeper(server.getConnectString(), 3000, null);
+
+        zk.create("/load_test", "root=0".getBytes(), Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        createChildren("/load_test", 1);
+    }
+
+    private static void createChildren(String znode, int depth) throws KeeperException, InterruptedException {
+        if (depth > DEPTH) {
+            return;
+        }
+
+        for (int i = 0; i < WIDTH; i++) {
+            String child = znode + "/n" + i;
+            zk.create(child, (child.replace('/', '.') + "=" + i).getBytes(), Ids.OPEN_ACL_UNSAFE,
+                    CreateMode.PERSISTENT);
+            createChildren(child, depth + 1);
+        }
+    }
+
+    public static class Target {
+        private String value;
+
+        public String getValue() {
+            return value;
+        }
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * Context with a configurer reading the znodes of a ZookeeperResource, refreshed as a whole on change (AUTO)
+     */
+    public static class ReloadingContext extends AbstractRefreshableApplicationContext {
+        private String znodes;
+        private PropertiesPersister persister;
+
+        public ReloadingContext(String znodes) {
+            this.znodes = znodes;
+            refresh();
+        }
+
+        @Override
+        protected void loadBeanDefinitions(DefaultListableBeanFactory beanFactory) throws BeansException {
+            beanFactory.registerBeanDefinition("zkResource", BeanDefinitionBuilder
+                    .genericBeanDefinition(ZookeeperResource.class)
+                    .addConstructorArgValue(server.getConnectString())
+                    .addConstructorArgValue(znodes)
+                    .addConstructorArgValue(PingCmd.get)
+                    .addConstructorArgValue(true)
+                    .addConstructorArgValue(OnConnectionFailed.THROW_EXCEPTION)
+                    .addConstructorArgValue(ReloadContext.AUTO)
+                    .getBeanDefinition());
+            BeanDefinitionBuilder configurer = BeanDefinitionBuilder
+                    .genericBeanDefinition(ZookeeperConfigurer.class)
+                    .addPropertyReference("location", "zkResource");
+            if (persister != null) {
+                configurer.addPropertyValue("propertiesPersister", persister);
+            }
+            beanFactory.registerBeanDefinition("zkPropConfigurer", configurer.getBeanDefinition());
+            beanFactory.registerBeanDefinition("target", BeanDefinitionBuilder.genericBeanDefinition(Target.class)
+                    .addPropertyValue("value", "${reload.value}")
+                    .getBeanDefinition());
+        }
+
+        /**
+         * Persister of the configurer from the next refresh on
+         */
+        public void setPersister(PropertiesPersister persister) {
+            this.persister = persister;
+        }
+
+        /**
+         * @return null while the context is being refreshed
+         */
+        public String getTargetValue() {
+            try {
+                return ((Target) getBean("target")).getValue();
+            } catch (IllegalStateException e) {
+                return null;
+            }
+        }
+
+        /**
+         * @return -1 while the context is being refreshed
+         */
+        public long getParsedZnodes() {
+            try {
+                return ((ZookeeperResource) getBean("zkResource")).getParsedZnodes();
+            } catch (IllegalStateException e) {
+                return -1;
+            }
+        }
+    }
+
+    @AfterClass
+    public static void after() throws Exception {
+        zk.close();
+        server.close();
+    }
+
+    private void walk(String znode, boolean regression, ByteArrayOutputStream out) throws Exception {
+        out.write(zk.getData(znode, false, null));
+        out.write("\n".getBytes());
+        if (regression) {
+            for (String child : zk.getChildren(znode, false)) {
+                walk(znode + "/" + child, regression, out);
+            }
+        }
+    }
+
+    private byte[] read(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int len;
+        while ((len = is.read(buffer)) != -1) {
+            out.write(buffer, 0, len);
+        }
+        return out.toByteArray();
+    }
+
+    private void assertLoad(boolean regression, boolean cache, int maxInFlight) throws Exception {
+        ZookeeperResource resource = new ZookeeperResource(server.getConnectString(), "/load_test", PingCmd.get,
+                regression, OnConnectionFailed.THROW_EXCEPTION, ReloadContext.HOLD);
+        resource.setCache(cache);
+        resource.setMaxInFlight(maxInFlight);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        walk("/load_test", regression, expected);
+
+        try {
+            assertEquals(new String(expected.toByteArray()), new String(read(resource.getInputStream())));
+        } finally {
+            resource.destroy();
+        }
+    }
+
+    @Test
+    public void loadRegression() throws Exception {
+        assertLoad(true, false, 100);
+        assertLoad(true, false, 1);
+    }
+
+    @Test
+    public void loadRoot() throws Exception {
+        assertLoad(false, false, 100);
+    }
+
+    @Test
+    public void loadFromCache() throws Exception {
+        assertLoad(true, true, 100);
+    }
+
+    @Test
+    public void mergeOncePerChange() throws Exception {
+        ZookeeperResource resource = new ZookeeperResource(server.getConnectString(), "/load_test", PingCmd.get,
+                true, OnConnectionFailed.THROW_EXCEPTION, ReloadContext.HOLD);
+        byte[] original = zk.getData("/load_test/n0", false, null);
+        try {
+            String first = new String(read(resource.getInputStream()));
+            assertEquals(first, new String(read(resource.getInputStream())));
+
+            zk.setData("/load_test/n0", ".load_test.n0=changed".getBytes(), -1);
+            String changed = first;
+            for (int i = 0; i < 100 && changed.equals(first); i++) {
+                Thread.sleep(20);
+                changed = new String(read(resource.getInputStream()));
+            }
+            assertEquals(first.replace(new String(original), ".load_test.n0=changed"), changed);
+        } finally {
+            zk.setData("/load_test/n0", original, -1);
+            resource.destroy();
+        }
+    }
+
+    private Properties parse(InputStream is) throws IOException {
+        Properties properties = new Properties();
+        properties.load(is);
+        return properties;
+    }
+
+    @Test
+    public void mergePropertiesIncrementally() throws Exception {
+        zk.create("/override_a", "k=1\nx=a".getBytes(), Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        zk.create("/override_b", "k=2".getBytes(), Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+
+        ZookeeperResource resource = new ZookeeperResource(server.getConnectString(), "/override_a,/override_b",
+                PingCmd.get, false, OnConnectionFailed.THROW_EXCEPTION, ReloadContext.HOLD);
+        try {
+            Properties properties = resource.getProperties();
+            assertEquals("2", properties.get("k"));
+            assertEquals(parse(resource.getInputStream()), properties);
+            assertSame(properties, resource.getProperties());
+
+            // the later znode no longer has k, so the value of the earlier one shows through
+            zk.setData("/override_b", "y=3".getBytes(), -1);
+            for (int i = 0; i < 100 && properties == resource.getProperties(); i++) {
+                Thread.sleep(20);
+            }
+            properties = resource.getProperties();
+            assertEquals("1", properties.get("k"));
+            assertEquals("3", properties.get("y"));
+            assertEquals(parse(resource.getInputStream()), properties);
+        } finally {
+            resource.destroy();
+            zk.delete("/override_a", -1);
+            zk.delete("/override_b", -1);
+        }
+    }
+
+    @Test
+    public void parseWithEncodingOfConfigurer() throws Exception {
+        zk.create("/encoding_test", "reload.value=h\u00e9llo \u4e2d".getBytes("UTF-8"), Ids.OPEN_ACL_UNSAFE,
+                CreateMode.PERSISTENT);
+
+        ZookeeperResource resource = new ZookeeperResource(server.getConnectString(), "/encoding_test",
+                PingCmd.get, false, OnConnectionFailed.THROW_EXCEPTION, ReloadContext.HOLD);
+        ZookeeperConfigurer configurer = new ZookeeperConfigurer();
+        configurer.setFileEncoding("UTF-8");
+        configurer.setLocation(resource);
+
+        StaticApplicationContext ctx = new StaticApplicationContext();
+        ctx.registerSingleton("target", Target.class);
+        ctx.getBeanFactory().getBeanDefinition("target").getPropertyValues()
+                .addPropertyValue("value", "${reload.value}");
+        ctx.addBeanFactoryPostProcessor(configurer);
+        try {
+            ctx.refresh();
+            assertEquals("h\u00e9llo \u4e2d", ((Target) ctx.getBean("target")).getValue());
+        } finally {
+            ctx.close();
+            resource.destroy();
+            zk.delete("/encoding_test", -1);
+        }
+    }
+
+    @Test
+    public void keepParsedZnodesAcrossRefresh() throws Exception {
+        zk.create("/parse_cache_test", "reload.other=x".getBytes(), Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        zk.create("/parse_cache_test/a", "reload.value=1".getBytes(), Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        zk.create("/parse_cache_test/b", "reload.more=y".getBytes(), Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+
+        ReloadingContext ctx = new ReloadingContext("/parse_cache_test");
+        try {
+            assertEquals(3, ctx.getParsedZnodes());
+
+            // the resource of the refreshed context parses only the changed znode
+            zk.setData("/parse_cache_test/a", "reload.value=2".getBytes(), -1);
+            for (int i = 0; i < 200 && !"2".equals(ctx.getTargetValue()); i++) {
+                Thread.sleep(50);
+            }
+            assertEquals("2", ctx.getTargetValue());
+            assertEquals(1, ctx.getParsedZnodes());
+
+            ctx.refresh();
+            assertEquals(0, ctx.getParsedZnodes());
+            assertEquals("2", ctx.getTargetValue());
+
+            // another persister of the same class may parse differently
+            ctx.setPersister(new DefaultPropertiesPersister());
+            ctx.refresh();
+            assertEquals(3, ctx.getParsedZnodes());
+            ctx.refresh();
+            assertEquals(0, ctx.getParsedZnodes());
+
+            // closing drops the parse states of the context
+            ctx.close();
+            ctx.refresh();
+            assertEquals(3, ctx.getParsedZnodes());
+        } finally {
+            ctx.close();
+            zk.delete("/parse_cache_test/a", -1);
+            zk.delete("/parse_cache_test/b", -1);
+            zk.delete("/parse_cache_test", -1);
+        }
+    }
+
+    @Test
+    public void probeInProcess() throws Exception {
+        for (PingCmd pingCmd : PingCmd.values()) {
+            ZookeeperResource resource = new ZookeeperResource(server.getConnectString(), "/load_test", pingCmd,
+                    false, OnConnectionFailed.THROW_EXCEPTION, ReloadContext.HOLD);
+            resource.setProbeInterval(20);
+            try {
+                read(resource.getInputStream());
+
+                ZkHealthProbe probe = resource.getProbe();
+                for (int i = 0; i < 100 && probe.getProbeCount() < 3; i++) {
+                    Thread.sleep(20);
+                }
+                assertTrue(probe.getProbeCount() >= 3);
+                assertTrue(probe.isHealthy());
+                assertTrue(probe.getLastRoundTripTime() >= 0);
+                assertTrue(probe.getMaxRoundTripTime() >= probe.getMeanRoundTripTime());
+            } finally {
+                resource.destroy();
+            }
+        }
+    }
+
+    /**
+     * Hold back answers to exists until the test delivers them
+     */
+    private static class HeldZooKeeper extends ZooKeeper {
+        private final List<Object> held = new CopyOnWriteArrayList<Object>();
+        private volatile StatCallback callback;
+
+        HeldZooKeeper(String connectString) throws IOException {
+            super(connectString, 3000, null);
+        }
+
+        @Override
+        public void exists(String path, boolean watch, StatCallback cb, Object ctx) {
+            callback = cb;
+            held.add(ctx);
+        }
+
+        void answer(int i) {
+            callback.processResult(KeeperException.Code.OK.intValue(), "/load_test", held.get(i), null);
+        }
+    }
+
+    @Test
+    public void ignoreLateProbeAnswer() throws Exception {
+        HeldZooKeeper held = new HeldZooKeeper(server.getConnectString());
+        ZkHealthProbe probe = new ZkHealthProbe(held, "/load_test", PingCmd.get, 20);
+        long answered = ZkMetrics.getInstance().getProbeRoundTrip().getCount();
+        probe.start();
+        try {
+            for (int i = 0; i < 100 && held.held.size() < 2; i++) {
+                Thread.sleep(20);
+            }
+            probe.stop();
+            // let a probe running at stop finish
+            Thread.sleep(40);
+            assertTrue(held.held.size() >= 2);
+            assertFalse(probe.isHealthy());
+            long probes = probe.getProbeCount();
+
+            // the first probe was failed when the second was sent
+            held.answer(0);
+            assertFalse(probe.isHealthy());
+            assertEquals(probes, probe.getProbeCount());
+            assertEquals(0, probe.getMeanRoundTripTime());
+            assertEquals(answered, ZkMetrics.getInstance().getProbeRoundTrip().getCount());
+
+            held.answer(held.held.size() - 1);
+            assertTrue(probe.isHealthy());
+            assertEquals(probes + 1, probe.getProbeCount());
+            assertEquals(answered + 1, ZkMetrics.getInstance().getProbeRoundTrip().getCount());
+        } finally {
+            probe.stop();
+            held.close();
+        }
+    }
+
+    @Test
+    public void loadFromSnapshot() throws Exception {
+        File snapshotFile = File.createTempFile("zk_test", ".snapshot");
+        File copiedFile = File.createTempFile("zk_test", ".snapshot");
+        snapshotFile.delete();
+
+        try {
+            ZookeeperResource resource = new ZookeeperResource(server.getConnectString(), "/load_test", PingCmd.get,
+                    true, OnConnectionFailed.THROW_EXCEPTION, ReloadContext.HOLD);
+            resource.setSnapshotFile(snapshotFile.getPath());
+            String expected;
+            try {
+                expected = new String(read(resource.getInputStream()));
+            } finally {
+                resource.destroy();
+            }
+            assertTrue(snapshotFile.isFile());
+
+            // a snapshot serves one start per process, so start from a copy with no ensemble to connect to
+            Files.copy(snapshotFile.toPath(), copiedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            resource = new ZookeeperResource("127.0.0.1:1", "/load_test", PingCmd.get, true,
+                    OnConnectionFailed.THROW_EXCEPTION, ReloadContext.HOLD);
+            resource.setSnapshotFile(copiedFile.getPath());
+            try {
+                assertEquals(expected, new String(read(resource.getInputStream())));
+            } finally {
+                resource.destroy();
+            }
+        } finally {
+            snapshotFile.delete();
+            copiedFile.delete();
+        }
+    }
+
+    @Test
+    public void loadTimesOutOnEventThread() throws Exception {
+        final ZookeeperResource resource = new ZookeeperResource(server.getConnectString(), "/load_test",
+                PingCmd.get, true, OnConnectionFailed.THROW_EXCEPTION, ReloadContext.HOLD);
+        resource.setLoadTimeout(500);
+        byte[] original = zk.getData("/load_test/n0", false, null);
+        try {
+            read(resource.getInputStream());
+
+            final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+            final CountDownLatch done = new CountDownLatch(1);
+            resource.getZk().exists("/load_trigger", new Watcher() {
+                @Override
+                public void process(WatchedEvent event) {
+                    // loading here waits for callbacks only this thread can deliver
+                    try {
+                        read(resource.getInputStream());
+                    } catch (Exception e) {
+                        failure.set(e);
+                    }
+                    done.countDown();
+                }
+            });
+
+            // events come in order, so the merged config is dropped before the trigger is seen
+            zk.setData("/load_test/n0", ".load_test.n0=changed".getBytes(), -1);
+            zk.create("/load_trigger", new byte[0], Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertTrue(failure.get() instanceof IOException);
+        } finally {
+            zk.delete("/load_trigger", -1);
+            zk.setData("/load_test/n0", original, -1);
+            resource.destroy();
+        }
+    }
+
+    @Test
+    public void reloadContextFromWatch() throws Exception {
+        zk.create("/reload_test", "reload.value=1".getBytes(), Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        zk.create("/reload_test/child", "reload.other=x".getBytes(), Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+
+        ReloadingContext ctx = new ReloadingContext("/reload_test");
+        try {
+            assertEquals("1", ctx.getTargetValue());
+
+            // loaded again from the refresh thread, it would never finish on the event thread delivering the watch
+            zk.setData("/reload_test", "reload.value=2".getBytes(), -1);
+            for (int i = 0; i < 200 && !"2".equals(ctx.getTargetValue()); i++) {
+                Thread.sleep(50);
+            }
+            assertEquals("2", ctx.getTargetValue());
+        } finally {
+            ctx.close();
+            zk.delete("/reload_test/child", -1);
+            zk.delete("/reload_test", -1);
+        }
+    }
+}